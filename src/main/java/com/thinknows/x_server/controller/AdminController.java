@@ -2,45 +2,82 @@ package com.thinknows.x_server.controller;
 
 import com.thinknows.x_server.model.User;
 import com.thinknows.x_server.model.response.ApiResponse;
-import com.thinknows.x_server.repository.UserRepository;
+import com.thinknows.x_server.model.response.KeysetPageResponse;
+import com.thinknows.x_server.model.response.LogUsageResponse;
+import com.thinknows.x_server.model.response.PageResponse;
+import com.thinknows.x_server.service.AdminUserService;
+import com.thinknows.x_server.service.LogRetentionService;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.GetMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
-
-import java.util.List;
-import java.util.stream.Collectors;
+import org.springframework.web.context.request.async.WebAsyncTask;
 
 @RestController
 @RequestMapping("/api/v1/admin")
 public class AdminController {
 
-    private final UserRepository userRepository;
+    private final LogRetentionService logRetentionService;
+    private final AdminUserService adminUserService;
+
+    @Value("${app.export.timeout-ms:3600000}")
+    private long exportTimeoutMillis;
 
     @Autowired
-    public AdminController(UserRepository userRepository) {
-        this.userRepository = userRepository;
+    public AdminController(LogRetentionService logRetentionService, AdminUserService adminUserService) {
+        this.logRetentionService = logRetentionService;
+        this.adminUserService = adminUserService;
     }
 
+    /**
+     * 分页查询用户，按ID升序；不带参数时返回第一页
+     */
     @GetMapping("/users")
-    public ResponseEntity<ApiResponse<List<User>>> getAllUsers() {
-        List<User> users = userRepository.findAll();
-        
-        // 清除敏感信息
-        List<User> cleanUsers = users.stream().map(user -> {
-            User cleanUser = new User();
-            cleanUser.setId(user.getId());
-            cleanUser.setUsername(user.getUsername());
-            cleanUser.setEmail(user.getEmail());
-            cleanUser.setPhone(user.getPhone());
-            cleanUser.setCreatedAt(user.getCreatedAt());
-            cleanUser.setUpdatedAt(user.getUpdatedAt());
-            cleanUser.setActive(user.isActive());
-            cleanUser.setTwoFactorEnabled(user.isTwoFactorEnabled());
-            return cleanUser;
-        }).collect(Collectors.toList());
-        
-        return ResponseEntity.ok(ApiResponse.success("All users retrieved successfully", cleanUsers));
+    public ResponseEntity<ApiResponse<PageResponse<User>>> getUsersPage(
+            @RequestParam(defaultValue = "0") int page,
+            @RequestParam(defaultValue = "50") int size) {
+        return ResponseEntity.ok(ApiResponse.success("Users retrieved successfully",
+                adminUserService.getUsersPage(page, size)));
+    }
+
+    /**
+     * 游标分页查询用户，翻到多深都只需一次索引范围扫描
+     * @param cursor 上一页返回的 nextCursor，首页传空字符串
+     */
+    @GetMapping(value = "/users", params = "cursor")
+    public ResponseEntity<ApiResponse<KeysetPageResponse<User>>> getUsersAfter(
+            @RequestParam String cursor,
+            @RequestParam(defaultValue = "50") int size) {
+        try {
+            return ResponseEntity.ok(ApiResponse.success("Users retrieved successfully",
+                    adminUserService.getUsersAfter(cursor, size)));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(ApiResponse.error(400, e.getMessage()));
+        }
+    }
+
+    /**
+     * 以 NDJSON 流式导出全部用户，每行一个用户，超时由 app.export.timeout-ms 单独设置
+     */
+    @GetMapping("/users/export")
+    public WebAsyncTask<Void> exportUsers(HttpServletResponse response) {
+        return StreamingDownloads.attachment(response, MediaType.parseMediaType("application/x-ndjson"),
+                "users.ndjson", exportTimeoutMillis, adminUserService::exportUsers);
+    }
+
+    /**
+     * 查看日志磁盘用量
+     * @param date 可选，展开该日期下按用户/设备的明细
+     */
+    @GetMapping("/logs/usage")
+    public ResponseEntity<ApiResponse<LogUsageResponse>> getLogUsage(
+            @RequestParam(required = false) String date) {
+        return ResponseEntity.ok(ApiResponse.success("Log usage retrieved successfully",
+                logRetentionService.getUsage(date)));
     }
 }
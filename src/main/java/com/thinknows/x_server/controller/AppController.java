@@ -1,39 +1,86 @@
 package com.thinknows.x_server.controller;
 
+import com.thinknows.x_server.filter.LogUploadRateLimitFilter;
+import com.thinknows.x_server.model.ConfigSnapshot;
 import com.thinknows.x_server.model.request.LogUploadRequest;
 import com.thinknows.x_server.model.response.ApiResponse;
-import com.thinknows.x_server.model.response.AppConfigResponse;
+import com.thinknows.x_server.service.ConfigRegistry;
 import com.thinknows.x_server.service.ConfigService;
+import com.thinknows.x_server.service.IngestRateLimiter;
 import com.thinknows.x_server.service.LogService;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.context.request.async.DeferredResult;
 import org.springframework.web.multipart.MultipartFile;
 
 import java.io.IOException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
 
 @RestController
 @RequestMapping("/api/v1")
 public class AppController {
 
+    private static final int MAX_LONG_POLL_SECONDS = 60;
+
     @Autowired
     private ConfigService configService;
     
+    @Autowired
+    private ConfigRegistry configRegistry;
+    
     @Autowired
     private LogService logService;
     
+    @Autowired
+    private IngestRateLimiter ingestRateLimiter;
+    
     /**
      * 获取应用配置
+     * 响应体按更新分桶预先序列化，携带 If-None-Match 且未变化时返回 304
      * @param clientVersion 客户端版本
+     * @param deviceId 设备ID，用于灰度更新
      * @return 应用配置
      */
     @GetMapping("/app-config")
-    public ResponseEntity<ApiResponse<AppConfigResponse>> getAppConfig(
-            @RequestHeader(value = "X-App-Version", required = false) String clientVersion) {
+    public ResponseEntity<byte[]> getAppConfig(
+            @RequestHeader(value = "X-App-Version", required = false) String clientVersion,
+            @RequestHeader(value = "X-Device-Id", required = false) String deviceId,
+            WebRequest webRequest) {
+        
+        return ConditionalResponses.precomputed(webRequest, configService.getAppConfigJson(clientVersion, deviceId));
+    }
+    
+    /**
+     * 长轮询等待配置变化
+     * 配置版本与 sinceRevision 不同时立即返回新配置，否则挂起直到配置变化或超时；超时返回 304
+     * @param clientVersion 客户端版本
+     * @param sinceRevision 客户端已有的配置版本号
+     * @param timeoutSeconds 最长等待时间（秒）
+     */
+    @GetMapping(value = "/app-config", params = "sinceRevision")
+    public DeferredResult<ResponseEntity<byte[]>> awaitAppConfig(
+            @RequestHeader(value = "X-App-Version", required = false) String clientVersion,
+            @RequestHeader(value = "X-Device-Id", required = false) String deviceId,
+            @RequestParam long sinceRevision,
+            @RequestParam(defaultValue = "30") int timeoutSeconds) {
         
-        AppConfigResponse config = configService.getAppConfig(clientVersion);
-        return ResponseEntity.ok(new ApiResponse<>(200, "Config retrieved successfully", config));
+        long timeoutMillis = TimeUnit.SECONDS.toMillis(Math.max(1, Math.min(timeoutSeconds, MAX_LONG_POLL_SECONDS)));
+        DeferredResult<ResponseEntity<byte[]>> result = new DeferredResult<>(timeoutMillis);
+        CompletableFuture<ConfigSnapshot> change = configRegistry.awaitChange(sinceRevision);
+        
+        change.thenAccept(snapshot -> result.setResult(
+                ConditionalResponses.precomputed(configService.getAppConfigJson(clientVersion, deviceId))));
+        result.onTimeout(() -> result.setResult(
+                ConditionalResponses.notModified(configService.getAppConfigJson(clientVersion, deviceId))));
+        result.onCompletion(() -> change.cancel(false));
+        return result;
     }
     
     /**
@@ -45,7 +92,8 @@ public class AppController {
     @PostMapping(value = "/logs/upload", consumes = MediaType.MULTIPART_FORM_DATA_VALUE)
     public ResponseEntity<ApiResponse<String>> uploadLog(
             @RequestParam("file") MultipartFile file,
-            @ModelAttribute LogUploadRequest request) {
+            @ModelAttribute LogUploadRequest request,
+            HttpServletRequest httpRequest) {
         
         try {
             if (file.isEmpty()) {
@@ -53,13 +101,28 @@ public class AppController {
                         .body(new ApiResponse<>(400, "Log file is empty", null));
             }
             
+            // 表单中的设备ID和用户ID与请求头不同时，按表单中的标识再检查一次频率和配额
+            IngestRateLimiter.Verdict verdict = ingestRateLimiter.tryAcquireForm(
+                    request.getDeviceId(), request.getUserId(),
+                    httpRequest.getHeader(LogUploadRateLimitFilter.DEVICE_ID_HEADER),
+                    httpRequest.getHeader(LogUploadRateLimitFilter.USER_ID_HEADER));
+            if (!verdict.isAllowed()) {
+                return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                        .header(HttpHeaders.RETRY_AFTER, String.valueOf(verdict.getRetryAfterSeconds()))
+                        .body(new ApiResponse<>(429, verdict.getReason(), null));
+            }
+            
             String savedPath = logService.saveLogFile(
                     file, 
                     request.getDeviceId(), 
                     request.getUserId(),
-                    request.getLogType());
+                    request.getLogType(),
+                    httpRequest.getRemoteAddr());
             
             return ResponseEntity.ok(new ApiResponse<>(200, "Log uploaded successfully", savedPath));
+        } catch (LogService.LogTooLargeException e) {
+            return ResponseEntity.status(HttpStatus.PAYLOAD_TOO_LARGE)
+                    .body(new ApiResponse<>(413, e.getMessage(), null));
         } catch (IOException e) {
             return ResponseEntity.internalServerError()
                     .body(new ApiResponse<>(500, "Failed to upload log: " + e.getMessage(), null));
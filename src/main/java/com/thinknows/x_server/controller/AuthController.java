@@ -6,20 +6,35 @@ import com.thinknows.x_server.model.request.RefreshTokenRequest;
 import com.thinknows.x_server.model.request.RegisterRequest;
 import com.thinknows.x_server.model.request.TwoFactorVerifyRequest;
 import com.thinknows.x_server.model.response.ApiResponse;
+import com.thinknows.x_server.model.response.DeviceSession;
 import com.thinknows.x_server.model.response.LoginResponse;
 import com.thinknows.x_server.model.response.TokenResponse;
 import com.thinknows.x_server.service.UserService;
+import com.thinknows.x_server.session.StoredToken;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
+import java.util.List;
+import java.util.Map;
+
 @RestController
 @RequestMapping("/api/v1/user")
 public class AuthController {
 
+    private static final String BEARER_PREFIX = "Bearer ";
+
     private final UserService userService;
 
     @Autowired
@@ -57,7 +72,8 @@ public class AuthController {
     }
 
     @PostMapping("/login")
-    public ResponseEntity<ApiResponse<LoginResponse>> login(@RequestBody LoginRequest request) {
+    public ResponseEntity<ApiResponse<LoginResponse>> login(@RequestBody LoginRequest request,
+                                                            HttpServletRequest httpRequest) {
         // Validate request
         if (request.getUsername() == null || request.getUsername().isEmpty()) {
             return ResponseEntity.badRequest().body(ApiResponse.error(400, "Username is required"));
@@ -68,7 +84,7 @@ public class AuthController {
 
         try {
             // Login user
-            LoginResponse loginResponse = userService.login(request);
+            LoginResponse loginResponse = userService.login(request, httpRequest.getRemoteAddr());
             if (loginResponse == null) {
                 return ResponseEntity.badRequest().body(ApiResponse.error(400, "Invalid username or password"));
             }
@@ -81,6 +97,10 @@ public class AuthController {
             return ResponseEntity.ok(ApiResponse.success("Login successful", loginResponse));
         } catch (UserService.AccountLockedException e) {
             return ResponseEntity.status(403).body(ApiResponse.error(403, e.getMessage()));
+        } catch (UserService.LoginThrottledException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                    .body(ApiResponse.error(429, e.getMessage()));
         } catch (Exception e) {
             e.printStackTrace();
             return ResponseEntity.status(500).body(ApiResponse.error(500, "Internal server error: " + e.getMessage()));
@@ -88,7 +108,8 @@ public class AuthController {
     }
     
     @PostMapping("/verify-2fa")
-    public ResponseEntity<ApiResponse<LoginResponse>> verifyTwoFactor(@RequestBody TwoFactorVerifyRequest request) {
+    public ResponseEntity<ApiResponse<LoginResponse>> verifyTwoFactor(@RequestBody TwoFactorVerifyRequest request,
+                                                                      HttpServletRequest httpRequest) {
         // Validate request
         if (request.getTwoFactorToken() == null || request.getTwoFactorToken().isEmpty()) {
             return ResponseEntity.badRequest().body(ApiResponse.error(400, "Two-factor token is required"));
@@ -97,17 +118,26 @@ public class AuthController {
             return ResponseEntity.badRequest().body(ApiResponse.error(400, "Verification code is required"));
         }
         
-        // Verify code
-        LoginResponse response = userService.verifyTwoFactorCode(request);
-        if (response == null) {
-            return ResponseEntity.badRequest().body(ApiResponse.error(400, "Invalid token or code"));
+        try {
+            // Verify code
+            LoginResponse response = userService.verifyTwoFactorCode(request, httpRequest.getRemoteAddr());
+            if (response == null) {
+                return ResponseEntity.badRequest().body(ApiResponse.error(400, "Invalid token or code"));
+            }
+            
+            return ResponseEntity.ok(ApiResponse.success("Two-factor authentication successful", response));
+        } catch (UserService.AccountLockedException e) {
+            return ResponseEntity.status(403).body(ApiResponse.error(403, e.getMessage()));
+        } catch (UserService.LoginThrottledException e) {
+            return ResponseEntity.status(HttpStatus.TOO_MANY_REQUESTS)
+                    .header(HttpHeaders.RETRY_AFTER, String.valueOf(e.getRetryAfterSeconds()))
+                    .body(ApiResponse.error(429, e.getMessage()));
         }
-        
-        return ResponseEntity.ok(ApiResponse.success("Two-factor authentication successful", response));
     }
     
     @PostMapping("/refresh")
-    public ResponseEntity<ApiResponse<TokenResponse>> refreshToken(@RequestBody RefreshTokenRequest request) {
+    public ResponseEntity<ApiResponse<TokenResponse>> refreshToken(@RequestBody RefreshTokenRequest request,
+                                                                   HttpServletRequest httpRequest) {
         // Validate request
         if (request.getRefreshToken() == null || request.getRefreshToken().isEmpty()) {
             return ResponseEntity.badRequest().body(ApiResponse.error(400, "Refresh token is required"));
@@ -115,7 +145,7 @@ public class AuthController {
         
         try {
             // Refresh token
-            TokenResponse tokens = userService.refreshToken(request);
+            TokenResponse tokens = userService.refreshToken(request, httpRequest.getRemoteAddr());
             if (tokens == null) {
                 return ResponseEntity.badRequest().body(ApiResponse.error(400, "Invalid or expired refresh token"));
             }
@@ -126,4 +156,71 @@ public class AuthController {
             return ResponseEntity.status(500).body(ApiResponse.error(500, "Internal server error: " + e.getMessage()));
         }
     }
+
+    @PostMapping("/logout")
+    public ResponseEntity<ApiResponse<Void>> logout(
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization) {
+        StoredToken caller = authenticate(authorization);
+        if (caller == null) {
+            return unauthorized();
+        }
+        userService.revokeSession(caller.getUsername(), caller.getSessionId());
+        return ResponseEntity.ok(ApiResponse.success("Logged out", null));
+    }
+
+    /**
+     * 当前用户的设备会话列表，发起请求的会话标记为当前设备
+     */
+    @GetMapping("/sessions")
+    public ResponseEntity<ApiResponse<List<DeviceSession>>> listSessions(
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization) {
+        StoredToken caller = authenticate(authorization);
+        if (caller == null) {
+            return unauthorized();
+        }
+        return ResponseEntity.ok(ApiResponse.success(
+                userService.getUserActiveSessions(caller.getUsername(), caller.getSessionId())));
+    }
+
+    @DeleteMapping("/sessions/{sessionId}")
+    public ResponseEntity<ApiResponse<Void>> revokeSession(
+            @PathVariable String sessionId,
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization) {
+        StoredToken caller = authenticate(authorization);
+        if (caller == null) {
+            return unauthorized();
+        }
+        if (!userService.revokeSession(caller.getUsername(), sessionId)) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(ApiResponse.error(404, "Session not found"));
+        }
+        return ResponseEntity.ok(ApiResponse.success("Session revoked", null));
+    }
+
+    /**
+     * 撤销全部会话；默认保留当前会话（“退出其他设备”），includeCurrent=true 时当前会话也一并撤销
+     */
+    @DeleteMapping("/sessions")
+    public ResponseEntity<ApiResponse<Map<String, Integer>>> revokeAllSessions(
+            @RequestParam(defaultValue = "false") boolean includeCurrent,
+            @RequestHeader(value = HttpHeaders.AUTHORIZATION, required = false) String authorization) {
+        StoredToken caller = authenticate(authorization);
+        if (caller == null) {
+            return unauthorized();
+        }
+        int revoked = userService.revokeAllSessions(caller.getUsername(),
+                includeCurrent ? null : caller.getSessionId());
+        return ResponseEntity.ok(ApiResponse.success("Sessions revoked", Map.of("revoked", revoked)));
+    }
+
+    private StoredToken authenticate(String authorization) {
+        if (authorization == null || !authorization.startsWith(BEARER_PREFIX)) {
+            return null;
+        }
+        return userService.authenticate(authorization.substring(BEARER_PREFIX.length()).trim());
+    }
+
+    private static <T> ResponseEntity<ApiResponse<T>> unauthorized() {
+        return ResponseEntity.status(HttpStatus.UNAUTHORIZED)
+                .body(ApiResponse.error(401, "Invalid or expired access token"));
+    }
 }
@@ -0,0 +1,102 @@
+package com.thinknows.x_server.controller;
+
+import com.thinknows.x_server.model.response.PrecomputedJson;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.util.DigestUtils;
+import org.springframework.web.context.request.WebRequest;
+
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.List;
+
+/**
+ * 条件请求辅助方法
+ */
+final class ConditionalResponses {
+
+    private ConditionalResponses() {
+    }
+
+    /**
+     * 直接输出预先序列化的响应体；If-None-Match 命中时返回 304，不输出响应体
+     */
+    static ResponseEntity<byte[]> precomputed(WebRequest webRequest, PrecomputedJson json) {
+        if (webRequest.checkNotModified(json.getETag())) {
+            return null;
+        }
+        return precomputed(json);
+    }
+
+    /**
+     * 直接输出预先序列化的响应体
+     */
+    static ResponseEntity<byte[]> precomputed(PrecomputedJson json) {
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.noCache())
+                .eTag(json.getETag())
+                .contentType(MediaType.APPLICATION_JSON)
+                .body(json.getBody());
+    }
+
+    /**
+     * 内容未变化，返回 304
+     */
+    static ResponseEntity<byte[]> notModified(PrecomputedJson json) {
+        return ResponseEntity.status(HttpStatus.NOT_MODIFIED)
+                .cacheControl(CacheControl.noCache())
+                .eTag(json.getETag())
+                .build();
+    }
+
+    /**
+     * 单个帖子的弱 ETag，由 (id, version) 决定，每次更新版本号加一
+     */
+    static String postETag(Long id, Long version) {
+        return "W/\"" + id + "-" + version + "\"";
+    }
+
+    /**
+     * 列表页的弱 ETag，由本页帖子ID、其中最大的 updatedAt 和总数决定。
+     * 帖子增删、重排或本页任一帖子更新都会改变 ETag。
+     */
+    static String pageETag(List<Long> ids, LocalDateTime latestUpdatedAt, long totalElements) {
+        StringBuilder key = new StringBuilder(16 + ids.size() * 8);
+        // 按毫秒取值：数据库中的时间戳与内存中实体的精度不同
+        key.append(totalElements).append('|')
+                .append(latestUpdatedAt != null ? toEpochMillis(latestUpdatedAt) : 0).append('|');
+        for (Long id : ids) {
+            key.append(id).append(',');
+        }
+        return "W/\"" + DigestUtils.md5DigestAsHex(key.toString().getBytes(StandardCharsets.UTF_8)) + "\"";
+    }
+
+    /**
+     * If-Match 是否匹配当前 ETag，"*" 匹配任何已存在的资源。
+     * 本服务只签发弱 ETag，因此按弱比较处理，忽略 W/ 前缀。
+     */
+    static boolean ifMatches(String ifMatch, String currentETag) {
+        String current = stripWeak(currentETag);
+        for (String tag : ifMatch.split(",")) {
+            tag = tag.trim();
+            if ("*".equals(tag) || stripWeak(tag).equals(current)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String stripWeak(String eTag) {
+        return eTag.startsWith("W/") ? eTag.substring(2) : eTag;
+    }
+
+    /**
+     * 转换为 Last-Modified 使用的毫秒时间戳（HTTP 日期只精确到秒）
+     */
+    static long toEpochMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+}
@@ -13,19 +13,36 @@
 package com.thinknows.x_server.controller;
 
 import com.thinknows.x_server.model.Post;
+import com.thinknows.x_server.model.PostRevision;
 import com.thinknows.x_server.model.request.CreatePostRequest;
 import com.thinknows.x_server.model.request.UpdatePostRequest;
 import com.thinknows.x_server.model.response.ApiResponse;
+import com.thinknows.x_server.model.response.FacetResponse;
+import com.thinknows.x_server.model.response.KeysetPageResponse;
 import com.thinknows.x_server.model.response.PageResponse;
 import com.thinknows.x_server.model.response.PostResponse;
+import com.thinknows.x_server.service.PostExportService;
 import com.thinknows.x_server.service.PostService;
+import com.thinknows.x_server.util.PostingList;
+import jakarta.servlet.http.HttpServletResponse;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Page;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
+import org.springframework.web.context.request.WebRequest;
+import org.springframework.web.context.request.async.WebAsyncTask;
 
+import java.time.LocalDateTime;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
 /**
@@ -51,11 +68,22 @@ public class PostController {
      *    - 防止循环依赖
      *    - 当只有一个构造函数时，@Autowired 注解可以省略
      */
+    private static final int MAX_TIMELINE_PAGE_SIZE = 100;
+    private static final int MAX_FACET_SIZE = 1000;
+    
     private final PostService postService;
+    private final PostExportService postExportService;
+    
+    @Value("${app.posts.bulk.max-size:1000}")
+    private int bulkMaxSize;
+    
+    @Value("${app.export.timeout-ms:3600000}")
+    private long exportTimeoutMillis;
     
     @Autowired
-    public PostController(PostService postService) {
+    public PostController(PostService postService, PostExportService postExportService) {
         this.postService = postService;
+        this.postExportService = postExportService;
     }
     
     /**
@@ -82,6 +110,38 @@ public class PostController {
                 .body(new ApiResponse<>(201, "帖子创建成功", response));
     }
     
+    /**
+     * 批量创建帖子，供迁移和导入任务使用
+     * 
+     * 【批量写入】
+     * 一次请求创建多个帖子，在同一个事务中按 JDBC 批次插入，
+     * 比逐条调用 POST /api/v1/posts 少了大量网络往返和单独提交
+     * 
+     * @return 新帖子的ID列表，顺序与请求一致
+     */
+    @PostMapping("/bulk")
+    public ResponseEntity<ApiResponse<List<Long>>> createPosts(
+            @RequestBody List<CreatePostRequest> requests,
+            @RequestHeader("userId") Long userId) {
+        
+        if (requests == null || requests.isEmpty()) {
+            return ResponseEntity.badRequest()
+                    .body(new ApiResponse<>(400, "帖子列表不能为空", null));
+        }
+        if (requests.size() > bulkMaxSize) {
+            return ResponseEntity.badRequest()
+                    .body(new ApiResponse<>(400, "单次最多创建 " + bulkMaxSize + " 个帖子", null));
+        }
+        if (requests.contains(null)) {
+            return ResponseEntity.badRequest()
+                    .body(new ApiResponse<>(400, "帖子列表中不能有空元素", null));
+        }
+        
+        List<Long> ids = postService.createPosts(requests, userId);
+        return ResponseEntity.status(HttpStatus.CREATED)
+                .body(new ApiResponse<>(201, "批量创建帖子成功", ids));
+    }
+    
     /**
      * 获取帖子列表（支持分页和多种筛选条件）
      * 
@@ -98,37 +158,89 @@ public class PostController {
      */
     @GetMapping
     public ResponseEntity<ApiResponse<PageResponse<PostResponse>>> getPosts(
-            @RequestParam(required = false) String tag,
-            @RequestParam(required = false) String category,
+            @RequestParam(required = false) List<String> tag,
+            @RequestParam(defaultValue = "and") String tagMode,
+            @RequestParam(required = false) List<String> category,
             @RequestParam(required = false) Long authorId,
             @RequestParam(defaultValue = "0") int page,
             @RequestParam(defaultValue = "10") int size,
-            @RequestParam(defaultValue = "createdAt,desc") String sort) {
-        
-        List<Post> posts;
-        
-        if (authorId != null) {
-            posts = postService.getPostsByAuthor(authorId);
-        } else if (tag != null && !tag.isEmpty()) {
-            posts = postService.getPostsByTag(tag);
-        } else if (category != null && !category.isEmpty()) {
-            posts = postService.getPostsByCategory(category);
-        } else {
-            posts = postService.getAllPosts();
-        }
+            @RequestParam(defaultValue = "createdAt,desc") String sort,
+            WebRequest webRequest) {
         
         // 应用排序
         String[] sortParams = sort.split(",");
         String sortField = sortParams[0];
         boolean ascending = sortParams.length > 1 && "asc".equalsIgnoreCase(sortParams[1]);
         
-        // 对已过滤的列表进行内存排序
+        List<String> tags = nonBlank(tag);
+        List<String> categories = nonBlank(category);
+        
+        if (!tags.isEmpty() || !categories.isEmpty()) {
+            // 标签/分类条件通过内存倒排索引求交集，得到匹配的帖子ID；ID顺序不等于创建顺序
+            PostingList ids = postService.findPostIds(tags, parseTagMode(tagMode), categories, authorId);
+            if ("createdat".equalsIgnoreCase(sortField)) {
+                List<Long> pageIds = getPageIds(ids, ascending, page, size);
+                // 只查询本页帖子的最新更新时间，ETag 未变化时不加载帖子
+                String eTag = ConditionalResponses.pageETag(pageIds, postService.getLatestUpdatedAt(pageIds), ids.size());
+                if (webRequest.checkNotModified(eTag)) {
+                    return null;
+                }
+                return pageResponse(eTag, getIdPageResponse(ids.size(), pageIds, page, size));
+            }
+            List<Post> posts = postService.getPostsInOrder(toIdList(ids, 0, ids.size(), true));
+            posts = manualSort(posts, sortField, ascending);
+            return conditionalPage(webRequest, getPageResponse(posts, page, size));
+        }
+        
+        if (authorId != null) {
+            // 按作者过滤时由数据库完成排序和分页
+            Page<Post> authorPosts = postService.getPostsByAuthor(authorId, page, size, sortField, ascending);
+            return conditionalPage(webRequest, toPageResponse(authorPosts));
+        }
+        
+        List<Post> posts = postService.getAllPosts();
+        
+        // 对列表进行内存排序
         posts = manualSort(posts, sortField, ascending);
         
         // 应用分页
         PageResponse<PostResponse> pageResponse = getPageResponse(posts, page, size);
         
-        return ResponseEntity.ok(new ApiResponse<>(200, "获取帖子列表成功", pageResponse));
+        return conditionalPage(webRequest, pageResponse);
+    }
+    
+    /**
+     * 统计符合条件的帖子数，条件与帖子列表相同
+     * 
+     * 带标签/分类条件时直接在内存索引中计算，不访问数据库
+     */
+    @GetMapping("/count")
+    public ResponseEntity<ApiResponse<Long>> countPosts(
+            @RequestParam(required = false) List<String> tag,
+            @RequestParam(defaultValue = "and") String tagMode,
+            @RequestParam(required = false) List<String> category,
+            @RequestParam(required = false) Long authorId) {
+        
+        PostingList ids = postService.findPostIds(nonBlank(tag), parseTagMode(tagMode), nonBlank(category), authorId);
+        long count = ids != null ? ids.size() : postService.countAllPosts();
+        return ResponseEntity.ok(new ApiResponse<>(200, "统计帖子数成功", count));
+    }
+    
+    /**
+     * 分面统计：各标签、各分类下的帖子数
+     * 
+     * 计数在写入时增量维护，查询不访问帖子表
+     * 
+     * @param category 可选，标签统计只计算该分类下的帖子
+     * @param top 每种分面返回帖子数最多的前几项
+     */
+    @GetMapping("/facets")
+    public ResponseEntity<ApiResponse<FacetResponse>> getFacets(
+            @RequestParam(required = false) String category,
+            @RequestParam(defaultValue = "20") int top) {
+        
+        int limit = Math.max(1, Math.min(top, MAX_FACET_SIZE));
+        return ResponseEntity.ok(new ApiResponse<>(200, "获取分面统计成功", postService.getFacets(category, limit)));
     }
     
     /**
@@ -149,22 +261,67 @@ public class PostController {
             @RequestParam(defaultValue = "10") int size,
             @RequestParam(defaultValue = "createdAt,desc") String sort) {
         
-        List<Post> posts = postService.getPostsByAuthor(authorId);
-        
         // 应用排序
         String[] sortParams = sort.split(",");
         String sortField = sortParams[0];
         boolean ascending = sortParams.length > 1 && "asc".equalsIgnoreCase(sortParams[1]);
         
-        // 对已过滤的列表进行内存排序
-        posts = manualSort(posts, sortField, ascending);
-        
-        // 应用分页
-        PageResponse<PostResponse> pageResponse = getPageResponse(posts, page, size);
+        // 排序和分页交给数据库，只读取当前页
+        Page<Post> posts = postService.getPostsByAuthor(authorId, page, size, sortField, ascending);
+        PageResponse<PostResponse> pageResponse = toPageResponse(posts);
         
         return ResponseEntity.ok(new ApiResponse<>(200, "获取用户帖子列表成功", pageResponse));
     }
     
+    /**
+     * 作者时间线：按创建时间倒序的游标分页
+     * 
+     * 【游标分页】
+     * 与 page/size 分页不同，游标记录上一页最后一条的位置 (createdAt, id)，
+     * 数据库从索引中的该位置继续读取，翻到多深代价都一样
+     * 
+     * @param cursor 上一页返回的 nextCursor，首页不传
+     */
+    @GetMapping("/user/{authorId}/timeline")
+    public ResponseEntity<ApiResponse<KeysetPageResponse<PostResponse>>> getAuthorTimeline(
+            @PathVariable Long authorId,
+            @RequestParam(required = false) String cursor,
+            @RequestParam(defaultValue = "10") int size) {
+        
+        int pageSize = Math.max(1, Math.min(size, MAX_TIMELINE_PAGE_SIZE));
+        KeysetPageResponse<PostResponse> timeline = postService.getAuthorTimeline(authorId, cursor, pageSize);
+        return ResponseEntity.ok(new ApiResponse<>(200, "获取用户帖子列表成功", timeline));
+    }
+    
+    /**
+     * 流式导出全部帖子
+     * 
+     * 【流式响应】
+     * 在异步线程中边查询边写出，响应体不会在内存中整体生成；超时由 app.export.timeout-ms 单独设置
+     * 
+     * @param format ndjson（默认）或 csv
+     * @param gzip 是否 gzip 压缩，压缩后以 .gz 文件下载
+     */
+    @GetMapping("/export")
+    public WebAsyncTask<Void> exportPosts(
+            @RequestParam(defaultValue = "ndjson") String format,
+            @RequestParam(defaultValue = "false") boolean gzip,
+            HttpServletResponse response) {
+        
+        PostExportService.Format exportFormat = PostExportService.Format.parse(format);
+        String fileName = exportFormat == PostExportService.Format.CSV ? "posts.csv" : "posts.ndjson";
+        MediaType contentType = exportFormat == PostExportService.Format.CSV
+                ? MediaType.parseMediaType("text/csv;charset=UTF-8")
+                : MediaType.parseMediaType("application/x-ndjson");
+        if (gzip) {
+            fileName += ".gz";
+            contentType = MediaType.parseMediaType("application/gzip");
+        }
+        
+        return StreamingDownloads.attachment(response, contentType, fileName, exportTimeoutMillis,
+                out -> postExportService.export(out, exportFormat, gzip));
+    }
+    
     /**
      * 根据ID获取帖子
      * 
@@ -177,17 +334,29 @@ public class PostController {
      * 例如使用 @ControllerAdvice 和 @ExceptionHandler
      */
     @GetMapping("/{id}")
-    public ResponseEntity<ApiResponse<PostResponse>> fetchPostById(@PathVariable Long id) {
+    public ResponseEntity<ApiResponse<PostResponse>> fetchPostById(@PathVariable Long id, WebRequest webRequest) {
+        // 先只查询版本号和更新时间，客户端缓存仍然有效时直接返回 304，不加载帖子
+        PostRevision revision = postService.getPostRevision(id);
+        if (revision != null && webRequest.checkNotModified(
+                ConditionalResponses.postETag(id, revision.getVersion()),
+                ConditionalResponses.toEpochMillis(revision.getUpdatedAt()))) {
+            return null;
+        }
+        
         // 显式指定类型以避免 IDE 的错误提示
-        com.thinknows.x_server.model.Post post = this.postService.getPostById(id);
+        com.thinknows.x_server.model.Post post = revision != null ? this.postService.getPostById(id) : null;
         
         if (post == null) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND)
                     .body(new ApiResponse<>(404, "帖子不存在", null));
         }
         
-        PostResponse response = new PostResponse(post);
-        return ResponseEntity.ok(new ApiResponse<>(200, "获取帖子成功", response));
+        PostResponse response = postService.toResponse(post);
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.noCache())
+                .eTag(ConditionalResponses.postETag(post.getId(), post.getVersion()))
+                .lastModified(ConditionalResponses.toEpochMillis(post.getUpdatedAt()))
+                .body(new ApiResponse<>(200, "获取帖子成功", response));
     }
     
     /**
@@ -202,27 +371,45 @@ public class PostController {
      * 【异常处理】
      * 这里展示了如何捕获业务逻辑异常并转换为适当的 HTTP 响应
      * 例如，当用户尝试更新不属于他们的帖子时返回 403 Forbidden
+     * 
+     * 【并发更新】
+     * 带 If-Match 时只有帖子仍是客户端看到的版本才会更新，否则返回 412，客户端应重新获取后再修改；
+     * 不带 If-Match 时服务端遇到冲突会基于最新内容重试，仍然冲突时返回 409
      */
     @PutMapping("/{id}")
     public ResponseEntity<ApiResponse<PostResponse>> modifyPost(
             @PathVariable Long id,
             @RequestBody UpdatePostRequest request,
-            @RequestHeader("userId") Long userId) {
+            @RequestHeader("userId") Long userId,
+            @RequestHeader(value = HttpHeaders.IF_MATCH, required = false) String ifMatch) {
         
+        Predicate<Post> precondition = ifMatch == null ? null
+                : current -> ConditionalResponses.ifMatches(ifMatch,
+                        ConditionalResponses.postETag(current.getId(), current.getVersion()));
         try {
-            Post post = postService.updatePost(id, request, userId);
+            Post post = postService.updatePost(id, request, userId, precondition);
             
             if (post == null) {
                 return ResponseEntity.status(HttpStatus.NOT_FOUND)
                         .body(new ApiResponse<>(404, "帖子不存在", null));
             }
             
-            PostResponse response = new PostResponse(post);
-            return ResponseEntity.ok(new ApiResponse<>(200, "帖子更新成功", response));
+            PostResponse response = postService.toResponse(post);
+            return ResponseEntity.ok()
+                    .eTag(ConditionalResponses.postETag(post.getId(), post.getVersion()))
+                    .lastModified(ConditionalResponses.toEpochMillis(post.getUpdatedAt()))
+                    .body(new ApiResponse<>(200, "帖子更新成功", response));
             
         } catch (IllegalStateException e) {
             return ResponseEntity.status(HttpStatus.FORBIDDEN)
                     .body(new ApiResponse<>(403, e.getMessage(), null));
+        } catch (OptimisticLockingFailureException e) {
+            if (precondition != null) {
+                return ResponseEntity.status(HttpStatus.PRECONDITION_FAILED)
+                        .body(new ApiResponse<>(412, "帖子已被修改，请刷新后重试", null));
+            }
+            return ResponseEntity.status(HttpStatus.CONFLICT)
+                    .body(new ApiResponse<>(409, "帖子正在被频繁修改，请稍后重试", null));
         }
     }
     
@@ -262,6 +449,18 @@ public class PostController {
         }
     }
     
+    /**
+     * 参数错误统一返回 400
+     * 
+     * 【局部异常处理】
+     * 控制器内的 @ExceptionHandler 只处理本控制器抛出的异常
+     */
+    @ExceptionHandler(IllegalArgumentException.class)
+    public ResponseEntity<ApiResponse<Void>> handleIllegalArgument(IllegalArgumentException e) {
+        return ResponseEntity.badRequest()
+                .body(new ApiResponse<>(400, e.getMessage(), null));
+    }
+    
     /**
      * 手动对帖子列表进行排序
      * 
@@ -323,6 +522,118 @@ public class PostController {
         }
     }
     
+    /**
+     * 辅助方法：按创建时间取出当前页的帖子ID
+     */
+    private List<Long> getPageIds(PostingList ids, boolean ascending, int page, int size) {
+        if (page < 0 || size < 1) {
+            throw new IllegalArgumentException("Invalid page or size");
+        }
+        long fromIndex = (long) page * size;
+        if (fromIndex >= ids.size()) {
+            return Collections.emptyList();
+        }
+        return postService.getPostIdPageByCreatedAt(ids, ascending, (int) fromIndex, size);
+    }
+    
+    /**
+     * 辅助方法：只加载当前页的帖子，创建分页响应
+     */
+    private PageResponse<PostResponse> getIdPageResponse(int totalElements, List<Long> pageIds, int page, int size) {
+        int totalPages = (int) Math.ceil((double) totalElements / size);
+        List<PostResponse> pageContent = pageIds.isEmpty()
+                ? Collections.emptyList()
+                : postService.toResponses(postService.getPostsInOrder(pageIds));
+        
+        return new PageResponse<>(pageContent, page, size, totalPages, totalElements,
+                page > 0, page < totalPages - 1);
+    }
+    
+    /**
+     * 辅助方法：按本页内容计算 ETag，客户端缓存仍然有效时返回 304
+     * 
+     * 列表页只使用 ETag：删除或重排帖子不会改变最新的 updatedAt，Last-Modified 无法反映这类变化
+     */
+    private ResponseEntity<ApiResponse<PageResponse<PostResponse>>> conditionalPage(
+            WebRequest webRequest, PageResponse<PostResponse> pageResponse) {
+        List<Long> ids = new ArrayList<>(pageResponse.getContent().size());
+        LocalDateTime latestUpdatedAt = null;
+        for (PostResponse post : pageResponse.getContent()) {
+            ids.add(post.getId());
+            if (latestUpdatedAt == null || (post.getUpdatedAt() != null && post.getUpdatedAt().isAfter(latestUpdatedAt))) {
+                latestUpdatedAt = post.getUpdatedAt();
+            }
+        }
+        String eTag = ConditionalResponses.pageETag(ids, latestUpdatedAt, pageResponse.getTotalElements());
+        if (webRequest.checkNotModified(eTag)) {
+            return null;
+        }
+        return pageResponse(eTag, pageResponse);
+    }
+    
+    /**
+     * 辅助方法：带 ETag 的列表响应
+     */
+    private static ResponseEntity<ApiResponse<PageResponse<PostResponse>>> pageResponse(
+            String eTag, PageResponse<PostResponse> pageResponse) {
+        return ResponseEntity.ok()
+                .cacheControl(CacheControl.noCache())
+                .eTag(eTag)
+                .body(new ApiResponse<>(200, "获取帖子列表成功", pageResponse));
+    }
+    
+    /**
+     * 辅助方法：按排序方向取出 ID 列表中 [fromIndex, toIndex) 范围内的ID
+     */
+    private static List<Long> toIdList(PostingList ids, int fromIndex, int toIndex, boolean ascending) {
+        List<Long> result = new ArrayList<>(toIndex - fromIndex);
+        for (int i = fromIndex; i < toIndex; i++) {
+            result.add(ascending ? ids.get(i) : ids.get(ids.size() - 1 - i));
+        }
+        return result;
+    }
+    
+    /**
+     * 辅助方法：去掉空白的过滤条件
+     */
+    private static List<String> nonBlank(List<String> values) {
+        if (values == null) {
+            return Collections.emptyList();
+        }
+        return values.stream()
+                .filter(value -> value != null && !value.isBlank())
+                .map(String::trim)
+                .collect(Collectors.toList());
+    }
+    
+    /**
+     * 辅助方法：解析标签匹配方式，and 要求包含全部标签，or 包含任一标签
+     */
+    private static boolean parseTagMode(String tagMode) {
+        if ("and".equalsIgnoreCase(tagMode) || "all".equalsIgnoreCase(tagMode)) {
+            return true;
+        }
+        if ("or".equalsIgnoreCase(tagMode) || "any".equalsIgnoreCase(tagMode)) {
+            return false;
+        }
+        throw new IllegalArgumentException("Invalid tagMode: " + tagMode);
+    }
+    
+    /**
+     * 辅助方法：将数据库分页结果转换为分页响应
+     */
+    private PageResponse<PostResponse> toPageResponse(Page<Post> posts) {
+        return new PageResponse<>(
+                postService.toResponses(posts.getContent()),
+                posts.getNumber(),
+                posts.getSize(),
+                posts.getTotalPages(),
+                (int) posts.getTotalElements(),
+                posts.hasPrevious(),
+                posts.hasNext()
+        );
+    }
+    
     /**
      * 辅助方法：创建分页响应
      */
@@ -335,9 +646,7 @@ public class PostController {
         
         List<PostResponse> pageContent;
         if (fromIndex < totalElements) {
-            pageContent = posts.subList(fromIndex, toIndex).stream()
-                    .map(PostResponse::new)
-                    .collect(Collectors.toList());
+            pageContent = postService.toResponses(posts.subList(fromIndex, toIndex));
         } else {
             pageContent = Collections.emptyList();
         }
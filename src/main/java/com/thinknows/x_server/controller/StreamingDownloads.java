@@ -0,0 +1,37 @@
+package com.thinknows.x_server.controller;
+
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.web.context.request.async.WebAsyncTask;
+import org.springframework.web.servlet.mvc.method.annotation.StreamingResponseBody;
+
+import java.io.OutputStream;
+
+/**
+ * 流式下载：在 MVC 异步线程中边生成边写出附件
+ *
+ * 超时时间由每个接口单独指定，不依赖全局的 spring.mvc.async.request-timeout，
+ * 其他异步接口仍使用较短的默认超时。
+ */
+final class StreamingDownloads {
+
+    private StreamingDownloads() {
+    }
+
+    /**
+     * 设置响应头并返回写出响应体的异步任务，响应头在开始写出之前设置
+     * @param timeoutMillis 本次下载的超时时间（毫秒）
+     */
+    static WebAsyncTask<Void> attachment(HttpServletResponse response, MediaType contentType, String fileName,
+                                         long timeoutMillis, StreamingResponseBody body) {
+        response.setContentType(contentType.toString());
+        response.setHeader(HttpHeaders.CONTENT_DISPOSITION, "attachment; filename=\"" + fileName + "\"");
+        return new WebAsyncTask<>(timeoutMillis, () -> {
+            try (OutputStream out = response.getOutputStream()) {
+                body.writeTo(out);
+            }
+            return null;
+        });
+    }
+}
@@ -0,0 +1,69 @@
+package com.thinknows.x_server.filter;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.thinknows.x_server.model.response.ApiResponse;
+import com.thinknows.x_server.service.IngestRateLimiter;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * 日志上传限流过滤器
+ *
+ * 在 DispatcherServlet 解析 multipart 请求体之前执行，被拒绝的请求直接返回 429，
+ * 不会产生临时文件、解压或目录扫描的开销。
+ * 由于此时表单字段尚未解析，设备ID和用户ID从请求头 X-Device-Id、X-User-Id 读取；请求头由客户端随意填写，
+ * 因此客户端IP总是计入，表单中的标识在控制器中再检查一次。
+ */
+@Component
+public class LogUploadRateLimitFilter extends OncePerRequestFilter {
+
+    public static final String DEVICE_ID_HEADER = "X-Device-Id";
+    public static final String USER_ID_HEADER = "X-User-Id";
+
+    private static final String UPLOAD_PATH = "/api/v1/logs/upload";
+
+    private final IngestRateLimiter ingestRateLimiter;
+    private final ObjectMapper objectMapper;
+
+    @Autowired
+    public LogUploadRateLimitFilter(IngestRateLimiter ingestRateLimiter, ObjectMapper objectMapper) {
+        this.ingestRateLimiter = ingestRateLimiter;
+        this.objectMapper = objectMapper;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        return !"POST".equals(request.getMethod()) || !UPLOAD_PATH.equals(request.getServletPath());
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+
+        IngestRateLimiter.Verdict verdict = ingestRateLimiter.tryAcquire(
+                request.getHeader(DEVICE_ID_HEADER),
+                request.getHeader(USER_ID_HEADER),
+                request.getRemoteAddr(),
+                request.getContentLengthLong());
+
+        if (!verdict.isAllowed()) {
+            response.setStatus(HttpStatus.TOO_MANY_REQUESTS.value());
+            response.setHeader(HttpHeaders.RETRY_AFTER, String.valueOf(verdict.getRetryAfterSeconds()));
+            response.setContentType(MediaType.APPLICATION_JSON_VALUE);
+            objectMapper.writeValue(response.getOutputStream(), ApiResponse.error(429, verdict.getReason()));
+            return;
+        }
+
+        filterChain.doFilter(request, response);
+    }
+}
@@ -0,0 +1,47 @@
+package com.thinknows.x_server.filter;
+
+import com.thinknows.x_server.service.UserService;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * 设备会话活动过滤器
+ *
+ * 携带 Authorization: Bearer 访问令牌的请求记录一次会话活动（时间和客户端地址），不影响请求本身的处理。
+ * 客户端地址取 getRemoteAddr()，经过可信代理时由 server.forward-headers-strategy 按 X-Forwarded-For 还原。
+ */
+@Component
+public class SessionActivityFilter extends OncePerRequestFilter {
+
+    private static final String BEARER_PREFIX = "Bearer ";
+
+    private final UserService userService;
+
+    @Autowired
+    public SessionActivityFilter(UserService userService) {
+        this.userService = userService;
+    }
+
+    @Override
+    protected boolean shouldNotFilter(HttpServletRequest request) {
+        String authorization = request.getHeader(HttpHeaders.AUTHORIZATION);
+        return authorization == null || !authorization.startsWith(BEARER_PREFIX);
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+
+        String accessToken = request.getHeader(HttpHeaders.AUTHORIZATION).substring(BEARER_PREFIX.length()).trim();
+        userService.recordActivity(accessToken, request.getRemoteAddr());
+        filterChain.doFilter(request, response);
+    }
+}
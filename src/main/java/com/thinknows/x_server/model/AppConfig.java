@@ -11,6 +11,7 @@ public class AppConfig {
     private boolean debugMode;
     private List<Endpoint> endpoints;
     private Map<String, Object> features;
+    private long configRevision;
 
     public AppConfig() {
         this.endpoints = new ArrayList<>();
@@ -56,4 +57,12 @@ public class AppConfig {
     public void setFeatures(Map<String, Object> features) {
         this.features = features;
     }
+
+    public long getConfigRevision() {
+        return configRevision;
+    }
+
+    public void setConfigRevision(long configRevision) {
+        this.configRevision = configRevision;
+    }
 }
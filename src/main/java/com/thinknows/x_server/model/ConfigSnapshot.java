@@ -0,0 +1,119 @@
+package com.thinknows.x_server.model;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.TreeMap;
+
+/**
+ * 配置快照，创建后不可变，整体替换
+ *
+ * 版本号由内容计算（SHA-256 摘要前 8 字节的低 53 位），与加载次数无关：内容相同的快照在任何节点、重启前后版本号都相同。
+ */
+public final class ConfigSnapshot {
+    private static final long REVISION_MASK = (1L << 53) - 1;
+
+    private final long revision;
+    private final String appVersion;
+    private final boolean forceUpdate;
+    private final String updateUrl;
+    private final String minSupportedVersion;
+    private final String recommendedVersion;
+    private final int rolloutPercentage;
+    private final String updateRules;
+    private final Map<String, Object> features;
+
+    public ConfigSnapshot(String appVersion, boolean forceUpdate, String updateUrl,
+                          String minSupportedVersion, String recommendedVersion, int rolloutPercentage,
+                          String updateRules, Map<String, Object> features) {
+        this.appVersion = appVersion;
+        this.forceUpdate = forceUpdate;
+        this.updateUrl = updateUrl;
+        this.minSupportedVersion = minSupportedVersion;
+        this.recommendedVersion = recommendedVersion;
+        this.rolloutPercentage = rolloutPercentage;
+        this.updateRules = updateRules;
+        this.features = Collections.unmodifiableMap(new LinkedHashMap<>(features));
+        this.revision = contentHash();
+    }
+
+    /**
+     * 内容的规范形式取摘要；功能开关按名称排序，值带上类型，避免 "true" 与 true 得到相同的版本号
+     */
+    private long contentHash() {
+        StringBuilder canonical = new StringBuilder()
+                .append(appVersion).append('\n')
+                .append(forceUpdate).append('\n')
+                .append(updateUrl).append('\n')
+                .append(minSupportedVersion).append('\n')
+                .append(recommendedVersion).append('\n')
+                .append(rolloutPercentage).append('\n')
+                .append(updateRules).append('\n');
+        new TreeMap<>(features).forEach((name, value) -> canonical.append(name).append('=')
+                .append(value.getClass().getSimpleName()).append(':').append(value).append('\n'));
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256")
+                    .digest(canonical.toString().getBytes(StandardCharsets.UTF_8));
+            // 取 53 位非负值，JSON 中的版本号在 JavaScript 客户端里也能精确表示
+            return ByteBuffer.wrap(digest).getLong() & REVISION_MASK;
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * 内容是否相同
+     */
+    public boolean sameContent(ConfigSnapshot other) {
+        return other != null
+                && forceUpdate == other.forceUpdate
+                && Objects.equals(appVersion, other.appVersion)
+                && Objects.equals(updateUrl, other.updateUrl)
+                && Objects.equals(minSupportedVersion, other.minSupportedVersion)
+                && Objects.equals(recommendedVersion, other.recommendedVersion)
+                && rolloutPercentage == other.rolloutPercentage
+                && Objects.equals(updateRules, other.updateRules)
+                && features.equals(other.features);
+    }
+
+    public long getRevision() {
+        return revision;
+    }
+
+    public String getAppVersion() {
+        return appVersion;
+    }
+
+    public boolean isForceUpdate() {
+        return forceUpdate;
+    }
+
+    public String getUpdateUrl() {
+        return updateUrl;
+    }
+
+    public String getMinSupportedVersion() {
+        return minSupportedVersion;
+    }
+
+    public String getRecommendedVersion() {
+        return recommendedVersion;
+    }
+
+    public int getRolloutPercentage() {
+        return rolloutPercentage;
+    }
+
+    public String getUpdateRules() {
+        return updateRules;
+    }
+
+    public Map<String, Object> getFeatures() {
+        return features;
+    }
+}
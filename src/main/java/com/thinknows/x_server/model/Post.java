@@ -4,19 +4,35 @@ import java.time.LocalDateTime;
 import java.util.ArrayList;
 import java.util.List;
 
+import org.hibernate.annotations.Cache;
+import org.hibernate.annotations.CacheConcurrencyStrategy;
+import org.hibernate.annotations.ColumnDefault;
+
+import jakarta.persistence.Cacheable;
 import jakarta.persistence.Column;
 import jakarta.persistence.ElementCollection;
 import jakarta.persistence.Entity;
 import jakarta.persistence.GeneratedValue;
 import jakarta.persistence.GenerationType;
 import jakarta.persistence.Id;
+import jakarta.persistence.Index;
+import jakarta.persistence.SequenceGenerator;
 import jakarta.persistence.Table;
+import jakarta.persistence.Version;
 
 @Entity
-@Table(name = "posts")
+// 二级缓存区域，只在 app.cache.l2.enabled=true 时生效
+@Cacheable
+@Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "posts")
+@Table(name = "posts", indexes = {
+        // 作者时间线：按作者过滤后直接按索引顺序读取，无需排序
+        @Index(name = "idx_posts_author_created", columnList = "author_id, created_at DESC, id DESC")
+})
 public class Post {
+    // 序列一次分配 50 个ID（pooled 优化器），插入可以走 JDBC 批处理；不支持序列的数据库会退化为表生成器
     @Id
-    @GeneratedValue(strategy = GenerationType.IDENTITY)
+    @GeneratedValue(strategy = GenerationType.SEQUENCE, generator = "post_seq")
+    @SequenceGenerator(name = "post_seq", sequenceName = "posts_seq", allocationSize = 50)
     private Long id;
     private String title;
     @Column(columnDefinition = "TEXT")
@@ -27,8 +43,15 @@ public class Post {
     private LocalDateTime updatedAt;
     private String status; // DRAFT, PUBLISHED, DELETED
     @ElementCollection
+    @Cache(usage = CacheConcurrencyStrategy.READ_WRITE, region = "posts.tags")
     private List<String> tags;
     private String category;
+    // 乐观锁版本号，每次更新加一；UPDATE 带 version 条件，并发修改时后提交的一方失败而不是覆盖。
+    // 基本类型不允许为空：版本为 NULL 的行无法参与比较；列默认值 0，已有数据的表加列时旧行从 0 开始
+    @Version
+    @Column(nullable = false)
+    @ColumnDefault("0")
+    private long version;
     
     public Post() {
         this.createdAt = LocalDateTime.now();
@@ -102,6 +125,14 @@ public class Post {
         this.updatedAt = updatedAt;
     }
 
+    public long getVersion() {
+        return version;
+    }
+
+    public void setVersion(long version) {
+        this.version = version;
+    }
+
     public String getStatus() {
         return status;
     }
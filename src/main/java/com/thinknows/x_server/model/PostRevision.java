@@ -0,0 +1,12 @@
+package com.thinknows.x_server.model;
+
+import java.time.LocalDateTime;
+
+/**
+ * 帖子的版本信息，用于条件请求，无需加载整个帖子
+ */
+public interface PostRevision {
+    Long getVersion();
+
+    LocalDateTime getUpdatedAt();
+}
@@ -0,0 +1,155 @@
+package com.thinknows.x_server.model;
+
+import java.util.Arrays;
+import java.util.Optional;
+
+/**
+ * 语义化版本号（major.minor.patch[-prerelease][+build]）
+ *
+ * 比较规则遵循 SemVer 2.0：预发布版本低于对应的正式版本，构建元数据不参与比较。
+ * 为兼容客户端习惯，允许 "v" 前缀以及省略 minor/patch（"1.2" 视为 "1.2.0"）。
+ */
+public final class SemanticVersion implements Comparable<SemanticVersion> {
+    private static final String[] NO_PRERELEASE = new String[0];
+
+    private final int major;
+    private final int minor;
+    private final int patch;
+    private final String[] prerelease;
+    private final String text;
+
+    private SemanticVersion(int major, int minor, int patch, String[] prerelease, String text) {
+        this.major = major;
+        this.minor = minor;
+        this.patch = patch;
+        this.prerelease = prerelease;
+        this.text = text;
+    }
+
+    /**
+     * 解析版本号
+     * @return 无法解析时返回空
+     */
+    public static Optional<SemanticVersion> tryParse(String value) {
+        if (value == null) {
+            return Optional.empty();
+        }
+        String text = value.trim();
+        if (text.startsWith("v") || text.startsWith("V")) {
+            text = text.substring(1);
+        }
+
+        int build = text.indexOf('+');
+        if (build >= 0) {
+            text = text.substring(0, build);
+        }
+        String[] prerelease = NO_PRERELEASE;
+        int dash = text.indexOf('-');
+        if (dash >= 0) {
+            prerelease = text.substring(dash + 1).split("\\.");
+            text = text.substring(0, dash);
+            for (String identifier : prerelease) {
+                if (identifier.isEmpty()) {
+                    return Optional.empty();
+                }
+            }
+        }
+
+        String[] parts = text.split("\\.");
+        if (parts.length == 0 || parts.length > 3) {
+            return Optional.empty();
+        }
+        int[] numbers = new int[3];
+        for (int i = 0; i < parts.length; i++) {
+            if (!isNumeric(parts[i]) || parts[i].length() > 9) {
+                return Optional.empty();
+            }
+            numbers[i] = Integer.parseInt(parts[i]);
+        }
+        return Optional.of(new SemanticVersion(numbers[0], numbers[1], numbers[2], prerelease, value.trim()));
+    }
+
+    /**
+     * 解析版本号，格式错误时抛出 IllegalArgumentException
+     */
+    public static SemanticVersion parse(String value) {
+        return tryParse(value).orElseThrow(() -> new IllegalArgumentException("Invalid version: " + value));
+    }
+
+    public boolean isPrerelease() {
+        return prerelease.length > 0;
+    }
+
+    @Override
+    public int compareTo(SemanticVersion other) {
+        int result = Integer.compare(major, other.major);
+        if (result == 0) {
+            result = Integer.compare(minor, other.minor);
+        }
+        if (result == 0) {
+            result = Integer.compare(patch, other.patch);
+        }
+        if (result != 0) {
+            return result;
+        }
+
+        // 正式版本高于任何预发布版本
+        if (prerelease.length == 0 || other.prerelease.length == 0) {
+            return prerelease.length == other.prerelease.length ? 0 : (prerelease.length == 0 ? 1 : -1);
+        }
+        for (int i = 0; i < Math.min(prerelease.length, other.prerelease.length); i++) {
+            result = compareIdentifier(prerelease[i], other.prerelease[i]);
+            if (result != 0) {
+                return result;
+            }
+        }
+        return Integer.compare(prerelease.length, other.prerelease.length);
+    }
+
+    private static int compareIdentifier(String a, String b) {
+        boolean numericA = isNumeric(a);
+        boolean numericB = isNumeric(b);
+        if (numericA && numericB) {
+            return a.length() != b.length() ? Integer.compare(a.length(), b.length()) : a.compareTo(b);
+        }
+        if (numericA != numericB) {
+            return numericA ? -1 : 1;
+        }
+        return a.compareTo(b);
+    }
+
+    private static boolean isNumeric(String value) {
+        if (value.isEmpty()) {
+            return false;
+        }
+        for (int i = 0; i < value.length(); i++) {
+            if (!Character.isDigit(value.charAt(i))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof SemanticVersion)) {
+            return false;
+        }
+        SemanticVersion other = (SemanticVersion) o;
+        return major == other.major && minor == other.minor && patch == other.patch
+                && Arrays.equals(prerelease, other.prerelease);
+    }
+
+    @Override
+    public int hashCode() {
+        return 31 * (31 * (31 * major + minor) + patch) + Arrays.hashCode(prerelease);
+    }
+
+    @Override
+    public String toString() {
+        return text;
+    }
+}
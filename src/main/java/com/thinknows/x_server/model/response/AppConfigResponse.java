@@ -10,7 +10,9 @@ public class AppConfigResponse {
     private LocalDateTime serverTime;
     private String appVersion;
     private boolean forceUpdate;
+    private boolean recommendUpdate;
     private String updateUrl;
+    private long configRevision; // 配置版本号，可用于长轮询
 
     public AppConfigResponse() {
         this.serverTime = LocalDateTime.now();
@@ -72,6 +74,14 @@ public class AppConfigResponse {
         this.forceUpdate = forceUpdate;
     }
 
+    public boolean isRecommendUpdate() {
+        return recommendUpdate;
+    }
+
+    public void setRecommendUpdate(boolean recommendUpdate) {
+        this.recommendUpdate = recommendUpdate;
+    }
+
     public String getUpdateUrl() {
         return updateUrl;
     }
@@ -79,4 +89,12 @@ public class AppConfigResponse {
     public void setUpdateUrl(String updateUrl) {
         this.updateUrl = updateUrl;
     }
+
+    public long getConfigRevision() {
+        return configRevision;
+    }
+
+    public void setConfigRevision(long configRevision) {
+        this.configRevision = configRevision;
+    }
 }
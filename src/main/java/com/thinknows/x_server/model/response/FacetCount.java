@@ -0,0 +1,30 @@
+package com.thinknows.x_server.model.response;
+
+/**
+ * 单个分面取值及其帖子数
+ */
+public class FacetCount {
+    private String name;
+    private long count;
+
+    public FacetCount(String name, long count) {
+        this.name = name;
+        this.count = count;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public long getCount() {
+        return count;
+    }
+
+    public void setCount(long count) {
+        this.count = count;
+    }
+}
@@ -0,0 +1,42 @@
+package com.thinknows.x_server.model.response;
+
+import java.util.List;
+
+/**
+ * 分面统计响应模型
+ */
+public class FacetResponse {
+    private String category; // 标签统计限定的分类，为空表示全部帖子
+    private List<FacetCount> tags;
+    private List<FacetCount> categories;
+
+    public FacetResponse(String category, List<FacetCount> tags, List<FacetCount> categories) {
+        this.category = category;
+        this.tags = tags;
+        this.categories = categories;
+    }
+
+    public String getCategory() {
+        return category;
+    }
+
+    public void setCategory(String category) {
+        this.category = category;
+    }
+
+    public List<FacetCount> getTags() {
+        return tags;
+    }
+
+    public void setTags(List<FacetCount> tags) {
+        this.tags = tags;
+    }
+
+    public List<FacetCount> getCategories() {
+        return categories;
+    }
+
+    public void setCategories(List<FacetCount> categories) {
+        this.categories = categories;
+    }
+}
@@ -0,0 +1,53 @@
+package com.thinknows.x_server.model.response;
+
+import java.util.List;
+
+/**
+ * 游标分页响应模型
+ * 使用 nextCursor 请求下一页，不需要统计总数，翻页代价与页码无关
+ */
+public class KeysetPageResponse<T> {
+    private List<T> content;
+    private int size;
+    private String nextCursor; // 没有下一页时为 null
+    private boolean hasNext;
+
+    public KeysetPageResponse(List<T> content, int size, String nextCursor, boolean hasNext) {
+        this.content = content;
+        this.size = size;
+        this.nextCursor = nextCursor;
+        this.hasNext = hasNext;
+    }
+
+    public List<T> getContent() {
+        return content;
+    }
+
+    public void setContent(List<T> content) {
+        this.content = content;
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public void setSize(int size) {
+        this.size = size;
+    }
+
+    public String getNextCursor() {
+        return nextCursor;
+    }
+
+    public void setNextCursor(String nextCursor) {
+        this.nextCursor = nextCursor;
+    }
+
+    public boolean isHasNext() {
+        return hasNext;
+    }
+
+    public void setHasNext(boolean hasNext) {
+        this.hasNext = hasNext;
+    }
+}
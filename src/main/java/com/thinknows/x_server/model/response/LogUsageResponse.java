@@ -0,0 +1,81 @@
+package com.thinknows.x_server.model.response;
+
+import java.util.Map;
+
+/**
+ * 日志磁盘用量响应模型
+ */
+public class LogUsageResponse {
+    private long totalBytes;
+    private long totalFiles;
+    private long maxTotalBytes; // 0 表示不限制
+    private long maxDeviceBytes; // 0 表示不限制
+    private int retentionDays;
+    private Map<String, Long> bytesByDate;
+    private String date;
+    private Map<String, Map<String, Long>> bytesByUserAndDevice; // 用户 -> 设备 -> 字节数
+
+    public long getTotalBytes() {
+        return totalBytes;
+    }
+
+    public void setTotalBytes(long totalBytes) {
+        this.totalBytes = totalBytes;
+    }
+
+    public long getTotalFiles() {
+        return totalFiles;
+    }
+
+    public void setTotalFiles(long totalFiles) {
+        this.totalFiles = totalFiles;
+    }
+
+    public long getMaxTotalBytes() {
+        return maxTotalBytes;
+    }
+
+    public void setMaxTotalBytes(long maxTotalBytes) {
+        this.maxTotalBytes = maxTotalBytes;
+    }
+
+    public long getMaxDeviceBytes() {
+        return maxDeviceBytes;
+    }
+
+    public void setMaxDeviceBytes(long maxDeviceBytes) {
+        this.maxDeviceBytes = maxDeviceBytes;
+    }
+
+    public int getRetentionDays() {
+        return retentionDays;
+    }
+
+    public void setRetentionDays(int retentionDays) {
+        this.retentionDays = retentionDays;
+    }
+
+    public Map<String, Long> getBytesByDate() {
+        return bytesByDate;
+    }
+
+    public void setBytesByDate(Map<String, Long> bytesByDate) {
+        this.bytesByDate = bytesByDate;
+    }
+
+    public String getDate() {
+        return date;
+    }
+
+    public void setDate(String date) {
+        this.date = date;
+    }
+
+    public Map<String, Map<String, Long>> getBytesByUserAndDevice() {
+        return bytesByUserAndDevice;
+    }
+
+    public void setBytesByUserAndDevice(Map<String, Map<String, Long>> bytesByUserAndDevice) {
+        this.bytesByUserAndDevice = bytesByUserAndDevice;
+    }
+}
@@ -0,0 +1,37 @@
+package com.thinknows.x_server.model.response;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.springframework.util.DigestUtils;
+
+/**
+ * 预先序列化的 JSON 响应体及其强 ETag，创建后不可变
+ */
+public final class PrecomputedJson {
+    private final byte[] body;
+    private final String eTag;
+
+    private PrecomputedJson(byte[] body) {
+        this.body = body;
+        this.eTag = "\"" + DigestUtils.md5DigestAsHex(body) + "\"";
+    }
+
+    public static PrecomputedJson of(ObjectMapper objectMapper, Object value) {
+        try {
+            return new PrecomputedJson(objectMapper.writeValueAsBytes(value));
+        } catch (JsonProcessingException e) {
+            throw new IllegalStateException("Failed to serialize response", e);
+        }
+    }
+
+    /**
+     * 响应体字节，调用方不得修改
+     */
+    public byte[] getBody() {
+        return body;
+    }
+
+    public String getETag() {
+        return eTag;
+    }
+}
@@ -1,13 +1,23 @@
 package com.thinknows.x_server.repository;
 
+import java.time.LocalDateTime;
+import java.util.Collection;
 import java.util.List;
+import java.util.Optional;
+import java.util.stream.Stream;
 
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.Pageable;
 import org.springframework.data.jpa.repository.JpaRepository;
 import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
 import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
 import com.thinknows.x_server.model.Post;
+import com.thinknows.x_server.model.PostRevision;
 
 @Repository
 public interface PostRepository extends JpaRepository<Post, Long> {
@@ -15,6 +25,29 @@ public interface PostRepository extends JpaRepository<Post, Long> {
     // 根据作者ID查找帖子
     List<Post> findByAuthorId(Long authorId);
     
+    // 分页查询作者的帖子，按创建时间排序时走 (author_id, created_at, id) 索引
+    Page<Post> findByAuthorId(Long authorId, Pageable pageable);
+    
+    // 作者时间线首页
+    List<Post> findByAuthorIdOrderByCreatedAtDescIdDesc(Long authorId, Pageable pageable);
+    
+    // 作者时间线：从游标位置 (createdAt, id) 之后继续读取
+    @Query("SELECT p FROM Post p WHERE p.authorId = :authorId AND "
+            + "(p.createdAt < :createdAt OR (p.createdAt = :createdAt AND p.id < :id)) "
+            + "ORDER BY p.createdAt DESC, p.id DESC")
+    List<Post> findAuthorTimelineAfter(@Param("authorId") Long authorId,
+                                       @Param("createdAt") LocalDateTime createdAt,
+                                       @Param("id") Long id,
+                                       Pageable pageable);
+    
+    // 只查询版本号和更新时间，用于条件请求；按主键读取，不进入查询缓存，其他节点的更新立即可见
+    @Query("SELECT p.version AS version, p.updatedAt AS updatedAt FROM Post p WHERE p.id = :id")
+    Optional<PostRevision> findRevisionById(@Param("id") Long id);
+    
+    // 一批帖子中最新的更新时间
+    @Query("SELECT MAX(p.updatedAt) FROM Post p WHERE p.id IN :ids")
+    LocalDateTime findMaxUpdatedAtByIdIn(@Param("ids") Collection<Long> ids);
+    
     // 根据状态查找帖子
     List<Post> findByStatus(String status);
     
@@ -31,4 +64,18 @@ public interface PostRepository extends JpaRepository<Post, Long> {
     
     // 查找最近的帖子
     List<Post> findTop10ByStatusOrderByCreatedAtDesc(String status);
+    
+    // 按ID顺序流式读取全部帖子，必须在事务中使用并及时关闭
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500"),
+            // 导出只读一遍，不从二级缓存读取也不写入，避免挤掉热点数据
+            @QueryHint(name = "jakarta.persistence.cache.retrieveMode", value = "BYPASS"),
+            @QueryHint(name = "jakarta.persistence.cache.storeMode", value = "BYPASS")
+    })
+    @Query("SELECT p FROM Post p ORDER BY p.id")
+    Stream<Post> streamAllOrderedById();
+    
+    // 一次查询一批帖子的标签，返回 [帖子ID, 标签]
+    @Query("SELECT p.id, t FROM Post p JOIN p.tags t WHERE p.id IN :ids")
+    List<Object[]> findTagsByPostIds(@Param("ids") Collection<Long> ids);
 }
@@ -1,10 +1,20 @@
 package com.thinknows.x_server.repository;
 
 import com.thinknows.x_server.model.User;
+import jakarta.persistence.QueryHint;
+import org.hibernate.jpa.HibernateHints;
+import org.springframework.data.domain.Pageable;
+import org.springframework.data.domain.Slice;
 import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.data.jpa.repository.Query;
+import org.springframework.data.jpa.repository.QueryHints;
+import org.springframework.data.repository.query.Param;
 import org.springframework.stereotype.Repository;
 
+import java.util.Collection;
+import java.util.List;
 import java.util.Optional;
+import java.util.stream.Stream;
 
 @Repository
 public interface UserRepository extends JpaRepository<User, Long> {
@@ -28,4 +38,31 @@ public interface UserRepository extends JpaRepository<User, Long> {
      * 检查邮箱是否存在
      */
     boolean existsByEmail(String email);
+    
+    /**
+     * 只查询用户名
+     */
+    @Query("SELECT u.username FROM User u WHERE u.id = :id")
+    Optional<String> findUsernameById(@Param("id") Long id);
+    
+    /**
+     * 批量查询用户名，返回 [用户ID, 用户名]
+     */
+    @Query("SELECT u.id, u.username FROM User u WHERE u.id IN :ids")
+    List<Object[]> findUsernamesByIds(@Param("ids") Collection<Long> ids);
+    
+    /**
+     * 游标分页：按ID升序查找ID大于 afterId 的用户
+     */
+    Slice<User> findByIdGreaterThanOrderByIdAsc(Long afterId, Pageable pageable);
+    
+    /**
+     * 按ID顺序流式读取全部用户，必须在事务中使用并及时关闭
+     * MySQL 需要在连接串中加上 useCursorFetch=true，fetch size 才会生效
+     */
+    @QueryHints({
+            @QueryHint(name = HibernateHints.HINT_FETCH_SIZE, value = "500")
+    })
+    @Query("SELECT u FROM User u ORDER BY u.id")
+    Stream<User> streamAllOrderedById();
 }
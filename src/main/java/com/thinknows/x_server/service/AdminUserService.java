@@ -0,0 +1,128 @@
+package com.thinknows.x_server.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.thinknows.x_server.model.User;
+import com.thinknows.x_server.model.response.KeysetPageResponse;
+import com.thinknows.x_server.model.response.PageResponse;
+import com.thinknows.x_server.repository.UserRepository;
+import com.thinknows.x_server.util.NdjsonWriter;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
+import org.springframework.data.domain.Slice;
+import org.springframework.data.domain.Sort;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Iterator;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * 管理后台的用户列表：分页、游标分页和流式导出
+ */
+@Service
+public class AdminUserService {
+
+    public static final int MAX_PAGE_SIZE = 500;
+
+    // 每导出这么多行清空一次持久化上下文，与查询的 fetch size 一致
+    private static final int EXPORT_CLEAR_INTERVAL = 500;
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /**
+     * 按ID升序分页查询
+     */
+    @Transactional(readOnly = true)
+    public PageResponse<User> getUsersPage(int page, int size) {
+        Page<User> users = userRepository.findAll(
+                PageRequest.of(Math.max(page, 0), clampSize(size), Sort.by("id")));
+        List<User> content = users.getContent().stream()
+                .map(AdminUserService::cleanUser)
+                .collect(Collectors.toList());
+        return new PageResponse<>(content, users.getNumber(), users.getSize(), users.getTotalPages(),
+                (int) users.getTotalElements(), users.hasPrevious(), users.hasNext());
+    }
+
+    /**
+     * 游标分页：返回ID大于 cursor 的下一页，不执行 count 查询
+     * @param cursor 上一页返回的 nextCursor，为空时从头开始
+     */
+    @Transactional(readOnly = true)
+    public KeysetPageResponse<User> getUsersAfter(String cursor, int size) {
+        long afterId = parseCursor(cursor);
+        Slice<User> users = userRepository.findByIdGreaterThanOrderByIdAsc(afterId, PageRequest.of(0, clampSize(size)));
+        List<User> content = users.getContent().stream()
+                .map(AdminUserService::cleanUser)
+                .collect(Collectors.toList());
+        String nextCursor = users.hasNext() && !content.isEmpty()
+                ? String.valueOf(content.get(content.size() - 1).getId())
+                : null;
+        return new KeysetPageResponse<>(content, content.size(), nextCursor, users.hasNext());
+    }
+
+    /**
+     * 以 NDJSON 格式导出全部用户，边读边写。
+     * 已写出的实体定期从持久化上下文中清除，内存占用与用户数无关。
+     */
+    @Transactional(readOnly = true)
+    public void exportUsers(OutputStream out) throws IOException {
+        NdjsonWriter writer = new NdjsonWriter(objectMapper, out);
+        try (Stream<User> users = userRepository.streamAllOrderedById()) {
+            Iterator<User> iterator = users.iterator();
+            int count = 0;
+            while (iterator.hasNext()) {
+                writer.write(cleanUser(iterator.next()));
+                if (++count % EXPORT_CLEAR_INTERVAL == 0) {
+                    entityManager.clear();
+                    writer.flush();
+                }
+            }
+        }
+        writer.flush();
+    }
+
+    /**
+     * 复制用户的非敏感字段
+     */
+    private static User cleanUser(User user) {
+        User cleanUser = new User();
+        cleanUser.setId(user.getId());
+        cleanUser.setUsername(user.getUsername());
+        cleanUser.setEmail(user.getEmail());
+        cleanUser.setPhone(user.getPhone());
+        cleanUser.setCreatedAt(user.getCreatedAt());
+        cleanUser.setUpdatedAt(user.getUpdatedAt());
+        cleanUser.setActive(user.isActive());
+        cleanUser.setTwoFactorEnabled(user.isTwoFactorEnabled());
+        return cleanUser;
+    }
+
+    private static int clampSize(int size) {
+        return Math.max(1, Math.min(size, MAX_PAGE_SIZE));
+    }
+
+    private static long parseCursor(String cursor) {
+        if (cursor == null || cursor.isEmpty()) {
+            return 0L;
+        }
+        try {
+            return Long.parseLong(cursor);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid cursor: " + cursor);
+        }
+    }
+}
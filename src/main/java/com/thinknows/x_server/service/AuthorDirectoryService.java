@@ -0,0 +1,96 @@
+package com.thinknows.x_server.service;
+
+import com.thinknows.x_server.repository.UserRepository;
+import com.thinknows.x_server.util.LruCache;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * 作者ID到显示名称的目录
+ *
+ * 显示名称取自 users 表的用户名，缓存在容量有限的 LRU 中；列表场景一次查询补齐所有未命中的作者。
+ * 不存在的用户显示为 "user-&lt;id&gt;"，同样会被缓存，注册新用户时清除对应条目。
+ */
+@Service
+public class AuthorDirectoryService {
+
+    public static final String FALLBACK_PREFIX = "user-";
+
+    @Autowired
+    private UserRepository userRepository;
+
+    @Value("${app.authors.cache-size:100000}")
+    private int cacheSize;
+
+    private LruCache<Long, String> names;
+
+    @PostConstruct
+    public void init() {
+        names = new LruCache<>(cacheSize);
+    }
+
+    /**
+     * 获取单个作者的显示名称
+     */
+    public String getDisplayName(Long authorId) {
+        if (authorId == null) {
+            return null;
+        }
+        return names.computeIfAbsent(authorId, id -> userRepository.findUsernameById(id)
+                .orElse(FALLBACK_PREFIX + id));
+    }
+
+    /**
+     * 批量获取作者的显示名称，未命中缓存的作者合并为一次查询
+     */
+    public Map<Long, String> getDisplayNames(Collection<Long> authorIds) {
+        Map<Long, String> result = new HashMap<>();
+        Set<Long> missing = new LinkedHashSet<>();
+        for (Long authorId : authorIds) {
+            if (authorId == null || result.containsKey(authorId)) {
+                continue;
+            }
+            String name = names.get(authorId);
+            if (name != null) {
+                result.put(authorId, name);
+            } else {
+                missing.add(authorId);
+            }
+        }
+        if (missing.isEmpty()) {
+            return result;
+        }
+
+        for (Object[] row : userRepository.findUsernamesByIds(new ArrayList<>(missing))) {
+            Long id = (Long) row[0];
+            String username = (String) row[1];
+            names.put(id, username);
+            result.put(id, username);
+            missing.remove(id);
+        }
+        for (Long id : missing) {
+            String name = FALLBACK_PREFIX + id;
+            names.put(id, name);
+            result.put(id, name);
+        }
+        return result;
+    }
+
+    /**
+     * 用户信息变化时清除缓存条目
+     */
+    public void evict(Long userId) {
+        if (userId != null) {
+            names.remove(userId);
+        }
+    }
+}
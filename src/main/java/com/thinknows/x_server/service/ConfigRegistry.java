@@ -0,0 +1,314 @@
+package com.thinknows.x_server.service;
+
+import com.thinknows.x_server.model.ConfigSnapshot;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.ClosedWatchServiceException;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardWatchEventKinds;
+import java.nio.file.WatchEvent;
+import java.nio.file.WatchKey;
+import java.nio.file.WatchService;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+
+/**
+ * 可热更新的配置与功能开关
+ *
+ * 配置来自 application.properties 中的默认值，再叠加外部配置文件（app.config.file）。
+ * 通过 WatchService 监听该文件，内容变化时生成新的不可变快照并原子替换，读取方只需一次 volatile 读。
+ * 版本号由快照内容计算，各节点、重启前后一致；客户端带上已知版本号长轮询，版本号不同即返回新配置。
+ *
+ * 配置文件格式：
+ * app.version / app.force-update / app.update-url 以及 app.update.* 覆盖版本与更新规则；
+ * feature.&lt;name&gt;=value 定义功能开关，true/false 解析为布尔值，整数解析为数字，含逗号解析为列表。
+ */
+@Service
+public class ConfigRegistry {
+
+    private static final String FEATURE_PREFIX = "feature.";
+    // 文件在该时间内没有新事件、大小和修改时间不变才认为写入完成
+    private static final long DEBOUNCE_MILLIS = 100;
+
+    @Value("${app.version:1.0.0}")
+    private String defaultAppVersion;
+
+    @Value("${app.force-update:false}")
+    private boolean defaultForceUpdate;
+
+    @Value("${app.update-url:}")
+    private String defaultUpdateUrl;
+
+    @Value("${app.update.min-supported-version:}")
+    private String defaultMinSupportedVersion;
+
+    @Value("${app.update.recommended-version:}")
+    private String defaultRecommendedVersion;
+
+    @Value("${app.update.rollout-percentage:100}")
+    private int defaultRolloutPercentage;
+
+    @Value("${app.update.rules:}")
+    private String defaultUpdateRules;
+
+    @Value("${app.config.file:./config/app-config.properties}")
+    private String configFile;
+
+    @Value("${app.config.watch:true}")
+    private boolean watchEnabled;
+
+    private volatile ConfigSnapshot current;
+
+    private final List<Consumer<ConfigSnapshot>> listeners = new CopyOnWriteArrayList<>();
+    private final Set<CompletableFuture<ConfigSnapshot>> waiters = ConcurrentHashMap.newKeySet();
+    private final ReentrantLock reloadLock = new ReentrantLock();
+    private WatchService watchService;
+
+    @PostConstruct
+    public void init() {
+        current = load();
+        if (watchEnabled) {
+            startWatcher();
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() throws IOException {
+        if (watchService != null) {
+            watchService.close();
+        }
+        waiters.forEach(waiter -> waiter.cancel(false));
+    }
+
+    /**
+     * 当前配置快照
+     */
+    public ConfigSnapshot current() {
+        return current;
+    }
+
+    /**
+     * 注册配置变化监听器，在快照替换后、长轮询返回前同步调用
+     */
+    public void addListener(Consumer<ConfigSnapshot> listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * 等待配置版本与 knownRevision 不同
+     * @return 版本已不同时立即完成，否则在下一次配置变化时完成
+     */
+    public CompletableFuture<ConfigSnapshot> awaitChange(long knownRevision) {
+        CompletableFuture<ConfigSnapshot> waiter = new CompletableFuture<>();
+        waiters.add(waiter);
+        waiter.whenComplete((snapshot, error) -> waiters.remove(waiter));
+
+        // 注册后再检查一次，避免错过注册前发生的变化
+        ConfigSnapshot snapshot = current;
+        if (snapshot.getRevision() != knownRevision) {
+            waiter.complete(snapshot);
+        }
+        return waiter;
+    }
+
+    /**
+     * 重新读取配置文件，内容变化时替换快照并通知监听器
+     * @return 是否发生了变化
+     */
+    public boolean reload() {
+        reloadLock.lock();
+        try {
+            ConfigSnapshot previous = current;
+            ConfigSnapshot loaded = load();
+            if (loaded.sameContent(previous)) {
+                return false;
+            }
+            current = loaded;
+            for (Consumer<ConfigSnapshot> listener : listeners) {
+                listener.accept(loaded);
+            }
+        } finally {
+            reloadLock.unlock();
+        }
+
+        ConfigSnapshot snapshot = current;
+        for (CompletableFuture<ConfigSnapshot> waiter : waiters) {
+            waiter.complete(snapshot);
+        }
+        return true;
+    }
+
+    private ConfigSnapshot load() {
+        Properties properties = new Properties();
+        Path path = Paths.get(configFile);
+        if (Files.isRegularFile(path)) {
+            try (Reader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+                properties.load(reader);
+            } catch (IOException e) {
+                // 读取失败时保留当前配置
+                System.err.println("Error loading config file " + path + ": " + e.getMessage());
+                return current != null ? current : defaults();
+            }
+        }
+
+        Map<String, Object> features = defaultFeatures();
+        for (String name : properties.stringPropertyNames()) {
+            if (name.startsWith(FEATURE_PREFIX)) {
+                features.put(name.substring(FEATURE_PREFIX.length()), parseValue(properties.getProperty(name).trim()));
+            }
+        }
+
+        return new ConfigSnapshot(
+                properties.getProperty("app.version", defaultAppVersion).trim(),
+                Boolean.parseBoolean(properties.getProperty("app.force-update",
+                        String.valueOf(defaultForceUpdate)).trim()),
+                properties.getProperty("app.update-url", defaultUpdateUrl).trim(),
+                properties.getProperty("app.update.min-supported-version", defaultMinSupportedVersion).trim(),
+                properties.getProperty("app.update.recommended-version", defaultRecommendedVersion).trim(),
+                parseInt(properties.getProperty("app.update.rollout-percentage"), defaultRolloutPercentage),
+                properties.getProperty("app.update.rules", defaultUpdateRules).trim(),
+                features);
+    }
+
+    private ConfigSnapshot defaults() {
+        return new ConfigSnapshot(defaultAppVersion, defaultForceUpdate, defaultUpdateUrl,
+                defaultMinSupportedVersion, defaultRecommendedVersion, defaultRolloutPercentage,
+                defaultUpdateRules, defaultFeatures());
+    }
+
+    private static int parseInt(String value, int defaultValue) {
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            return defaultValue;
+        }
+    }
+
+    private static Map<String, Object> defaultFeatures() {
+        Map<String, Object> features = new LinkedHashMap<>();
+        features.put("darkMode", true);
+        features.put("notifications", true);
+        features.put("maxUploadSize", 10485760L); // 10MB in bytes
+        features.put("allowedFileTypes", List.of("jpg", "png", "pdf", "doc", "docx"));
+        return features;
+    }
+
+    private static Object parseValue(String value) {
+        if ("true".equalsIgnoreCase(value) || "false".equalsIgnoreCase(value)) {
+            return Boolean.parseBoolean(value);
+        }
+        if (value.matches("-?\\d{1,18}")) {
+            return Long.parseLong(value);
+        }
+        if (value.contains(",")) {
+            return Arrays.stream(value.split(","))
+                    .map(String::trim)
+                    .filter(item -> !item.isEmpty())
+                    .collect(Collectors.toUnmodifiableList());
+        }
+        return value;
+    }
+
+    /**
+     * 监听配置文件所在目录，文件被修改、替换或删除时重新加载
+     */
+    private void startWatcher() {
+        Path file = Paths.get(configFile).toAbsolutePath().normalize();
+        Path directory = file.getParent();
+        if (directory == null || !Files.isDirectory(directory)) {
+            System.err.println("Config directory does not exist, hot reload disabled: " + directory);
+            return;
+        }
+
+        try {
+            watchService = FileSystems.getDefault().newWatchService();
+            directory.register(watchService,
+                    StandardWatchEventKinds.ENTRY_CREATE,
+                    StandardWatchEventKinds.ENTRY_MODIFY,
+                    StandardWatchEventKinds.ENTRY_DELETE);
+        } catch (IOException e) {
+            System.err.println("Failed to watch config directory: " + e.getMessage());
+            return;
+        }
+
+        Path fileName = file.getFileName();
+        Thread watcher = new Thread(() -> {
+            try {
+                while (true) {
+                    WatchKey key = watchService.take();
+                    boolean changed = false;
+                    for (WatchEvent<?> event : key.pollEvents()) {
+                        if (fileName.equals(event.context())) {
+                            changed = true;
+                        }
+                    }
+                    key.reset();
+                    if (changed) {
+                        awaitStable(file, fileName);
+                        reload();
+                    }
+                }
+            } catch (InterruptedException | ClosedWatchServiceException e) {
+                // 应用关闭
+            }
+        }, "config-watcher");
+        watcher.setDaemon(true);
+        watcher.start();
+    }
+
+    /**
+     * 编辑器和 cp 会分多次写入文件，第一次修改事件时文件可能只写了一半；
+     * 等到一个去抖间隔内没有新事件、文件大小和修改时间都不再变化后再返回
+     */
+    private void awaitStable(Path file, Path fileName) throws InterruptedException {
+        String last = fileState(file);
+        while (true) {
+            boolean touched = false;
+            WatchKey key = watchService.poll(DEBOUNCE_MILLIS, TimeUnit.MILLISECONDS);
+            if (key != null) {
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    if (fileName.equals(event.context())) {
+                        touched = true;
+                    }
+                }
+                key.reset();
+            }
+            String state = fileState(file);
+            if (!touched && state.equals(last)) {
+                return;
+            }
+            last = state;
+        }
+    }
+
+    private static String fileState(Path file) {
+        try {
+            return Files.size(file) + "/" + Files.getLastModifiedTime(file).toMillis();
+        } catch (IOException e) {
+            return "missing";
+        }
+    }
+}
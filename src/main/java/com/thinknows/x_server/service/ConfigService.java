@@ -1,50 +1,159 @@
 package com.thinknows.x_server.service;
 
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.thinknows.x_server.model.AppConfig;
+import com.thinknows.x_server.model.ConfigSnapshot;
+import com.thinknows.x_server.model.Endpoint;
+import com.thinknows.x_server.model.SemanticVersion;
+import com.thinknows.x_server.model.response.ApiResponse;
 import com.thinknows.x_server.model.response.AppConfigResponse;
+import com.thinknows.x_server.model.response.PrecomputedJson;
+import com.thinknows.x_server.util.LruCache;
+import jakarta.annotation.PostConstruct;
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
 @Service
 public class ConfigService {
 
+    /**
+     * 客户端更新分桶，同一分桶的客户端收到完全相同的配置
+     */
+    public enum UpdateBucket {
+        NONE,         // 无需更新
+        RECOMMENDED,  // 建议更新
+        FORCED        // 强制更新
+    }
+
+    private static final int VERSION_CACHE_SIZE = 1024;
+
     @Autowired
     private LogService logService;
-    
-    @Value("${app.version:1.0.0}")
-    private String appVersion;
-    
-    @Value("${app.force-update:false}")
-    private boolean forceUpdate;
-    
-    @Value("${app.update-url:}")
-    private String updateUrl;
-    
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Autowired
+    private ConfigRegistry configRegistry;
+
+    // 当前配置快照对应的全部预计算响应，配置变化时整体替换
+    private volatile ResponseCache responseCache;
+
+    // 客户端版本号解析结果，客户端版本种类有限，基本都能命中
+    private final LruCache<String, Optional<SemanticVersion>> parsedVersions = new LruCache<>(VERSION_CACHE_SIZE);
+
+    @PostConstruct
+    public void init() {
+        responseCache = new ResponseCache(configRegistry.current());
+        configRegistry.addListener(snapshot -> responseCache = new ResponseCache(snapshot));
+    }
+
     /**
-     * 获取应用配置
+     * 获取预先序列化的应用配置响应
      * @param clientVersion 客户端版本
-     * @return 应用配置
+     * @param deviceId 设备ID，用于灰度
      */
-    public AppConfigResponse getAppConfig(String clientVersion) {
+    public PrecomputedJson getAppConfigJson(String clientVersion, String deviceId) {
+        ResponseCache cache = responseCache;
+        return cache.appConfigJson.get(cache.bucketOf(clientVersion, deviceId));
+    }
+
+    /**
+     * 获取预先序列化的客户端基础配置响应（接口地址和功能开关）
+     */
+    public PrecomputedJson getClientConfigJson() {
+        return responseCache.clientConfigJson;
+    }
+
+    private AppConfigResponse buildAppConfig(ConfigSnapshot snapshot, UpdateBucket bucket) {
         AppConfigResponse config = new AppConfigResponse();
-        
+
         // 设置日志上传配置
         config.setEnableLogUpload(logService.isEnableLogUpload());
         config.setLogUploadInterval(logService.getLogUploadInterval());
         config.setLogUploadEndpoint("/api/v1/logs/upload");
         config.setLogRetentionDays(logService.getLogRetentionDays());
-        
+
         // 设置应用版本信息
-        config.setAppVersion(appVersion);
-        
+        config.setAppVersion(snapshot.getAppVersion());
+        config.setConfigRevision(snapshot.getRevision());
+
         // 检查是否需要更新
-        if (clientVersion != null && !clientVersion.equals(appVersion)) {
-            config.setForceUpdate(forceUpdate);
-            config.setUpdateUrl(updateUrl);
-        } else {
-            config.setForceUpdate(false);
+        config.setForceUpdate(bucket == UpdateBucket.FORCED);
+        config.setRecommendUpdate(bucket != UpdateBucket.NONE);
+        if (bucket != UpdateBucket.NONE) {
+            config.setUpdateUrl(snapshot.getUpdateUrl());
         }
-        
+
+        return config;
+    }
+
+    private AppConfig buildClientConfig(ConfigSnapshot snapshot) {
+        AppConfig config = new AppConfig();
+
+        // Set basic configuration
+        config.setAppVersion(snapshot.getAppVersion());
+        config.setConfigRevision(snapshot.getRevision());
+        config.setApiBaseUrl("/api/v1");
+        config.setDebugMode(false);
+
+        // Add API endpoints as a list of Endpoint objects
+        List<Endpoint> endpoints = new ArrayList<>();
+        endpoints.add(new Endpoint("login", "/api/v1/user/login"));
+        endpoints.add(new Endpoint("register", "/api/v1/user/register"));
+        endpoints.add(new Endpoint("refresh", "/api/v1/user/refresh"));
+        endpoints.add(new Endpoint("profile", "/api/v1/user/profile"));
+        endpoints.add(new Endpoint("settings", "/api/v1/user/settings"));
+        config.setEndpoints(Collections.unmodifiableList(endpoints));
+
+        // Feature flags come from the hot-reloadable registry
+        config.setFeatures(snapshot.getFeatures());
+
         return config;
     }
+
+    /**
+     * 某一配置快照下的预计算响应
+     */
+    private final class ResponseCache {
+        private final UpdateRuleTable updateRules;
+        private final Map<UpdateBucket, PrecomputedJson> appConfigJson = new EnumMap<>(UpdateBucket.class);
+        private final PrecomputedJson clientConfigJson;
+
+        private ResponseCache(ConfigSnapshot snapshot) {
+            this.updateRules = UpdateRuleTable.compile(snapshot);
+            for (UpdateBucket bucket : UpdateBucket.values()) {
+                appConfigJson.put(bucket, PrecomputedJson.of(objectMapper,
+                        new ApiResponse<>(200, "Config retrieved successfully", buildAppConfig(snapshot, bucket))));
+            }
+            clientConfigJson = PrecomputedJson.of(objectMapper,
+                    new ApiResponse<>(200, "Configuration retrieved successfully", buildClientConfig(snapshot)));
+        }
+
+        private UpdateBucket bucketOf(String clientVersion, String deviceId) {
+            if (clientVersion == null || clientVersion.isEmpty()) {
+                return UpdateBucket.NONE;
+            }
+            Optional<SemanticVersion> version = parsedVersions.computeIfAbsent(clientVersion, SemanticVersion::tryParse);
+            if (version.isEmpty()) {
+                // 无法识别的版本号提示更新，但不强制
+                return UpdateBucket.RECOMMENDED;
+            }
+            switch (updateRules.decide(version.get(), deviceId)) {
+                case FORCED:
+                    return UpdateBucket.FORCED;
+                case RECOMMENDED:
+                    return UpdateBucket.RECOMMENDED;
+                default:
+                    return UpdateBucket.NONE;
+            }
+        }
+    }
 }
@@ -0,0 +1,258 @@
+package com.thinknows.x_server.service;
+
+import com.thinknows.x_server.model.response.FacetCount;
+import com.thinknows.x_server.util.TransactionHooks;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 标签和分类的分面计数
+ *
+ * 启动时用聚合查询初始化，之后由 PostService 在写入提交后增量更新，更新帖子时只调整有差异的标签。
+ * 其他节点的写入不会触发本节点的增量更新，后台线程按 app.posts.facets.refresh-interval-ms 重新执行聚合查询，
+ * 整体替换计数器，同时丢弃已归零的键；重新聚合期间本节点的增量可能丢失，在下一次刷新时补上。
+ * 查询只读内存中的计数器，不访问帖子表；Top-K 用大小为 K 的小顶堆从计数器中选出。
+ */
+@Service
+public class FacetService {
+
+    private static final Comparator<FacetCount> BY_COUNT =
+            Comparator.comparingLong(FacetCount::getCount).thenComparing(FacetCount::getName, Comparator.reverseOrder());
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${app.posts.facets.refresh-interval-ms:60000}")
+    private long refreshIntervalMillis;
+
+    private volatile Counts counts = new Counts();
+    private volatile boolean running;
+    private Thread refresher;
+
+    /**
+     * 一组计数器，重新聚合时整体替换
+     */
+    private static final class Counts {
+        private final Map<String, LongAdder> tags = new ConcurrentHashMap<>();
+        private final Map<String, LongAdder> categories = new ConcurrentHashMap<>();
+        // 分类 -> 标签 -> 帖子数
+        private final Map<String, Map<String, LongAdder>> tagsByCategory = new ConcurrentHashMap<>();
+    }
+
+    @PostConstruct
+    public void init() {
+        counts = load();
+        running = true;
+        refresher = new Thread(this::refreshLoop, "facet-refresh");
+        refresher.setDaemon(true);
+        refresher.start();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        if (refresher != null) {
+            refresher.interrupt();
+        }
+    }
+
+    private void refreshLoop() {
+        while (running) {
+            try {
+                Thread.sleep(refreshIntervalMillis);
+                counts = load();
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                System.err.println("Facet refresh failed: " + e.getMessage());
+            }
+        }
+    }
+
+    private Counts load() {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setReadOnly(true);
+        return template.execute(status -> aggregate());
+    }
+
+    private Counts aggregate() {
+        Counts loaded = new Counts();
+        for (Object[] row : entityManager.createQuery(
+                "SELECT p.category, COUNT(p) FROM Post p WHERE p.category IS NOT NULL GROUP BY p.category",
+                Object[].class).getResultList()) {
+            add(loaded.categories, (String) row[0], (Long) row[1]);
+        }
+        for (Object[] row : entityManager.createQuery(
+                "SELECT p.category, t, COUNT(DISTINCT p.id) FROM Post p JOIN p.tags t WHERE t IS NOT NULL GROUP BY p.category, t",
+                Object[].class).getResultList()) {
+            String category = (String) row[0];
+            String tag = (String) row[1];
+            long count = (Long) row[2];
+            // 同一帖子的标签列表可能有重复值，按帖子去重计数
+            add(loaded.tags, tag, count);
+            if (category != null) {
+                addByCategory(loaded, category, Set.of(tag), count);
+            }
+        }
+        return loaded;
+    }
+
+    /**
+     * 新帖子计入统计，在当前事务提交后生效
+     */
+    public void onCreate(String category, Collection<String> tags) {
+        Set<String> tagSet = toSet(tags);
+        TransactionHooks.afterCommit(() -> apply(counts, category, tagSet, 1));
+    }
+
+    /**
+     * 帖子更新后按差异调整统计，在当前事务提交后生效
+     */
+    public void onUpdate(String oldCategory, Collection<String> oldTags, String newCategory, Collection<String> newTags) {
+        Set<String> oldTagSet = toSet(oldTags);
+        Set<String> newTagSet = toSet(newTags);
+
+        TransactionHooks.afterCommit(() -> {
+            Counts current = counts;
+            if (!Objects.equals(oldCategory, newCategory)) {
+                // 分类变化：从旧分类整体移出，再计入新分类
+                apply(current, oldCategory, oldTagSet, -1);
+                apply(current, newCategory, newTagSet, 1);
+                return;
+            }
+            // 分类不变，只调整新增和删除的标签
+            Set<String> removed = new LinkedHashSet<>(oldTagSet);
+            removed.removeAll(newTagSet);
+            Set<String> added = new LinkedHashSet<>(newTagSet);
+            added.removeAll(oldTagSet);
+            adjustTags(current, oldCategory, removed, -1);
+            adjustTags(current, oldCategory, added, 1);
+        });
+    }
+
+    /**
+     * 删除的帖子移出统计，在当前事务提交后生效
+     */
+    public void onDelete(String category, Collection<String> tags) {
+        Set<String> tagSet = toSet(tags);
+        TransactionHooks.afterCommit(() -> apply(counts, category, tagSet, -1));
+    }
+
+    /**
+     * 帖子数最多的 K 个标签
+     * @param category 只统计该分类下的帖子，为空表示全部
+     */
+    public List<FacetCount> topTags(String category, int k) {
+        Counts current = counts;
+        if (category == null || category.isEmpty()) {
+            return top(current.tags, k);
+        }
+        return top(current.tagsByCategory.getOrDefault(category, Collections.emptyMap()), k);
+    }
+
+    /**
+     * 帖子数最多的 K 个分类
+     */
+    public List<FacetCount> topCategories(int k) {
+        return top(counts.categories, k);
+    }
+
+    private static void apply(Counts counts, String category, Set<String> tags, int delta) {
+        if (category != null) {
+            add(counts.categories, category, delta);
+        }
+        adjustTags(counts, category, tags, delta);
+    }
+
+    /**
+     * 调整全局和分类内的标签计数
+     */
+    private static void adjustTags(Counts counts, String category, Set<String> tags, int delta) {
+        for (String tag : tags) {
+            add(counts.tags, tag, delta);
+        }
+        if (category != null && !tags.isEmpty()) {
+            addByCategory(counts, category, tags, delta);
+        }
+    }
+
+    /**
+     * 调整分类内的标签计数
+     */
+    private static void addByCategory(Counts counts, String category, Set<String> tags, long delta) {
+        Map<String, LongAdder> byTag = counts.tagsByCategory.computeIfAbsent(category, key -> new ConcurrentHashMap<>());
+        for (String tag : tags) {
+            add(byTag, tag, delta);
+        }
+    }
+
+    private static List<FacetCount> top(Map<String, LongAdder> counts, int k) {
+        if (k <= 0) {
+            return Collections.emptyList();
+        }
+        PriorityQueue<FacetCount> heap = new PriorityQueue<>(k + 1, BY_COUNT);
+        counts.forEach((name, adder) -> {
+            long count = adder.sum();
+            if (count <= 0) {
+                return;
+            }
+            if (heap.size() < k) {
+                heap.add(new FacetCount(name, count));
+            } else if (count > heap.peek().getCount()
+                    || (count == heap.peek().getCount() && name.compareTo(heap.peek().getName()) < 0)) {
+                heap.poll();
+                heap.add(new FacetCount(name, count));
+            }
+        });
+        List<FacetCount> result = new ArrayList<>(heap);
+        result.sort(BY_COUNT.reversed());
+        return result;
+    }
+
+    /**
+     * 调整计数；键一旦存在，计数只经过 LongAdder，不在哈希桶上串行。
+     * 归零的键不在这里移除（移除会与并发的加一竞争），查询时跳过，重新聚合时丢弃
+     */
+    private static void add(Map<String, LongAdder> counts, String key, long delta) {
+        LongAdder counter = counts.get(key);
+        if (counter == null) {
+            counter = counts.computeIfAbsent(key, k -> new LongAdder());
+        }
+        counter.add(delta);
+    }
+
+    private static Set<String> toSet(Collection<String> tags) {
+        Set<String> set = new LinkedHashSet<>();
+        if (tags != null) {
+            for (String tag : tags) {
+                if (tag != null) {
+                    set.add(tag);
+                }
+            }
+        }
+        return set;
+    }
+}
@@ -0,0 +1,338 @@
+package com.thinknows.x_server.service;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 日志上传限流与配额
+ *
+ * 按客户端IP、设备ID、用户ID维护令牌桶和每日字节配额。设备ID和用户ID由客户端提供，每次换一个新值
+ * 就能得到一个满的桶，因此客户端IP（getRemoteAddr()，经过可信代理时由 server.forward-headers-strategy 还原）
+ * 总是计入，使用单独的、更宽松的限额，以容纳同一出口地址后面的多个设备。
+ * 令牌桶采用 GCRA 实现，每个键只需一个 AtomicLong，通过 CAS 更新，无锁。
+ * 一次请求依次从各键取令牌，任一键拒绝时归还已从前面的键取得的令牌。
+ * 每日用量把日期和字节数打包在同一个 AtomicLong 中，跨天自动归零。
+ * 键的数量有上限，超出时由后台线程按最近访问时间淘汰空闲的键，请求线程不做全量扫描。
+ */
+@Service
+public class IngestRateLimiter {
+
+    /**
+     * 限流判定结果
+     */
+    public static final class Verdict {
+        private static final Verdict ALLOWED = new Verdict(true, 0, null);
+
+        private final boolean allowed;
+        private final long retryAfterSeconds;
+        private final String reason;
+
+        private Verdict(boolean allowed, long retryAfterSeconds, String reason) {
+            this.allowed = allowed;
+            this.retryAfterSeconds = retryAfterSeconds;
+            this.reason = reason;
+        }
+
+        public boolean isAllowed() {
+            return allowed;
+        }
+
+        public long getRetryAfterSeconds() {
+            return retryAfterSeconds;
+        }
+
+        public String getReason() {
+            return reason;
+        }
+    }
+
+    // 每日用量打包格式：高 20 位为 epochDay，低 44 位为字节数
+    private static final int BYTES_BITS = 44;
+    private static final long BYTES_MASK = (1L << BYTES_BITS) - 1;
+
+    private final Map<String, Bucket> buckets = new ConcurrentHashMap<>();
+    private final Semaphore sweepRequests = new Semaphore(0);
+    private final AtomicBoolean sweepRequested = new AtomicBoolean(false);
+    private volatile boolean running;
+    private Thread sweeper;
+
+    @Value("${app.log.rate-limit.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.log.rate-limit.requests-per-minute:12}")
+    private int requestsPerMinute;
+
+    @Value("${app.log.rate-limit.burst:5}")
+    private int burst;
+
+    @Value("${app.log.rate-limit.ip-requests-per-minute:60}")
+    private int ipRequestsPerMinute;
+
+    @Value("${app.log.rate-limit.ip-burst:20}")
+    private int ipBurst;
+
+    @Value("${app.log.rate-limit.max-keys:100000}")
+    private int maxKeys;
+
+    @Value("${app.log.quota.device-daily-bytes:104857600}")
+    private long deviceDailyBytes;
+
+    @Value("${app.log.quota.user-daily-bytes:524288000}")
+    private long userDailyBytes;
+
+    @Value("${app.log.quota.ip-daily-bytes:1073741824}")
+    private long ipDailyBytes;
+
+    @PostConstruct
+    public void init() {
+        running = true;
+        sweeper = new Thread(this::sweepLoop, "ingest-rate-limiter-sweeper");
+        sweeper.setDaemon(true);
+        sweeper.start();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        if (sweeper != null) {
+            sweeper.interrupt();
+        }
+    }
+
+    /**
+     * 在读取请求体之前检查请求频率和当日配额
+     * @param deviceId 请求头中的设备ID，可为空
+     * @param userId 请求头中的用户ID，可为空
+     * @param clientIp 客户端IP，总是计入
+     * @param contentLength 请求体长度，未知时为 -1
+     * @return 判定结果
+     */
+    public Verdict tryAcquire(String deviceId, String userId, String clientIp, long contentLength) {
+        if (!enabled) {
+            return Verdict.ALLOWED;
+        }
+        return acquire(keys(deviceId, userId, clientIp), Math.max(contentLength, 0));
+    }
+
+    /**
+     * 请求体解析后，对表单中与请求头不同的设备ID和用户ID再做一次频率和配额检查，
+     * 避免请求头留空或填写其他值来绕过按设备/用户的限制
+     */
+    public Verdict tryAcquireForm(String deviceId, String userId, String headerDeviceId, String headerUserId) {
+        if (!enabled) {
+            return Verdict.ALLOWED;
+        }
+        List<Key> keys = new ArrayList<>(2);
+        if (hasText(deviceId) && !deviceId.equals(headerDeviceId)) {
+            keys.add(new Key("device:" + deviceId, deviceDailyBytes, requestsPerMinute, burst));
+        }
+        if (hasText(userId) && !userId.equals(headerUserId)) {
+            keys.add(new Key("user:" + userId, userDailyBytes, requestsPerMinute, burst));
+        }
+        return keys.isEmpty() ? Verdict.ALLOWED : acquire(keys, 0);
+    }
+
+    /**
+     * 记录实际写入磁盘的字节数，计入客户端IP以及表单中的设备ID和用户ID
+     */
+    public void recordBytes(String deviceId, String userId, String clientIp, long bytes) {
+        if (!enabled || bytes <= 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        long today = LocalDate.now().toEpochDay();
+        for (Key key : keys(deviceId, userId, clientIp)) {
+            bucket(key.name, now).addBytes(today, bytes);
+        }
+    }
+
+    /**
+     * 当前跟踪的键数量
+     */
+    public int getTrackedKeys() {
+        return buckets.size();
+    }
+
+    private Verdict acquire(List<Key> keys, long incoming) {
+        long now = System.nanoTime();
+        long today = LocalDate.now().toEpochDay();
+        List<Bucket> keyed = new ArrayList<>(keys.size());
+        for (Key key : keys) {
+            keyed.add(bucket(key.name, now));
+        }
+
+        // 先检查配额，避免因配额不足的请求消耗令牌
+        for (int i = 0; i < keys.size(); i++) {
+            long used = bytesUsed(keyed.get(i).dailyUsage.get(), today);
+            if (used + incoming > keys.get(i).dailyBytes) {
+                return new Verdict(false, secondsUntilTomorrow(), "Daily log upload quota exceeded");
+            }
+        }
+
+        for (int i = 0; i < keys.size(); i++) {
+            Key key = keys.get(i);
+            long waitNanos = keyed.get(i).tryTake(now, emissionIntervalNanos(key.requestsPerMinute), key.burst);
+            if (waitNanos > 0) {
+                // 被拒绝的请求不占用前面各键的令牌，否则一个设备超限会耗尽同一出口IP下所有设备的额度
+                for (int j = 0; j < i; j++) {
+                    keyed.get(j).refund(emissionIntervalNanos(keys.get(j).requestsPerMinute));
+                }
+                return new Verdict(false, Math.max(1, TimeUnit.NANOSECONDS.toSeconds(waitNanos) + 1),
+                        "Too many log uploads");
+            }
+        }
+        return Verdict.ALLOWED;
+    }
+
+    private List<Key> keys(String deviceId, String userId, String clientIp) {
+        List<Key> keys = new ArrayList<>(3);
+        if (hasText(clientIp)) {
+            keys.add(new Key("ip:" + clientIp, ipDailyBytes, ipRequestsPerMinute, ipBurst));
+        }
+        if (hasText(deviceId)) {
+            keys.add(new Key("device:" + deviceId, deviceDailyBytes, requestsPerMinute, burst));
+        }
+        if (hasText(userId)) {
+            keys.add(new Key("user:" + userId, userDailyBytes, requestsPerMinute, burst));
+        }
+        return keys;
+    }
+
+    private Bucket bucket(String key, long now) {
+        Bucket bucket = buckets.computeIfAbsent(key, k -> new Bucket());
+        bucket.lastAccessNanos = now;
+        if (buckets.size() > maxKeys && sweepRequested.compareAndSet(false, true)) {
+            sweepRequests.release();
+        }
+        return bucket;
+    }
+
+    private void sweepLoop() {
+        while (running) {
+            try {
+                sweepRequests.acquire();
+                evictIdle();
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                System.err.println("Ingest rate limiter sweep failed: " + e.getMessage());
+            } finally {
+                sweepRequested.set(false);
+            }
+        }
+    }
+
+    /**
+     * 按最近访问时间淘汰最久未使用的键，使键数量回落到上限的 90%；只在后台线程执行
+     */
+    private void evictIdle() {
+        int target = (int) (maxKeys * 0.9);
+        int excess = buckets.size() - target;
+        if (excess <= 0) {
+            return;
+        }
+        List<Map.Entry<String, Bucket>> entries = new ArrayList<>(buckets.entrySet());
+        entries.sort((a, b) -> Long.compare(a.getValue().lastAccessNanos, b.getValue().lastAccessNanos));
+        for (int i = 0; i < excess && i < entries.size(); i++) {
+            Map.Entry<String, Bucket> entry = entries.get(i);
+            buckets.remove(entry.getKey(), entry.getValue());
+        }
+    }
+
+    private static long emissionIntervalNanos(int requestsPerMinute) {
+        return TimeUnit.MINUTES.toNanos(1) / Math.max(1, requestsPerMinute);
+    }
+
+    private static long bytesUsed(long packed, long today) {
+        return (packed >>> BYTES_BITS) == today ? packed & BYTES_MASK : 0;
+    }
+
+    private static long secondsUntilTomorrow() {
+        return Math.max(1, Duration.between(
+                LocalDateTime.now(), LocalDate.now().plusDays(1).atStartOfDay()).getSeconds());
+    }
+
+    private static boolean hasText(String value) {
+        return value != null && !value.isEmpty();
+    }
+
+    /**
+     * 一个限流键及其限额
+     */
+    private static final class Key {
+        final String name;
+        final long dailyBytes;
+        final int requestsPerMinute;
+        final int burst;
+
+        Key(String name, long dailyBytes, int requestsPerMinute, int burst) {
+            this.name = name;
+            this.dailyBytes = dailyBytes;
+            this.requestsPerMinute = requestsPerMinute;
+            this.burst = burst;
+        }
+    }
+
+    /**
+     * 单个键的限流状态
+     */
+    private static final class Bucket {
+        // GCRA 理论到达时间（System.nanoTime 时间轴）
+        private final AtomicLong theoreticalArrival = new AtomicLong(Long.MIN_VALUE);
+        // 打包的当日用量
+        private final AtomicLong dailyUsage = new AtomicLong();
+        private volatile long lastAccessNanos;
+
+        /**
+         * 尝试获取一个令牌
+         * @return 0 表示成功，否则为需要等待的纳秒数
+         */
+        long tryTake(long now, long interval, int burst) {
+            long tolerance = interval * Math.max(1, burst);
+            while (true) {
+                long tat = theoreticalArrival.get();
+                long base = tat == Long.MIN_VALUE || tat - now < 0 ? now : tat;
+                long next = base + interval;
+                long excess = next - now - tolerance;
+                if (excess > 0) {
+                    return excess;
+                }
+                if (theoreticalArrival.compareAndSet(tat, next)) {
+                    return 0;
+                }
+            }
+        }
+
+        /**
+         * 归还一个已获取的令牌
+         */
+        void refund(long interval) {
+            theoreticalArrival.addAndGet(-interval);
+        }
+
+        void addBytes(long today, long bytes) {
+            while (true) {
+                long packed = dailyUsage.get();
+                long used = bytesUsed(packed, today);
+                long updated = (today << BYTES_BITS) | Math.min(BYTES_MASK, used + bytes);
+                if (dailyUsage.compareAndSet(packed, updated)) {
+                    return;
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,318 @@
+package com.thinknows.x_server.service;
+
+import com.thinknows.x_server.model.response.LogUsageResponse;
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.DirectoryNotEmptyException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * 日志保留策略
+ *
+ * 启动时扫描一次日志目录，之后在写入和删除时增量维护按日期/用户/设备汇总的字节数，
+ * 并按文件写入顺序维护全局和每个设备的队列。超出保留天数、总容量上限或单设备上限时，
+ * 直接从队列头部淘汰最旧的文件，不再重复扫描目录树。
+ */
+@Service
+public class LogRetentionService {
+
+    private static final DateTimeFormatter DATE_FORMAT = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+
+    @Value("${app.log.storage.path:./logs}")
+    private String logStoragePath;
+
+    @Value("${app.log.retention-days:30}")
+    private int retentionDays;
+
+    @Value("${app.log.retention.max-total-bytes:0}")
+    private long maxTotalBytes;
+
+    @Value("${app.log.retention.max-device-bytes:0}")
+    private long maxDeviceBytes;
+
+    // 按 (日期, 写入序号) 排序的全部日志文件，头部即最旧的文件
+    private final ConcurrentSkipListMap<FileKey, LogFile> files = new ConcurrentSkipListMap<>();
+    // 日期 -> 用户 -> 设备 -> 字节数
+    private final Map<String, Map<String, Map<String, AtomicLong>>> usageByDate = new ConcurrentHashMap<>();
+    // 用户/设备 -> 该设备的文件队列和字节数，队列清空时移除
+    private final Map<String, DeviceUsage> usageByDevice = new ConcurrentHashMap<>();
+    private final Queue<DeviceUsage> pendingDevices = new ConcurrentLinkedQueue<>();
+
+    private final AtomicLong totalBytes = new AtomicLong();
+    private final AtomicLong totalFiles = new AtomicLong();
+    private final AtomicLong sequence = new AtomicLong();
+    private final ReentrantLock enforceLock = new ReentrantLock();
+
+    /**
+     * 启动时扫描一次已有日志，建立初始用量
+     */
+    @PostConstruct
+    public void init() {
+        Path root = Paths.get(logStoragePath);
+        if (!Files.isDirectory(root)) {
+            return;
+        }
+
+        List<Path> existing = new ArrayList<>();
+        try (Stream<Path> walk = Files.walk(root, 4)) {
+            walk.filter(path -> root.relativize(path).getNameCount() == 4)
+                    .filter(Files::isRegularFile)
+                    .forEach(existing::add);
+        } catch (IOException e) {
+            System.err.println("Error scanning log directory: " + e.getMessage());
+            return;
+        }
+
+        // 日期目录和文件名都以时间开头，按相对路径排序即为写入顺序
+        existing.sort(Comparator.comparing(path -> root.relativize(path).toString()));
+        for (Path path : existing) {
+            Path relative = root.relativize(path);
+            try {
+                track(path, relative.getName(0).toString(), relative.getName(1).toString(),
+                        relative.getName(2).toString(), Files.size(path));
+            } catch (IOException e) {
+                System.err.println("Error reading log file size: " + e.getMessage());
+            }
+        }
+        // 与原先一致，淘汰只在写入新日志时触发
+    }
+
+    /**
+     * 记录新写入的日志文件，并按保留策略淘汰旧文件
+     */
+    public void recordWrite(Path path, String date, String user, String device, long size) {
+        track(path, date, user, device, size);
+        enforce();
+    }
+
+    /**
+     * 单个日志文件允许的最大字节数：单设备上限和总容量上限中较小的一个，都未设置时为 0（不限制）。
+     * 超过该大小的文件写入后会立即被自己的上限淘汰，因此在保存前拒绝。
+     */
+    public long getMaxFileBytes() {
+        if (maxDeviceBytes > 0 && maxTotalBytes > 0) {
+            return Math.min(maxDeviceBytes, maxTotalBytes);
+        }
+        return Math.max(maxDeviceBytes, maxTotalBytes);
+    }
+
+    /**
+     * 当前日志用量
+     * @param date 需要展开用户/设备明细的日期，为空时只返回按日期的汇总
+     */
+    public LogUsageResponse getUsage(String date) {
+        LogUsageResponse response = new LogUsageResponse();
+        response.setTotalBytes(totalBytes.get());
+        response.setTotalFiles(totalFiles.get());
+        response.setMaxTotalBytes(maxTotalBytes);
+        response.setMaxDeviceBytes(maxDeviceBytes);
+        response.setRetentionDays(retentionDays);
+
+        NavigableMap<String, Long> byDate = new TreeMap<>();
+        usageByDate.forEach((day, users) -> byDate.put(day, sum(users)));
+        response.setBytesByDate(byDate);
+
+        if (date != null && usageByDate.containsKey(date)) {
+            Map<String, Map<String, Long>> byUser = new TreeMap<>();
+            usageByDate.get(date).forEach((user, devices) -> {
+                Map<String, Long> byDevice = new TreeMap<>();
+                devices.forEach((device, bytes) -> byDevice.put(device, bytes.get()));
+                byUser.put(user, byDevice);
+            });
+            response.setDate(date);
+            response.setBytesByUserAndDevice(byUser);
+        }
+        return response;
+    }
+
+    private void track(Path path, String date, String user, String device, long size) {
+        LogFile file = new LogFile(path, date, user, device, size, sequence.incrementAndGet());
+        files.put(file.key, file);
+        // 与 evict 中的移除在同一个键上串行，不会把文件加入已经移除的队列
+        DeviceUsage deviceUsage = usageByDevice.compute(user + "/" + device, (k, usage) -> {
+            DeviceUsage current = usage != null ? usage : new DeviceUsage();
+            current.files.addLast(file);
+            current.bytes.addAndGet(size);
+            return current;
+        });
+        counter(date, user, device).addAndGet(size);
+        totalBytes.addAndGet(size);
+        totalFiles.incrementAndGet();
+
+        if (maxDeviceBytes > 0 && deviceUsage.bytes.get() > maxDeviceBytes) {
+            pendingDevices.add(deviceUsage);
+        }
+    }
+
+    /**
+     * 依次执行按天数、单设备上限和总容量上限的淘汰。
+     * 同一时间只有一个线程执行，其它线程等待后再检查一次，保证每次写入之后都执行过完整的检查。
+     */
+    private void enforce() {
+        enforceLock.lock();
+        try {
+            String cutoff = LocalDate.now().minusDays(retentionDays).format(DATE_FORMAT);
+            Map.Entry<FileKey, LogFile> oldest;
+            while ((oldest = files.firstEntry()) != null && oldest.getKey().date.compareTo(cutoff) < 0) {
+                evict(oldest.getValue());
+            }
+
+            DeviceUsage deviceUsage;
+            while ((deviceUsage = pendingDevices.poll()) != null) {
+                while (deviceUsage.bytes.get() > maxDeviceBytes) {
+                    LogFile file = deviceUsage.files.peekFirst();
+                    if (file == null) {
+                        break;
+                    }
+                    evict(file);
+                }
+            }
+
+            while (maxTotalBytes > 0 && totalBytes.get() > maxTotalBytes
+                    && (oldest = files.firstEntry()) != null) {
+                evict(oldest.getValue());
+            }
+        } finally {
+            enforceLock.unlock();
+        }
+    }
+
+    private void evict(LogFile file) {
+        if (!file.removed.compareAndSet(false, true)) {
+            return;
+        }
+        files.remove(file.key);
+        usageByDevice.computeIfPresent(file.user + "/" + file.device, (k, usage) -> {
+            // 淘汰按写入顺序进行，文件就是该设备队列的头部；并发写入使顺序交错时才退回线性查找
+            if (usage.files.peekFirst() == file) {
+                usage.files.pollFirst();
+            } else {
+                usage.files.remove(file);
+            }
+            usage.bytes.addAndGet(-file.size);
+            return usage.files.isEmpty() ? null : usage;
+        });
+        counter(file.date, file.user, file.device).addAndGet(-file.size);
+        totalBytes.addAndGet(-file.size);
+        totalFiles.decrementAndGet();
+        pruneUsage(file.date, file.user, file.device);
+
+        try {
+            Files.deleteIfExists(file.path);
+            deleteEmptyParents(file.path.getParent(), 3);
+        } catch (IOException e) {
+            System.err.println("Error deleting log file: " + e.getMessage());
+        }
+    }
+
+    private void deleteEmptyParents(Path directory, int levels) throws IOException {
+        for (int i = 0; i < levels && directory != null; i++) {
+            try {
+                Files.deleteIfExists(directory);
+            } catch (DirectoryNotEmptyException e) {
+                return;
+            }
+            directory = directory.getParent();
+        }
+    }
+
+    private AtomicLong counter(String date, String user, String device) {
+        return usageByDate
+                .computeIfAbsent(date, k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(user, k -> new ConcurrentHashMap<>())
+                .computeIfAbsent(device, k -> new AtomicLong());
+    }
+
+    /**
+     * 移除字节数已归零的汇总项，避免过期日期长期占用内存。
+     * 当天的汇总项仍在写入，不做清理。
+     */
+    private void pruneUsage(String date, String user, String device) {
+        Map<String, Map<String, AtomicLong>> users = usageByDate.get(date);
+        if (users == null || date.compareTo(LocalDate.now().format(DATE_FORMAT)) >= 0) {
+            return;
+        }
+        Map<String, AtomicLong> devices = users.get(user);
+        if (devices != null) {
+            devices.computeIfPresent(device, (k, bytes) -> bytes.get() == 0 ? null : bytes);
+            users.computeIfPresent(user, (k, v) -> v.isEmpty() ? null : v);
+        }
+        usageByDate.computeIfPresent(date, (k, v) -> v.isEmpty() ? null : v);
+    }
+
+    private static long sum(Map<String, Map<String, AtomicLong>> users) {
+        long total = 0;
+        for (Map<String, AtomicLong> devices : users.values()) {
+            for (AtomicLong bytes : devices.values()) {
+                total += bytes.get();
+            }
+        }
+        return total;
+    }
+
+    /**
+     * 全局排序键：先按日期，再按写入序号
+     */
+    private static final class FileKey implements Comparable<FileKey> {
+        private final String date;
+        private final long sequence;
+
+        private FileKey(String date, long sequence) {
+            this.date = date;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(FileKey other) {
+            int result = date.compareTo(other.date);
+            return result != 0 ? result : Long.compare(sequence, other.sequence);
+        }
+    }
+
+    private static final class LogFile {
+        private final FileKey key;
+        private final Path path;
+        private final String date;
+        private final String user;
+        private final String device;
+        private final long size;
+        private final AtomicBoolean removed = new AtomicBoolean(false);
+
+        private LogFile(Path path, String date, String user, String device, long size, long sequence) {
+            this.key = new FileKey(date, sequence);
+            this.path = path;
+            this.date = date;
+            this.user = user;
+            this.device = device;
+            this.size = size;
+        }
+    }
+
+    private static final class DeviceUsage {
+        private final Deque<LogFile> files = new ConcurrentLinkedDeque<>();
+        private final AtomicLong bytes = new AtomicLong();
+    }
+}
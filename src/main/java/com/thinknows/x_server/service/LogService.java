@@ -1,10 +1,10 @@
 package com.thinknows.x_server.service;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.File;
 import java.io.FileOutputStream;
 import java.io.IOException;
 import java.nio.file.Files;
@@ -18,6 +18,21 @@ import java.util.zip.GZIPInputStream;
 @Service
 public class LogService {
 
+    /**
+     * 日志文件超过保留策略允许的单文件大小
+     */
+    public static class LogTooLargeException extends RuntimeException {
+        public LogTooLargeException(String message) {
+            super(message);
+        }
+    }
+
+    @Autowired
+    private IngestRateLimiter ingestRateLimiter;
+
+    @Autowired
+    private LogRetentionService logRetentionService;
+
     @Value("${app.log.storage.path:./logs}")
     private String logStoragePath;
 
@@ -36,9 +51,18 @@ public class LogService {
      * @param deviceId 设备ID
      * @param userId 用户ID
      * @param logType 日志类型
+     * @param clientIp 客户端IP，计入按IP的配额
      * @return 保存的文件路径
+     * @throws LogTooLargeException 文件（解压后）超过单设备上限或总容量上限
      */
-    public String saveLogFile(MultipartFile file, String deviceId, String userId, String logType) throws IOException {
+    public String saveLogFile(MultipartFile file, String deviceId, String userId, String logType,
+                              String clientIp) throws IOException {
+        long maxBytes = logRetentionService.getMaxFileBytes();
+        boolean gzip = file.getOriginalFilename() != null && file.getOriginalFilename().endsWith(".gz");
+        if (maxBytes > 0 && !gzip && file.getSize() > maxBytes) {
+            throw new LogTooLargeException("Log file exceeds " + maxBytes + " bytes");
+        }
+
         // 创建存储目录
         String dateFolder = LocalDateTime.now().format(DateTimeFormatter.ofPattern("yyyy-MM-dd"));
         String userFolder = userId != null ? userId : "anonymous";
@@ -55,68 +79,41 @@ public class LogService {
         Path targetPath = storagePath.resolve(fileName);
         
         // 解压并保存文件
-        if (file.getOriginalFilename() != null && file.getOriginalFilename().endsWith(".gz")) {
+        if (gzip) {
+            // 解压后的大小事先未知，边写边计数，超限时删除已写入的部分
+            boolean tooLarge = false;
             try (GZIPInputStream gzipInputStream = new GZIPInputStream(file.getInputStream());
                  FileOutputStream outputStream = new FileOutputStream(targetPath.toFile())) {
                 
                 byte[] buffer = new byte[1024];
+                long written = 0;
                 int len;
                 while ((len = gzipInputStream.read(buffer)) > 0) {
+                    written += len;
+                    if (maxBytes > 0 && written > maxBytes) {
+                        tooLarge = true;
+                        break;
+                    }
                     outputStream.write(buffer, 0, len);
                 }
             }
+            if (tooLarge) {
+                Files.deleteIfExists(targetPath);
+                throw new LogTooLargeException("Log file exceeds " + maxBytes + " bytes");
+            }
         } else {
             // 如果不是gzip格式，直接保存
             file.transferTo(targetPath);
         }
         
-        // 清理过期日志
-        cleanupOldLogs();
+        // 记录当日配额用量和磁盘用量，并按保留策略清理旧日志
+        long size = Files.size(targetPath);
+        ingestRateLimiter.recordBytes(deviceId, userId, clientIp, size);
+        logRetentionService.recordWrite(targetPath, dateFolder, userFolder, deviceFolder, size);
         
         return targetPath.toString();
     }
     
-    /**
-     * 清理过期日志
-     */
-    private void cleanupOldLogs() {
-        try {
-            LocalDateTime cutoffDate = LocalDateTime.now().minusDays(logRetentionDays);
-            String cutoffDateStr = cutoffDate.format(DateTimeFormatter.ofPattern("yyyy-MM-dd"));
-            
-            File logDir = new File(logStoragePath);
-            File[] dateDirs = logDir.listFiles();
-            
-            if (dateDirs != null) {
-                for (File dateDir : dateDirs) {
-                    if (dateDir.isDirectory() && dateDir.getName().compareTo(cutoffDateStr) < 0) {
-                        deleteDirectory(dateDir);
-                    }
-                }
-            }
-        } catch (Exception e) {
-            // 记录错误但不影响主流程
-            System.err.println("Error cleaning up old logs: " + e.getMessage());
-        }
-    }
-    
-    /**
-     * 递归删除目录
-     */
-    private void deleteDirectory(File directory) {
-        File[] files = directory.listFiles();
-        if (files != null) {
-            for (File file : files) {
-                if (file.isDirectory()) {
-                    deleteDirectory(file);
-                } else {
-                    file.delete();
-                }
-            }
-        }
-        directory.delete();
-    }
-    
     /**
      * 获取日志上传配置
      */
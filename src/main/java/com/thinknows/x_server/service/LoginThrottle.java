@@ -0,0 +1,330 @@
+package com.thinknows.x_server.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import jakarta.annotation.PostConstruct;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * 登录失败的滑动窗口限流
+ *
+ * 按用户名和客户端IP分别统计最近一个窗口内的登录失败次数，窗口切分为若干个时间桶，过期的桶在复用时清零，
+ * 计数随时间自动衰减。检查只读内存中的计数器，在查询数据库和 BCrypt 校验之前执行，攻击流量的拒绝代价很低。
+ *
+ * 用户名维度每个键一组 LongAdder 桶，登录成功时清零。只为 UserExistenceFilter 认为可能存在的用户名建立窗口，
+ * 攻击者用大量不存在的用户名只会计入IP维度，挤不掉真实用户的窗口；键的数量仍有上限，超出时近似淘汰最久未访问的键。
+ * IP 维度使用计数最小草图（count-min sketch），内存固定，与IP数量无关；哈希冲突只会高估计数。
+ */
+@Service
+public class LoginThrottle {
+
+    /**
+     * 判定结果
+     */
+    public static final class Verdict {
+        private static final Verdict ALLOWED = new Verdict(true, false, 0);
+
+        private final boolean allowed;
+        private final boolean userLimited;
+        private final long retryAfterSeconds;
+
+        private Verdict(boolean allowed, boolean userLimited, long retryAfterSeconds) {
+            this.allowed = allowed;
+            this.userLimited = userLimited;
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+
+        public boolean isAllowed() {
+            return allowed;
+        }
+
+        /**
+         * 被拒绝的原因是用户名维度（否则为IP维度）
+         */
+        public boolean isUserLimited() {
+            return userLimited;
+        }
+
+        public long getRetryAfterSeconds() {
+            return retryAfterSeconds;
+        }
+    }
+
+    // 淘汰时抽样估计最近访问时间分位数的样本数
+    private static final int EVICTION_SAMPLE = 256;
+
+    @Autowired
+    private UserExistenceFilter userExistenceFilter;
+
+    private final Map<String, UserWindow> users = new ConcurrentHashMap<>();
+    private final AtomicBoolean evicting = new AtomicBoolean(false);
+
+    @Value("${app.auth.throttle.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.auth.throttle.window-seconds:900}")
+    private int windowSeconds;
+
+    @Value("${app.auth.throttle.buckets:15}")
+    private int bucketCount;
+
+    @Value("${app.auth.throttle.max-user-failures:5}")
+    private int maxUserFailures;
+
+    @Value("${app.auth.throttle.max-ip-failures:50}")
+    private int maxIpFailures;
+
+    @Value("${app.auth.throttle.max-users:100000}")
+    private int maxUsers;
+
+    @Value("${app.auth.throttle.ip-sketch-width:4096}")
+    private int sketchWidth;
+
+    @Value("${app.auth.throttle.ip-sketch-depth:4}")
+    private int sketchDepth;
+
+    private long bucketMillis;
+    private IpSketch ipSketch;
+
+    @PostConstruct
+    public void init() {
+        bucketCount = Math.max(1, bucketCount);
+        bucketMillis = Math.max(1, windowSeconds * 1000L / bucketCount);
+        ipSketch = new IpSketch(bucketCount, Math.max(1, sketchDepth), Math.max(16, sketchWidth));
+    }
+
+    /**
+     * 登录前检查，用户名或IP在窗口内的失败次数达到上限时拒绝
+     * @param clientIp 客户端IP，可为空
+     */
+    public Verdict check(String username, String clientIp) {
+        if (!enabled) {
+            return Verdict.ALLOWED;
+        }
+        long slot = currentSlot();
+        UserWindow window = username != null ? users.get(username) : null;
+        if (window != null && window.sum(slot) >= maxUserFailures) {
+            return new Verdict(false, true, retryAfterSeconds(window.oldestLiveSlot(slot)));
+        }
+        if (clientIp != null && ipSketch.estimate(clientIp, slot) >= maxIpFailures) {
+            return new Verdict(false, false, retryAfterSeconds(slot - bucketCount + 1));
+        }
+        return Verdict.ALLOWED;
+    }
+
+    /**
+     * 记录一次登录失败
+     * @return 用户名在窗口内的失败次数是否达到上限
+     */
+    public boolean recordFailure(String username, String clientIp) {
+        if (!enabled) {
+            return false;
+        }
+        long slot = currentSlot();
+        if (clientIp != null) {
+            ipSketch.add(clientIp, slot);
+        }
+        // 一定不存在的用户名不建立窗口，登录流程对它们本来也不会锁定任何账户
+        if (username == null || !userExistenceFilter.mightContainUsername(username)) {
+            return false;
+        }
+        UserWindow window = users.computeIfAbsent(username, key -> new UserWindow(bucketCount));
+        window.lastAccessSlot = slot;
+        window.add(slot);
+        if (users.size() > maxUsers) {
+            evictIdle(slot);
+        }
+        return window.sum(slot) >= maxUserFailures;
+    }
+
+    /**
+     * 登录成功后清除用户名维度的计数；IP维度不清除，避免攻击者用自己的账户重置计数
+     */
+    public void recordSuccess(String username) {
+        if (username != null) {
+            users.remove(username);
+        }
+    }
+
+    /**
+     * 当前跟踪的用户名数量
+     */
+    public int getTrackedUsers() {
+        return users.size();
+    }
+
+    private long currentSlot() {
+        return System.currentTimeMillis() / bucketMillis;
+    }
+
+    private long retryAfterSeconds(long oldestSlot) {
+        long decayAt = (oldestSlot + bucketCount) * bucketMillis;
+        return Math.max(1, (decayAt - System.currentTimeMillis() + 999) / 1000);
+    }
+
+    /**
+     * 近似淘汰最久未访问的用户名，使数量回落到上限的 90%
+     *
+     * 不复制也不排序整张表：先抽样估计需要淘汰的比例对应的最近访问时间分位数，再遍历一次，
+     * 移除已滑出窗口的键和不晚于该分位数的键，移除够数即停止。每增长上限的 10% 才执行一次，均摊到每次失败是常数。
+     */
+    private void evictIdle(long slot) {
+        if (!evicting.compareAndSet(false, true)) {
+            return;
+        }
+        try {
+            int size = users.size();
+            int excess = size - (int) (maxUsers * 0.9);
+            if (excess <= 0) {
+                return;
+            }
+            long[] sample = new long[Math.min(EVICTION_SAMPLE, size)];
+            int sampled = 0;
+            for (Iterator<UserWindow> iterator = users.values().iterator(); iterator.hasNext() && sampled < sample.length; ) {
+                sample[sampled++] = iterator.next().lastAccessSlot;
+            }
+            Arrays.sort(sample, 0, sampled);
+            long threshold = sampled > 0
+                    ? sample[Math.min(sampled - 1, (int) ((long) excess * sampled / size))] : Long.MIN_VALUE;
+            long expiredBefore = slot - bucketCount;
+
+            int removed = 0;
+            for (Iterator<UserWindow> iterator = users.values().iterator(); iterator.hasNext() && removed < excess; ) {
+                long lastAccess = iterator.next().lastAccessSlot;
+                if (lastAccess <= expiredBefore || lastAccess <= threshold) {
+                    iterator.remove();
+                    removed++;
+                }
+            }
+        } finally {
+            evicting.set(false);
+        }
+    }
+
+    /**
+     * 单个用户名的滑动窗口：环形的 LongAdder 桶，每个桶记录所属时间槽，槽号落后一整圈时清零复用
+     */
+    private static final class UserWindow {
+        private final LongAdder[] counts;
+        private final AtomicLongArray slots;
+        private volatile long lastAccessSlot;
+
+        UserWindow(int buckets) {
+            counts = new LongAdder[buckets];
+            slots = new AtomicLongArray(buckets);
+            for (int i = 0; i < buckets; i++) {
+                counts[i] = new LongAdder();
+                slots.set(i, Long.MIN_VALUE);
+            }
+        }
+
+        void add(long slot) {
+            int index = (int) Math.floorMod(slot, counts.length);
+            long current = slots.get(index);
+            if (current != slot && slots.compareAndSet(index, current, slot)) {
+                // 清零与并发的计数之间存在竞争，最多少计几次失败
+                counts[index].reset();
+            }
+            counts[index].increment();
+        }
+
+        long sum(long slot) {
+            long total = 0;
+            for (int i = 0; i < counts.length; i++) {
+                if (slots.get(i) > slot - counts.length) {
+                    total += counts[i].sum();
+                }
+            }
+            return total;
+        }
+
+        long oldestLiveSlot(long slot) {
+            long oldest = slot;
+            for (int i = 0; i < counts.length; i++) {
+                long bucketSlot = slots.get(i);
+                if (bucketSlot > slot - counts.length && bucketSlot < oldest && counts[i].sum() > 0) {
+                    oldest = bucketSlot;
+                }
+            }
+            return oldest;
+        }
+    }
+
+    /**
+     * IP 维度的计数最小草图：每个时间桶一张 depth x width 的计数表，估计值为各行计数（窗口内求和）的最小值
+     */
+    private static final class IpSketch {
+        private final AtomicLongArray[] tables;
+        private final AtomicLongArray slots;
+        private final long[] seeds;
+        private final int width;
+
+        IpSketch(int buckets, int depth, int width) {
+            this.width = width;
+            tables = new AtomicLongArray[buckets];
+            slots = new AtomicLongArray(buckets);
+            for (int i = 0; i < buckets; i++) {
+                tables[i] = new AtomicLongArray(depth * width);
+                slots.set(i, Long.MIN_VALUE);
+            }
+            // 随机种子，避免攻击者构造与受害IP冲突的地址
+            SecureRandom random = new SecureRandom();
+            seeds = new long[depth];
+            for (int row = 0; row < depth; row++) {
+                seeds[row] = random.nextLong();
+            }
+        }
+
+        void add(String ip, long slot) {
+            int index = (int) Math.floorMod(slot, tables.length);
+            AtomicLongArray table = tables[index];
+            long current = slots.get(index);
+            if (current != slot && slots.compareAndSet(index, current, slot)) {
+                for (int i = 0; i < table.length(); i++) {
+                    table.set(i, 0);
+                }
+            }
+            for (int row = 0; row < seeds.length; row++) {
+                table.incrementAndGet(row * width + cell(ip, row));
+            }
+        }
+
+        long estimate(String ip, long slot) {
+            long min = Long.MAX_VALUE;
+            for (int row = 0; row < seeds.length; row++) {
+                int cell = row * width + cell(ip, row);
+                long total = 0;
+                for (int i = 0; i < tables.length; i++) {
+                    if (slots.get(i) > slot - tables.length) {
+                        total += tables[i].get(cell);
+                    }
+                }
+                min = Math.min(min, total);
+            }
+            return min;
+        }
+
+        private int cell(String ip, int row) {
+            // 带种子的 FNV-1a，再经 MurmurHash3 fmix64 打散
+            long h = seeds[row];
+            for (int i = 0; i < ip.length(); i++) {
+                h = (h ^ ip.charAt(i)) * 0x100000001b3L;
+            }
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+            h ^= h >>> 33;
+            h *= 0xc4ceb53a87e34e53L;
+            h ^= h >>> 33;
+            return (int) Math.floorMod(h, (long) width);
+        }
+    }
+}
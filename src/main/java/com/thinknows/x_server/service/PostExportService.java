@@ -0,0 +1,167 @@
+package com.thinknows.x_server.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.thinknows.x_server.model.Post;
+import com.thinknows.x_server.model.response.PostResponse;
+import com.thinknows.x_server.repository.PostRepository;
+import com.thinknows.x_server.util.CsvWriter;
+import com.thinknows.x_server.util.NdjsonWriter;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.annotation.Transactional;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * 帖子批量导出
+ *
+ * 按ID顺序流式读取帖子，每攒够一批就一次性查出这批帖子的标签、写出，然后清空持久化上下文，
+ * 内存占用只与批大小有关。
+ */
+@Service
+public class PostExportService {
+
+    /**
+     * 导出格式
+     */
+    public enum Format {
+        NDJSON,
+        CSV;
+
+        /**
+         * 不区分大小写解析导出格式
+         * @throws IllegalArgumentException 不支持的格式
+         */
+        public static Format parse(String value) {
+            for (Format format : values()) {
+                if (format.name().equalsIgnoreCase(value)) {
+                    return format;
+                }
+            }
+            throw new IllegalArgumentException("Unsupported export format: " + value);
+        }
+    }
+
+    private static final int BATCH_SIZE = 500;
+
+    private static final String[] CSV_HEADER = {
+            "id", "title", "content", "authorId", "authorName", "createdAt", "updatedAt", "status", "category", "tags"
+    };
+
+    @Autowired
+    private PostRepository postRepository;
+
+    @Autowired
+    private AuthorDirectoryService authorDirectoryService;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    /**
+     * 导出全部帖子
+     * @param out 输出流，不会被关闭
+     * @param format 导出格式
+     * @param gzip 是否 gzip 压缩
+     */
+    @Transactional(readOnly = true)
+    public void export(OutputStream out, Format format, boolean gzip) throws IOException {
+        GZIPOutputStream gzipOut = gzip ? new GZIPOutputStream(out, 64 * 1024) : null;
+        RowWriter writer = createWriter(gzipOut != null ? gzipOut : out, format);
+
+        try (Stream<Post> posts = postRepository.streamAllOrderedById()) {
+            Iterator<Post> iterator = posts.iterator();
+            List<Post> batch = new ArrayList<>(BATCH_SIZE);
+            while (iterator.hasNext()) {
+                batch.add(iterator.next());
+                if (batch.size() == BATCH_SIZE) {
+                    writeBatch(batch, writer);
+                }
+            }
+            writeBatch(batch, writer);
+        }
+
+        writer.flush();
+        if (gzipOut != null) {
+            gzipOut.finish();
+        }
+    }
+
+    private void writeBatch(List<Post> batch, RowWriter writer) throws IOException {
+        if (batch.isEmpty()) {
+            return;
+        }
+        // 标签是延迟加载的集合，逐条访问会产生 N+1 查询，这里按批一次取回
+        List<Long> ids = batch.stream().map(Post::getId).collect(Collectors.toList());
+        Map<Long, List<String>> tags = new HashMap<>();
+        for (Object[] row : postRepository.findTagsByPostIds(ids)) {
+            tags.computeIfAbsent((Long) row[0], k -> new ArrayList<>()).add((String) row[1]);
+        }
+
+        Map<Long, String> authorNames = authorDirectoryService.getDisplayNames(
+                batch.stream().map(Post::getAuthorId).collect(Collectors.toSet()));
+
+        for (Post post : batch) {
+            PostResponse response = new PostResponse(post);
+            response.setAuthorName(authorNames.getOrDefault(post.getAuthorId(), post.getAuthorName()));
+            response.setTags(tags.getOrDefault(post.getId(), List.of()));
+            writer.write(response);
+        }
+        writer.flush();
+
+        batch.clear();
+        entityManager.clear();
+    }
+
+    private RowWriter createWriter(OutputStream out, Format format) throws IOException {
+        if (format == Format.NDJSON) {
+            NdjsonWriter ndjson = new NdjsonWriter(objectMapper, out);
+            return new RowWriter() {
+                @Override
+                public void write(PostResponse post) throws IOException {
+                    ndjson.write(post);
+                }
+
+                @Override
+                public void flush() throws IOException {
+                    ndjson.flush();
+                }
+            };
+        }
+
+        CsvWriter csv = new CsvWriter(out);
+        csv.writeRow((Object[]) CSV_HEADER);
+        return new RowWriter() {
+            @Override
+            public void write(PostResponse post) throws IOException {
+                csv.writeRow(post.getId(), post.getTitle(), post.getContent(), post.getAuthorId(),
+                        post.getAuthorName(), post.getCreatedAt(), post.getUpdatedAt(), post.getStatus(),
+                        post.getCategory(), String.join("|", post.getTags()));
+            }
+
+            @Override
+            public void flush() throws IOException {
+                csv.flush();
+            }
+        };
+    }
+
+    private interface RowWriter {
+        void write(PostResponse post) throws IOException;
+
+        void flush() throws IOException;
+    }
+}
@@ -0,0 +1,475 @@
+package com.thinknows.x_server.service;
+
+import com.thinknows.x_server.model.Post;
+import com.thinknows.x_server.util.PostingList;
+import com.thinknows.x_server.util.TransactionHooks;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * 帖子的标签/分类/作者倒排索引
+ *
+ * 每个标签、分类和作者对应一个有序的帖子ID列表，组合查询通过列表求交集/并集完成，不访问数据库。
+ * 启动时从数据库加载一次，之后由 PostService 在写入提交后增量维护；其他节点的写入由后台线程按 updatedAt
+ * 增量拉取，在刷新间隔内本节点可能看不到；其他节点删除的帖子按核对间隔与数据库中的ID比对后移除。读取无锁，写入串行。
+ * 帖子ID由各节点的序列分段分配，ID顺序不等于创建顺序，按创建时间分页时按 (createdAt, id) 排序。
+ */
+@Service
+public class PostIndexService {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${app.posts.index.refresh-interval-ms:5000}")
+    private long refreshIntervalMillis;
+
+    // 增量刷新时回看的时间，覆盖较晚提交的写入和节点之间的时钟偏差
+    @Value("${app.posts.index.refresh-overlap-ms:30000}")
+    private long refreshOverlapMillis;
+
+    @Value("${app.posts.index.reconcile-interval-ms:60000}")
+    private long reconcileIntervalMillis;
+
+    private final Map<String, PostingList> tagIndex = new ConcurrentHashMap<>();
+    private final Map<String, PostingList> categoryIndex = new ConcurrentHashMap<>();
+    private final Map<Long, PostingList> authorIndex = new ConcurrentHashMap<>();
+    // 每个已索引帖子的字段快照，用于计算变化和按创建时间排序
+    private final Map<Long, Entry> entries = new ConcurrentHashMap<>();
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private volatile LocalDateTime lastUpdatedAt;
+    private volatile boolean running;
+    private Thread refresher;
+
+    @PostConstruct
+    public void init() {
+        readOnly().executeWithoutResult(status -> load());
+        running = true;
+        refresher = new Thread(this::refreshLoop, "post-index-refresh");
+        refresher.setDaemon(true);
+        refresher.start();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        if (refresher != null) {
+            refresher.interrupt();
+        }
+    }
+
+    private void load() {
+        Map<String, PostingList.Builder> tags = new HashMap<>();
+        Map<String, PostingList.Builder> categories = new HashMap<>();
+        Map<Long, PostingList.Builder> authors = new HashMap<>();
+        Map<Long, Set<String>> tagsById = new HashMap<>();
+
+        try (Stream<Object[]> rows = entityManager
+                .createQuery("SELECT p.id, t FROM Post p JOIN p.tags t", Object[].class)
+                .getResultStream()) {
+            rows.forEach(row -> {
+                if (row[1] != null) {
+                    tags.computeIfAbsent((String) row[1], k -> new PostingList.Builder()).add((Long) row[0]);
+                    tagsById.computeIfAbsent((Long) row[0], k -> new LinkedHashSet<>()).add((String) row[1]);
+                }
+            });
+        }
+        try (Stream<Object[]> rows = entityManager
+                .createQuery("SELECT p.id, p.authorId, p.category, p.createdAt, p.updatedAt FROM Post p",
+                        Object[].class)
+                .getResultStream()) {
+            rows.forEach(row -> {
+                Entry entry = new Entry(row, tagsById.getOrDefault((Long) row[0], Collections.emptySet()));
+                if (entry.category != null) {
+                    categories.computeIfAbsent(entry.category, k -> new PostingList.Builder()).add(entry.id);
+                }
+                if (entry.authorId != null) {
+                    authors.computeIfAbsent(entry.authorId, k -> new PostingList.Builder()).add(entry.id);
+                }
+                entries.put(entry.id, entry);
+                advanceLastUpdatedAt(entry.updatedAt);
+            });
+        }
+
+        tags.forEach((tag, builder) -> tagIndex.put(tag, builder.build()));
+        categories.forEach((category, builder) -> categoryIndex.put(category, builder.build()));
+        authors.forEach((author, builder) -> authorIndex.put(author, builder.build()));
+    }
+
+    /**
+     * 索引新帖子，在当前事务提交后生效
+     */
+    public void add(Post post) {
+        addAll(List.of(post));
+    }
+
+    /**
+     * 批量索引新帖子，在当前事务提交后生效
+     */
+    public void addAll(Collection<Post> posts) {
+        List<Entry> added = new ArrayList<>(posts.size());
+        for (Post post : posts) {
+            added.add(new Entry(post));
+        }
+        TransactionHooks.afterCommit(() -> {
+            writeLock.lock();
+            try {
+                for (Entry entry : added) {
+                    apply(entry.id, entry);
+                }
+            } finally {
+                writeLock.unlock();
+            }
+        });
+    }
+
+    /**
+     * 帖子分类或标签变化后更新索引，在当前事务提交后生效，只修改有差异的列表
+     */
+    public void update(Post post) {
+        Entry entry = new Entry(post);
+        TransactionHooks.afterCommit(() -> {
+            writeLock.lock();
+            try {
+                apply(entry.id, entry);
+            } finally {
+                writeLock.unlock();
+            }
+        });
+    }
+
+    /**
+     * 从索引中移除帖子，在当前事务提交后生效
+     */
+    public void remove(Long id) {
+        TransactionHooks.afterCommit(() -> {
+            writeLock.lock();
+            try {
+                apply(id, null);
+            } finally {
+                writeLock.unlock();
+            }
+        });
+    }
+
+    /**
+     * 按 (createdAt, id) 排序后取出一页帖子ID，只对候选集合维护一个大小为 offset + limit 的堆
+     * @param ids 候选帖子，通常是 query 的结果
+     */
+    public List<Long> pageByCreatedAt(PostingList ids, boolean ascending, int offset, int limit) {
+        if (offset >= ids.size() || limit <= 0) {
+            return Collections.emptyList();
+        }
+        Comparator<Long> order = Comparator
+                .comparing((Long id) -> createdAtOf(id), Comparator.nullsFirst(Comparator.naturalOrder()))
+                .thenComparing(Comparator.naturalOrder());
+        if (!ascending) {
+            order = order.reversed();
+        }
+        int wanted = (int) Math.min((long) offset + limit, ids.size());
+        // 堆顶是已选中的帖子里排在最后的一个，新的候选排在它前面时替换
+        PriorityQueue<Long> selected = new PriorityQueue<>(wanted, order.reversed());
+        for (int i = 0; i < ids.size(); i++) {
+            Long id = ids.get(i);
+            if (selected.size() < wanted) {
+                selected.offer(id);
+            } else if (order.compare(id, selected.peek()) < 0) {
+                selected.poll();
+                selected.offer(id);
+            }
+        }
+        List<Long> sorted = new ArrayList<>(selected);
+        sorted.sort(order);
+        return new ArrayList<>(sorted.subList(offset, sorted.size()));
+    }
+
+    private LocalDateTime createdAtOf(Long id) {
+        Entry entry = entries.get(id);
+        return entry != null ? entry.createdAt : null;
+    }
+
+    private void refreshLoop() {
+        long lastReconcile = System.nanoTime();
+        while (running) {
+            try {
+                Thread.sleep(refreshIntervalMillis);
+                refresh();
+                if (System.nanoTime() - lastReconcile >= TimeUnit.MILLISECONDS.toNanos(reconcileIntervalMillis)) {
+                    lastReconcile = System.nanoTime();
+                    removeDeleted();
+                }
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                System.err.println("Post index refresh failed: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 拉取其他节点最近创建或修改的帖子；删除不会出现在按 updatedAt 的查询中，由 removeDeleted 处理
+     */
+    private void refresh() {
+        LocalDateTime last = lastUpdatedAt;
+        LocalDateTime since = last != null
+                ? last.minusNanos(refreshOverlapMillis * 1_000_000)
+                : LocalDateTime.now().minusNanos(refreshOverlapMillis * 1_000_000);
+        List<Entry> changed = readOnly().execute(status -> loadChangedSince(since));
+        writeLock.lock();
+        try {
+            for (Entry entry : changed) {
+                Entry current = entries.get(entry.id);
+                // 本节点已经应用了更新的版本时跳过，避免用刷新前读到的旧数据覆盖
+                if (current == null || current.updatedAt == null || entry.updatedAt == null
+                        || !current.updatedAt.isAfter(entry.updatedAt)) {
+                    apply(entry.id, entry);
+                }
+                advanceLastUpdatedAt(entry.updatedAt);
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private List<Entry> loadChangedSince(LocalDateTime since) {
+        Map<Long, Object[]> rows = new LinkedHashMap<>();
+        entityManager.createQuery("SELECT p.id, p.authorId, p.category, p.createdAt, p.updatedAt FROM Post p "
+                        + "WHERE p.updatedAt >= :since", Object[].class)
+                .setParameter("since", since)
+                .getResultList()
+                .forEach(row -> rows.put((Long) row[0], row));
+        if (rows.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Map<Long, Set<String>> tagsById = new HashMap<>();
+        entityManager.createQuery("SELECT p.id, t FROM Post p JOIN p.tags t WHERE p.id IN :ids", Object[].class)
+                .setParameter("ids", rows.keySet())
+                .getResultList()
+                .forEach(row -> {
+                    if (row[1] != null) {
+                        tagsById.computeIfAbsent((Long) row[0], k -> new LinkedHashSet<>()).add((String) row[1]);
+                    }
+                });
+        List<Entry> result = new ArrayList<>(rows.size());
+        rows.forEach((id, row) -> result.add(new Entry(row, tagsById.getOrDefault(id, Collections.emptySet()))));
+        return result;
+    }
+
+    /**
+     * 移除数据库中已不存在的帖子
+     *
+     * 扫描ID时不持有写锁，本节点提交后的写入照常应用。扫描前先取索引中ID的快照：快照中的帖子在扫描开始前已经提交，
+     * 扫描一定能看到，扫描中没有出现就是已被删除；快照之后新增的帖子不参与比较。只在写锁内应用差异。
+     */
+    private void removeDeleted() {
+        List<Long> indexed = new ArrayList<>(entries.keySet());
+        Set<Long> existing = new HashSet<>();
+        readOnly().executeWithoutResult(status -> {
+            try (Stream<Long> ids = entityManager.createQuery("SELECT p.id FROM Post p", Long.class)
+                    .getResultStream()) {
+                ids.forEach(existing::add);
+            }
+        });
+        List<Long> deleted = new ArrayList<>();
+        for (Long id : indexed) {
+            if (!existing.contains(id)) {
+                deleted.add(id);
+            }
+        }
+        if (deleted.isEmpty()) {
+            return;
+        }
+        writeLock.lock();
+        try {
+            for (Long id : deleted) {
+                // 本节点的删除可能已经应用过
+                if (entries.containsKey(id)) {
+                    apply(id, null);
+                }
+            }
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void advanceLastUpdatedAt(LocalDateTime updatedAt) {
+        if (updatedAt != null && (lastUpdatedAt == null || updatedAt.isAfter(lastUpdatedAt))) {
+            lastUpdatedAt = updatedAt;
+        }
+    }
+
+    private TransactionTemplate readOnly() {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setReadOnly(true);
+        return template;
+    }
+
+    /**
+     * 组合查询，各条件之间取交集
+     * @param tags 标签，为空表示不限
+     * @param matchAllTags true 要求包含全部标签，false 包含任一标签即可
+     * @param categories 分类，为空表示不限，多个分类取并集
+     * @param authorId 作者ID，为空表示不限
+     * @return 按ID升序排列的匹配帖子；没有任何条件时返回 null
+     */
+    public PostingList query(Collection<String> tags, boolean matchAllTags, Collection<String> categories, Long authorId) {
+        List<PostingList> groups = new ArrayList<>(3);
+        if (tags != null && !tags.isEmpty()) {
+            groups.add(combine(tagIndex, tags, matchAllTags));
+        }
+        if (categories != null && !categories.isEmpty()) {
+            groups.add(combine(categoryIndex, categories, false));
+        }
+        if (authorId != null) {
+            groups.add(authorIndex.getOrDefault(authorId, PostingList.EMPTY));
+        }
+        if (groups.isEmpty()) {
+            return null;
+        }
+        return intersectAll(groups);
+    }
+
+    private static PostingList combine(Map<String, PostingList> index, Collection<String> keys, boolean intersect) {
+        List<PostingList> lists = new ArrayList<>(keys.size());
+        for (String key : new LinkedHashSet<>(keys)) {
+            lists.add(index.getOrDefault(key, PostingList.EMPTY));
+        }
+        if (intersect) {
+            return intersectAll(lists);
+        }
+        // 从短到长合并，减少中间结果的复制
+        lists.sort(Comparator.comparingInt(PostingList::size));
+        PostingList result = PostingList.EMPTY;
+        for (PostingList list : lists) {
+            result = result.or(list);
+        }
+        return result;
+    }
+
+    private static PostingList intersectAll(List<PostingList> lists) {
+        // 从最短的列表开始，结果只会越来越短
+        lists.sort(Comparator.comparingInt(PostingList::size));
+        PostingList result = lists.get(0);
+        for (int i = 1; i < lists.size() && !result.isEmpty(); i++) {
+            result = result.and(lists.get(i));
+        }
+        return result;
+    }
+
+    /**
+     * 用新的快照替换帖子的索引，next 为 null 表示删除，只修改有差异的列表；调用方持有写锁
+     */
+    private void apply(Long id, Entry next) {
+        Entry previous = next != null ? entries.put(id, next) : entries.remove(id);
+        Set<String> oldTags = previous != null ? previous.tags : Collections.emptySet();
+        Set<String> newTags = next != null ? next.tags : Collections.emptySet();
+        for (String tag : oldTags) {
+            if (!newTags.contains(tag)) {
+                modify(tagIndex, tag, id, false);
+            }
+        }
+        for (String tag : newTags) {
+            if (!oldTags.contains(tag)) {
+                modify(tagIndex, tag, id, true);
+            }
+        }
+        String oldCategory = previous != null ? previous.category : null;
+        String newCategory = next != null ? next.category : null;
+        if (!Objects.equals(oldCategory, newCategory)) {
+            modify(categoryIndex, oldCategory, id, false);
+            modify(categoryIndex, newCategory, id, true);
+        }
+        Long oldAuthor = previous != null ? previous.authorId : null;
+        Long newAuthor = next != null ? next.authorId : null;
+        if (!Objects.equals(oldAuthor, newAuthor)) {
+            modify(authorIndex, oldAuthor, id, false);
+            modify(authorIndex, newAuthor, id, true);
+        }
+    }
+
+    private static <K> void modify(Map<K, PostingList> index, K key, Long id, boolean add) {
+        if (key == null || id == null) {
+            return;
+        }
+        PostingList current = index.getOrDefault(key, PostingList.EMPTY);
+        PostingList updated = add ? current.with(id) : current.without(id);
+        if (updated.isEmpty()) {
+            index.remove(key);
+        } else if (updated != current) {
+            index.put(key, updated);
+        }
+    }
+
+    private static Set<String> toSet(Collection<String> tags) {
+        Set<String> set = new LinkedHashSet<>();
+        if (tags != null) {
+            for (String tag : tags) {
+                if (tag != null) {
+                    set.add(tag);
+                }
+            }
+        }
+        return set;
+    }
+
+    /**
+     * 写入索引时需要的帖子字段快照
+     */
+    private static final class Entry {
+        private final Long id;
+        private final Long authorId;
+        private final String category;
+        private final Set<String> tags;
+        private final LocalDateTime createdAt;
+        private final LocalDateTime updatedAt;
+
+        private Entry(Post post) {
+            this.id = post.getId();
+            this.authorId = post.getAuthorId();
+            this.category = post.getCategory();
+            this.tags = toSet(post.getTags());
+            this.createdAt = post.getCreatedAt();
+            this.updatedAt = post.getUpdatedAt();
+        }
+
+        /**
+         * @param row id, authorId, category, createdAt, updatedAt
+         */
+        private Entry(Object[] row, Collection<String> tags) {
+            this.id = (Long) row[0];
+            this.authorId = (Long) row[1];
+            this.category = (String) row[2];
+            this.tags = toSet(tags);
+            this.createdAt = (LocalDateTime) row[3];
+            this.updatedAt = (LocalDateTime) row[4];
+        }
+    }
+}
@@ -1,36 +1,81 @@
 package com.thinknows.x_server.service;
 
 import com.thinknows.x_server.model.Post;
+import com.thinknows.x_server.model.PostRevision;
 import com.thinknows.x_server.model.request.CreatePostRequest;
 import com.thinknows.x_server.model.request.UpdatePostRequest;
+import com.thinknows.x_server.model.response.FacetResponse;
+import com.thinknows.x_server.model.response.KeysetPageResponse;
+import com.thinknows.x_server.model.response.PostResponse;
 import com.thinknows.x_server.repository.PostRepository;
+import com.thinknows.x_server.util.PostingList;
 
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import org.hibernate.Session;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.OptimisticLockingFailureException;
+import org.springframework.data.domain.Page;
+import org.springframework.data.domain.PageRequest;
 import org.springframework.data.domain.Sort;
 import org.springframework.data.domain.Sort.Direction;
 import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.annotation.Transactional;
+import org.springframework.transaction.support.TransactionTemplate;
 
+import java.nio.charset.StandardCharsets;
 import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.function.Predicate;
+import java.util.stream.Collectors;
 
 @Service
 public class PostService {
-    private final UserService userService;
+    private static final int LOAD_CHUNK_SIZE = 1000;
+    
+    private final AuthorDirectoryService authorDirectoryService;
+    private final PostIndexService postIndexService;
+    private final FacetService facetService;
     private final PostRepository postRepository;
+    private final PlatformTransactionManager transactionManager;
+    
+    @PersistenceContext
+    private EntityManager entityManager;
+    
+    @Value("${app.posts.bulk.batch-size:50}")
+    private int bulkBatchSize;
+    
+    @Value("${app.posts.update.max-retries:3}")
+    private int updateMaxRetries;
+
+    @Value("${app.cache.l2.enabled:false}")
+    private boolean secondLevelCacheEnabled;
     
     @Autowired
-    public PostService(UserService userService, PostRepository postRepository) {
-        this.userService = userService;
+    public PostService(AuthorDirectoryService authorDirectoryService, PostIndexService postIndexService,
+                       FacetService facetService, PostRepository postRepository,
+                       PlatformTransactionManager transactionManager) {
+        this.authorDirectoryService = authorDirectoryService;
+        this.postIndexService = postIndexService;
+        this.facetService = facetService;
         this.postRepository = postRepository;
+        this.transactionManager = transactionManager;
     }
     
     /**
      * 创建新帖子
      */
     public Post createPost(CreatePostRequest request, Long authorId) {
-        // 获取作者名称（使用随机生成的用户名）
-        String authorName = userService.generateRandomUserProfile(authorId).getUsername();
+        // 获取作者名称
+        String authorName = authorDirectoryService.getDisplayName(authorId);
         
         Post post = new Post();
         post.setTitle(request.getTitle());
@@ -49,7 +94,89 @@ public class PostService {
             post.setTags(request.getTags());
         }
         
-        return postRepository.save(post);
+        Post saved = postRepository.save(post);
+        postIndexService.add(saved);
+        facetService.onCreate(saved.getCategory(), saved.getTags());
+        return saved;
+    }
+    
+    /**
+     * 批量创建帖子
+     * 帖子和标签按 JDBC 批次插入，每批写入后清空持久化上下文
+     * @return 新帖子的ID，顺序与请求一致
+     */
+    @Transactional
+    public List<Long> createPosts(List<CreatePostRequest> requests, Long authorId) {
+        String authorName = authorDirectoryService.getDisplayName(authorId);
+        entityManager.unwrap(Session.class).setJdbcBatchSize(bulkBatchSize);
+        
+        List<Long> ids = new ArrayList<>(requests.size());
+        List<Post> posts = new ArrayList<>(requests.size());
+        LocalDateTime now = LocalDateTime.now();
+        for (int i = 0; i < requests.size(); i++) {
+            CreatePostRequest request = requests.get(i);
+            Post post = new Post();
+            post.setTitle(request.getTitle());
+            post.setContent(request.getContent());
+            post.setAuthorId(authorId);
+            post.setAuthorName(authorName);
+            post.setCreatedAt(now);
+            post.setUpdatedAt(now);
+            post.setStatus("PUBLISHED");
+            post.setCategory(request.getCategory());
+            if (request.getTags() != null) {
+                post.setTags(new ArrayList<>(request.getTags()));
+            }
+            
+            entityManager.persist(post);
+            ids.add(post.getId());
+            posts.add(post);
+            
+            if ((i + 1) % bulkBatchSize == 0) {
+                entityManager.flush();
+                entityManager.clear();
+            }
+        }
+        entityManager.flush();
+        entityManager.clear();
+        postIndexService.addAll(posts);
+        for (Post post : posts) {
+            facetService.onCreate(post.getCategory(), post.getTags());
+        }
+        return ids;
+    }
+    
+    /**
+     * 转换为响应对象，作者名称统一从作者目录批量获取
+     */
+    public List<PostResponse> toResponses(List<Post> posts) {
+        Map<Long, String> authorNames = authorDirectoryService.getDisplayNames(
+                posts.stream().map(Post::getAuthorId).collect(Collectors.toSet()));
+        List<PostResponse> responses = new ArrayList<>(posts.size());
+        for (Post post : posts) {
+            PostResponse response = new PostResponse(post);
+            response.setAuthorName(authorNames.getOrDefault(post.getAuthorId(), post.getAuthorName()));
+            responses.add(response);
+        }
+        return responses;
+    }
+    
+    /**
+     * 转换为响应对象
+     */
+    public PostResponse toResponse(Post post) {
+        PostResponse response = new PostResponse(post);
+        if (post.getAuthorId() != null) {
+            response.setAuthorName(authorDirectoryService.getDisplayName(post.getAuthorId()));
+        }
+        return response;
+    }
+    
+    /**
+     * 帖子总数
+     */
+    public long countAllPosts() {
+        return postRepository.count();
     }
     
     /**
@@ -66,6 +193,65 @@ public class PostService {
         return postRepository.findByAuthorId(authorId);
     }
     
+    /**
+     * 分页获取特定用户的帖子，排序和分页都在数据库中完成
+     * 按 createdAt 排序时直接使用作者时间线索引
+     */
+    public Page<Post> getPostsByAuthor(Long authorId, int page, int size, String field, boolean ascending) {
+        Direction direction = ascending ? Direction.ASC : Direction.DESC;
+        Sort sort = Sort.by(direction, getFieldName(field)).and(Sort.by(direction, "id"));
+        return postRepository.findByAuthorId(authorId, PageRequest.of(page, size, sort));
+    }
+    
+    /**
+     * 作者时间线（按创建时间倒序的游标分页），任意一页的代价只与页大小有关
+     * @param cursor 上一页返回的 nextCursor，为空时从最新的帖子开始
+     * @throws IllegalArgumentException 游标无效
+     */
+    public KeysetPageResponse<PostResponse> getAuthorTimeline(Long authorId, String cursor, int size) {
+        // 多取一条用于判断是否还有下一页
+        PageRequest limit = PageRequest.of(0, size + 1);
+        List<Post> posts;
+        if (cursor == null || cursor.isEmpty()) {
+            posts = postRepository.findByAuthorIdOrderByCreatedAtDescIdDesc(authorId, limit);
+        } else {
+            String[] position = decodeTimelineCursor(cursor);
+            posts = postRepository.findAuthorTimelineAfter(authorId,
+                    LocalDateTime.parse(position[0]), Long.parseLong(position[1]), limit);
+        }
+        
+        boolean hasNext = posts.size() > size;
+        if (hasNext) {
+            posts = posts.subList(0, size);
+        }
+        String nextCursor = null;
+        if (hasNext) {
+            Post last = posts.get(posts.size() - 1);
+            nextCursor = encodeTimelineCursor(last.getCreatedAt(), last.getId());
+        }
+        return new KeysetPageResponse<>(toResponses(posts), posts.size(), nextCursor, hasNext);
+    }
+    
+    private static String encodeTimelineCursor(LocalDateTime createdAt, Long id) {
+        String position = createdAt + "|" + id;
+        return Base64.getUrlEncoder().withoutPadding().encodeToString(position.getBytes(StandardCharsets.UTF_8));
+    }
+    
+    private static String[] decodeTimelineCursor(String cursor) {
+        try {
+            String position = new String(Base64.getUrlDecoder().decode(cursor), StandardCharsets.UTF_8);
+            String[] parts = position.split("\\|");
+            if (parts.length == 2) {
+                LocalDateTime.parse(parts[0]);
+                Long.parseLong(parts[1]);
+                return parts;
+            }
+        } catch (IllegalArgumentException | DateTimeParseException e) {
+            // 按无效游标处理
+        }
+        throw new IllegalArgumentException("Invalid cursor: " + cursor);
+    }
+    
     /**
      * 根据ID获取帖子
      */
@@ -74,10 +260,76 @@ public class PostService {
         return post.orElse(null);
     }
     
+    /**
+     * 只获取帖子的版本号和更新时间，帖子不存在时返回 null
+     */
+    public PostRevision getPostRevision(Long id) {
+        if (secondLevelCacheEnabled) {
+            // 单节点部署开启了二级缓存：缓存中的帖子与数据库一致，直接取它的版本号，不访问数据库
+            Post post = postRepository.findById(id).orElse(null);
+            return post != null ? revisionOf(post) : null;
+        }
+        return postRepository.findRevisionById(id).orElse(null);
+    }
+
+    private static PostRevision revisionOf(Post post) {
+        Long version = post.getVersion();
+        LocalDateTime updatedAt = post.getUpdatedAt();
+        return new PostRevision() {
+            @Override
+            public Long getVersion() {
+                return version;
+            }
+
+            @Override
+            public LocalDateTime getUpdatedAt() {
+                return updatedAt;
+            }
+        };
+    }
+    
+    /**
+     * 一批帖子中最新的更新时间，列表为空时返回 null
+     */
+    public LocalDateTime getLatestUpdatedAt(List<Long> ids) {
+        if (ids.isEmpty()) {
+            return null;
+        }
+        return postRepository.findMaxUpdatedAtByIdIn(ids);
+    }
+    
     /**
      * 更新帖子
      */
     public Post updatePost(Long id, UpdatePostRequest request, Long currentUserId) {
+        return updatePost(id, request, currentUserId, null);
+    }
+    
+    /**
+     * 按前置条件更新帖子
+     * 
+     * 不加行锁：读取、修改后按 version 条件写回，期间帖子被别人修改则写入失败。
+     * 没有前置条件时在新的事务中基于最新内容重新应用本次修改，最多重试 app.posts.update.max-retries 次；
+     * 有前置条件时客户端是基于旧内容做的修改，不能替它重试，直接失败。
+     * 
+     * @param precondition 对当前帖子的检查（如 If-Match），为 null 表示不检查
+     * @return 更新后的帖子，帖子不存在时返回 null
+     * @throws OptimisticLockingFailureException 前置条件不满足，或重试后仍然冲突
+     */
+    public Post updatePost(Long id, UpdatePostRequest request, Long currentUserId, Predicate<Post> precondition) {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return template.execute(status -> applyUpdate(id, request, currentUserId, precondition));
+            } catch (OptimisticLockingFailureException e) {
+                if (precondition != null || attempt > updateMaxRetries) {
+                    throw e;
+                }
+            }
+        }
+    }
+    
+    private Post applyUpdate(Long id, UpdatePostRequest request, Long currentUserId, Predicate<Post> precondition) {
         Optional<Post> optionalPost = postRepository.findById(id);
         
         if (optionalPost.isEmpty()) {
@@ -91,6 +343,13 @@ public class PostService {
             throw new IllegalStateException("只有作者可以更新帖子");
         }
         
+        if (precondition != null && !precondition.test(post)) {
+            throw new OptimisticLockingFailureException("帖子已被修改");
+        }
+        
+        String oldCategory = post.getCategory();
+        List<String> oldTags = new ArrayList<>(post.getTags());
+        
         if (request.getTitle() != null) {
             post.setTitle(request.getTitle());
         }
@@ -108,7 +367,11 @@ public class PostService {
         }
         
         post.setUpdatedAt(LocalDateTime.now());
-        return postRepository.save(post);
+        // 立即写入，版本冲突在本次尝试内暴露
+        Post saved = postRepository.saveAndFlush(post);
+        postIndexService.update(saved);
+        facetService.onUpdate(oldCategory, oldTags, saved.getCategory(), saved.getTags());
+        return saved;
     }
     
     /**
@@ -128,10 +391,64 @@ public class PostService {
             throw new IllegalStateException("只有作者可以删除帖子");
         }
         
+        List<String> tags = new ArrayList<>(post.getTags());
         postRepository.deleteById(id);
+        postIndexService.remove(id);
+        facetService.onDelete(post.getCategory(), tags);
         return true;
     }
     
+    /**
+     * 按标签、分类和作者组合查询，条件之间取交集
+     * @param tags 标签，为空表示不限
+     * @param matchAllTags true 要求包含全部标签，false 包含任一标签
+     * @param categories 分类，为空表示不限，多个分类取并集
+     * @param authorId 作者ID，为空表示不限
+     * @return 按ID升序排列的帖子ID；没有任何条件时返回 null
+     */
+    public PostingList findPostIds(List<String> tags, boolean matchAllTags, List<String> categories, Long authorId) {
+        return postIndexService.query(tags, matchAllTags, categories, authorId);
+    }
+    
+    /**
+     * 按 (createdAt, id) 排序后取出一页帖子ID
+     * @param ids findPostIds 的结果
+     */
+    public List<Long> getPostIdPageByCreatedAt(PostingList ids, boolean ascending, int offset, int limit) {
+        return postIndexService.pageByCreatedAt(ids, ascending, offset, limit);
+    }
+    
+    /**
+     * 按给定ID顺序加载帖子，已删除的帖子会被跳过
+     */
+    public List<Post> getPostsInOrder(List<Long> ids) {
+        Map<Long, Post> byId = new HashMap<>();
+        for (int from = 0; from < ids.size(); from += LOAD_CHUNK_SIZE) {
+            List<Long> chunk = ids.subList(from, Math.min(from + LOAD_CHUNK_SIZE, ids.size()));
+            for (Post post : postRepository.findAllById(chunk)) {
+                byId.put(post.getId(), post);
+            }
+        }
+        List<Post> posts = new ArrayList<>(ids.size());
+        for (Long id : ids) {
+            Post post = byId.get(id);
+            if (post != null) {
+                posts.add(post);
+            }
+        }
+        return posts;
+    }
+    
+    /**
+     * 分面统计：帖子数最多的标签和分类
+     * @param category 标签只统计该分类下的帖子，为空表示全部
+     * @param top 每种分面返回的数量
+     */
+    public FacetResponse getFacets(String category, int top) {
+        String filter = category == null || category.isBlank() ? null : category.trim();
+        return new FacetResponse(filter, facetService.topTags(filter, top), facetService.topCategories(top));
+    }
+    
     /**
      * 根据标签搜索帖子
      */
@@ -0,0 +1,147 @@
+package com.thinknows.x_server.service;
+
+import com.thinknows.x_server.model.ConfigSnapshot;
+import com.thinknows.x_server.model.SemanticVersion;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.TreeMap;
+
+/**
+ * 预编译的版本更新决策表
+ *
+ * 每条规则的含义是“低于某个版本时至少采取某种处理”。编译时把所有规则合并成按版本排序的区间，
+ * 每个区间取覆盖它的规则中最严格的处理，查询时对区间边界二分查找，复杂度 O(log 规则数)。
+ *
+ * 规则来源：
+ * 低于 minSupportedVersion 强制更新；低于 recommendedVersion 建议更新；
+ * 低于当前版本 appVersion 时按 deviceId 哈希灰度建议更新；
+ * 另可通过 app.update.rules 追加形如 "1.2.0:FORCED,1.4.0:RECOMMENDED" 的规则。
+ */
+public final class UpdateRuleTable {
+
+    /**
+     * 处理方式，按严格程度升序排列
+     */
+    public enum Decision {
+        NONE,
+        ROLLOUT,     // 仅对灰度范围内的设备建议更新
+        RECOMMENDED,
+        FORCED
+    }
+
+    private final SemanticVersion[] bounds;
+    private final Decision[] decisions; // decisions[i] 对应区间 [bounds[i-1], bounds[i])
+    private final int rolloutPercentage;
+
+    private UpdateRuleTable(SemanticVersion[] bounds, Decision[] decisions, int rolloutPercentage) {
+        this.bounds = bounds;
+        this.decisions = decisions;
+        this.rolloutPercentage = rolloutPercentage;
+    }
+
+    /**
+     * 根据配置快照编译决策表
+     */
+    public static UpdateRuleTable compile(ConfigSnapshot snapshot) {
+        // 上界版本 -> 低于该版本时的处理
+        TreeMap<SemanticVersion, Decision> rules = new TreeMap<>();
+        addRule(rules, snapshot.getAppVersion(), Decision.ROLLOUT);
+        addRule(rules, snapshot.getRecommendedVersion(), Decision.RECOMMENDED);
+
+        String minSupported = snapshot.getMinSupportedVersion();
+        if ((minSupported == null || minSupported.isEmpty()) && snapshot.isForceUpdate()) {
+            // 兼容 app.force-update：未配置最低版本时，低于当前版本一律强制更新
+            minSupported = snapshot.getAppVersion();
+        }
+        addRule(rules, minSupported, Decision.FORCED);
+
+        String extraRules = snapshot.getUpdateRules();
+        if (extraRules != null && !extraRules.isBlank()) {
+            for (String rule : extraRules.split(",")) {
+                String[] parts = rule.trim().split(":");
+                if (parts.length == 2) {
+                    try {
+                        addRule(rules, parts[0], Decision.valueOf(parts[1].trim().toUpperCase()));
+                    } catch (IllegalArgumentException e) {
+                        System.err.println("Ignoring invalid update rule: " + rule);
+                    }
+                }
+            }
+        }
+
+        // 从最高的边界向下扫描，每个区间取所有上界不低于它的规则中最严格的处理
+        List<SemanticVersion> boundList = new ArrayList<>(rules.keySet());
+        Decision[] decisions = new Decision[boundList.size() + 1];
+        decisions[boundList.size()] = Decision.NONE;
+        Decision strictest = Decision.NONE;
+        for (int i = boundList.size() - 1; i >= 0; i--) {
+            Decision decision = rules.get(boundList.get(i));
+            if (decision.compareTo(strictest) > 0) {
+                strictest = decision;
+            }
+            decisions[i] = strictest;
+        }
+
+        int percentage = Math.max(0, Math.min(100, snapshot.getRolloutPercentage()));
+        return new UpdateRuleTable(boundList.toArray(new SemanticVersion[0]), decisions, percentage);
+    }
+
+    /**
+     * 查询某个客户端版本的处理方式，灰度规则会根据 deviceId 落到 RECOMMENDED 或 NONE
+     * @param version 已解析的客户端版本
+     * @param deviceId 设备ID，可为空
+     */
+    public Decision decide(SemanticVersion version, String deviceId) {
+        // 找到第一个大于 version 的边界
+        int low = 0;
+        int high = bounds.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (bounds[mid].compareTo(version) > 0) {
+                high = mid;
+            } else {
+                low = mid + 1;
+            }
+        }
+
+        Decision decision = decisions[low];
+        if (decision == Decision.ROLLOUT) {
+            return inRollout(deviceId) ? Decision.RECOMMENDED : Decision.NONE;
+        }
+        return decision;
+    }
+
+    /**
+     * 设备是否在灰度范围内，同一设备的结果稳定
+     */
+    private boolean inRollout(String deviceId) {
+        if (rolloutPercentage >= 100) {
+            return true;
+        }
+        if (deviceId == null || deviceId.isEmpty() || rolloutPercentage <= 0) {
+            return false;
+        }
+        // murmur3 finalizer 打散 String.hashCode
+        int h = deviceId.hashCode();
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return Math.floorMod(h, 100) < rolloutPercentage;
+    }
+
+    private static void addRule(TreeMap<SemanticVersion, Decision> rules, String version, Decision decision) {
+        if (version == null || version.isBlank()) {
+            return;
+        }
+        Optional<SemanticVersion> parsed = SemanticVersion.tryParse(version);
+        if (parsed.isEmpty()) {
+            System.err.println("Ignoring invalid version in update rules: " + version);
+            return;
+        }
+        rules.merge(parsed.get(), decision, (a, b) -> a.compareTo(b) >= 0 ? a : b);
+    }
+}
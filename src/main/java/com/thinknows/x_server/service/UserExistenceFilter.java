@@ -0,0 +1,211 @@
+package com.thinknows.x_server.service;
+
+import com.thinknows.x_server.util.BloomFilter;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import jakarta.persistence.EntityManager;
+import jakarta.persistence.PersistenceContext;
+import jakarta.persistence.TypedQuery;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.transaction.PlatformTransactionManager;
+import org.springframework.transaction.support.TransactionTemplate;
+
+import java.time.LocalDateTime;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+
+/**
+ * 用户名和邮箱的存在性过滤器，登录和注册时不访问数据库即可排除不存在的用户名/邮箱
+ *
+ * 启动时从数据库加载全部用户名和邮箱，注册时加入新用户；其他节点注册的用户由后台线程按 createdAt 增量拉取，
+ * 在刷新间隔内本节点可能认为该用户不存在。ID 分配顺序与提交顺序可能相差很远，不能按ID增量拉取；
+ * 每次刷新回看 app.auth.user-filter.refresh-overlap-ms，覆盖较晚提交的注册和节点之间的时钟偏差。大小写统一转为小写，兼容大小写不敏感的数据库排序规则。
+ * 加入的元素超过容量时按两倍容量重建。读取无锁，写入串行。
+ */
+@Service
+public class UserExistenceFilter {
+
+    @PersistenceContext
+    private EntityManager entityManager;
+
+    @Autowired
+    private PlatformTransactionManager transactionManager;
+
+    @Value("${app.auth.user-filter.enabled:true}")
+    private boolean enabled;
+
+    @Value("${app.auth.user-filter.expected-users:1000000}")
+    private long expectedUsers;
+
+    @Value("${app.auth.user-filter.false-positive-rate:0.01}")
+    private double falsePositiveRate;
+
+    @Value("${app.auth.user-filter.refresh-interval-ms:5000}")
+    private long refreshIntervalMillis;
+
+    // 增量刷新时回看的时间
+    @Value("${app.auth.user-filter.refresh-overlap-ms:30000}")
+    private long refreshOverlapMillis;
+
+    private final ReentrantLock writeLock = new ReentrantLock();
+    private final AtomicLong inserted = new AtomicLong();
+    private volatile BloomFilter filter;
+    private volatile LocalDateTime lastCreatedAt;
+    private volatile boolean running;
+    private Thread refresher;
+
+    @PostConstruct
+    public void init() {
+        if (!enabled) {
+            return;
+        }
+        rebuild(expectedUsers);
+        running = true;
+        refresher = new Thread(this::refreshLoop, "user-existence-filter");
+        refresher.setDaemon(true);
+        refresher.start();
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        running = false;
+        if (refresher != null) {
+            refresher.interrupt();
+        }
+    }
+
+    /**
+     * 用户名是否可能存在；返回 false 表示一定不存在
+     */
+    public boolean mightContainUsername(String username) {
+        BloomFilter current = filter;
+        return current == null || username == null || current.mightContain("u:" + normalize(username));
+    }
+
+    /**
+     * 邮箱是否可能已被注册；返回 false 表示一定没有
+     */
+    public boolean mightContainEmail(String email) {
+        BloomFilter current = filter;
+        return current == null || email == null || current.mightContain("e:" + normalize(email));
+    }
+
+    /**
+     * 加入新注册的用户
+     */
+    public void add(String username, String email) {
+        if (!enabled) {
+            return;
+        }
+        writeLock.lock();
+        try {
+            put(filter, username, email, true);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void refreshLoop() {
+        while (running) {
+            try {
+                Thread.sleep(refreshIntervalMillis);
+                refresh();
+            } catch (InterruptedException e) {
+                return;
+            } catch (RuntimeException e) {
+                System.err.println("User existence filter refresh failed: " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * 拉取其他节点新注册的用户，元素超过容量时重建
+     */
+    private void refresh() {
+        BloomFilter current = filter;
+        if (inserted.get() > current.getCapacity()) {
+            rebuild(current.getCapacity() * 2);
+            return;
+        }
+        writeLock.lock();
+        try {
+            LocalDateTime last = lastCreatedAt;
+            LocalDateTime since = last != null
+                    ? last.minusNanos(refreshOverlapMillis * 1_000_000)
+                    : LocalDateTime.now().minusNanos(refreshOverlapMillis * 1_000_000);
+            load(current, since);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private void rebuild(long capacity) {
+        writeLock.lock();
+        try {
+            Long count = readOnly().execute(status -> entityManager
+                    .createQuery("SELECT COUNT(u) FROM User u", Long.class).getSingleResult());
+            // 每个用户加入用户名和邮箱两个元素，另按现有用户数预留一倍的增长空间
+            BloomFilter next = new BloomFilter(Math.max(capacity, count * 4), falsePositiveRate);
+            inserted.set(0);
+            load(next, null);
+            filter = next;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * @param since 只加载该时间之后创建的用户，为 null 时加载全部
+     */
+    private void load(BloomFilter target, LocalDateTime since) {
+        // 回看窗口内的用户会被重复读到，只有晚于已知最新创建时间的才计入元素数；较晚提交的少数用户不计入，只影响重建时机
+        LocalDateTime known = target == filter ? lastCreatedAt : null;
+        readOnly().executeWithoutResult(status -> {
+            TypedQuery<Object[]> query = since == null
+                    ? entityManager.createQuery("SELECT u.createdAt, u.username, u.email FROM User u", Object[].class)
+                    : entityManager.createQuery("SELECT u.createdAt, u.username, u.email FROM User u "
+                            + "WHERE u.createdAt >= :since", Object[].class)
+                            .setParameter("since", since);
+            try (Stream<Object[]> rows = query.getResultStream()) {
+                rows.forEach(row -> {
+                    LocalDateTime createdAt = (LocalDateTime) row[0];
+                    put(target, (String) row[1], (String) row[2],
+                            known == null || createdAt == null || createdAt.isAfter(known));
+                    advanceLastCreatedAt(createdAt);
+                });
+            }
+        });
+    }
+
+    private void advanceLastCreatedAt(LocalDateTime createdAt) {
+        if (createdAt != null && (lastCreatedAt == null || createdAt.isAfter(lastCreatedAt))) {
+            lastCreatedAt = createdAt;
+        }
+    }
+
+    private void put(BloomFilter target, String username, String email, boolean count) {
+        if (username != null) {
+            target.put("u:" + normalize(username));
+        }
+        if (email != null) {
+            target.put("e:" + normalize(email));
+        }
+        if (count) {
+            inserted.addAndGet(2);
+        }
+    }
+
+    private TransactionTemplate readOnly() {
+        TransactionTemplate template = new TransactionTemplate(transactionManager);
+        template.setReadOnly(true);
+        return template;
+    }
+
+    private static String normalize(String value) {
+        return value.toLowerCase(Locale.ROOT);
+    }
+}
@@ -11,28 +11,43 @@ import com.thinknows.x_server.model.response.LoginResponse;
 import com.thinknows.x_server.model.response.TokenResponse;
 import com.thinknows.x_server.model.response.UserProfileResponse;
 import com.thinknows.x_server.repository.UserRepository;
+import com.thinknows.x_server.session.RefreshFamily;
+import com.thinknows.x_server.session.SessionActivityTracker;
+import com.thinknows.x_server.session.SessionStore;
+import com.thinknows.x_server.session.SessionStore.TokenType;
+import com.thinknows.x_server.session.StoredToken;
+import com.thinknows.x_server.util.Totp;
 
+import jakarta.annotation.PostConstruct;
 import org.mindrot.jbcrypt.BCrypt;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.dao.DataIntegrityViolationException;
 import org.springframework.stereotype.Service;
 
+import io.jsonwebtoken.Claims;
+import io.jsonwebtoken.JwtBuilder;
+import io.jsonwebtoken.JwtException;
 import io.jsonwebtoken.Jwts;
 import io.jsonwebtoken.SignatureAlgorithm;
 import io.jsonwebtoken.security.Keys;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
 import java.security.Key;
+import java.security.MessageDigest;
 import java.security.SecureRandom;
+import java.time.Instant;
 import java.time.LocalDateTime;
+import java.time.ZoneId;
 import java.util.Base64;
+import java.util.Comparator;
 import java.util.Arrays;
 import java.util.Date;
-import java.util.HashMap;
-import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.Objects;
 import java.util.Random;
-import java.util.Set;
 import java.util.UUID;
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
 import java.util.stream.Collectors;
 
 @Service
@@ -46,52 +61,91 @@ public class UserService {
             super(message);
         }
     }
+
+    /**
+     * 同一客户端登录失败过多
+     */
+    public static class LoginThrottledException extends RuntimeException {
+        private final long retryAfterSeconds;
+
+        public LoginThrottledException(String message, long retryAfterSeconds) {
+            super(message);
+            this.retryAfterSeconds = retryAfterSeconds;
+        }
+
+        public long getRetryAfterSeconds() {
+            return retryAfterSeconds;
+        }
+    }
     @Autowired
     private UserRepository userRepository;
-    private final Map<String, String> refreshTokenStore = new HashMap<>(); // username -> refreshToken
-    private final Map<String, String> accessTokenStore = new HashMap<>(); // username -> accessToken
-    private final Map<String, LocalDateTime> accessTokenExpiryStore = new HashMap<>(); // accessToken -> expiry
-    private final Map<String, LocalDateTime> refreshTokenExpiryStore = new HashMap<>(); // refreshToken -> expiry
-    
-    // 存储用户的活跃会话
-    private final Map<String, Set<String>> userActiveSessions = new HashMap<>(); // username -> Set<sessionId>
-    private final Map<String, String> sessionToUsername = new HashMap<>(); // sessionId -> username
-    private final Map<String, DeviceSession> sessionInfo = new HashMap<>(); // sessionId -> DeviceSession
-    
-    // 存储登录失败尝试
-    private final Map<String, Integer> failedLoginAttempts = new HashMap<>(); // username -> attempts count
-    private final Map<String, LocalDateTime> lockoutTime = new HashMap<>(); // username -> lockout until
-    
-    // 存储二次验证码
-    private final Map<String, String> twoFactorCodes = new HashMap<>(); // username -> code
-    private final Map<String, LocalDateTime> twoFactorCodeExpiry = new HashMap<>(); // username -> expiry
-    private final Map<String, String> twoFactorTokens = new HashMap<>(); // token -> username
+
+    @Autowired
+    private AuthorDirectoryService authorDirectoryService;
+
+    // 令牌、设备会话和账户锁定，按 app.sessions.store 配置可在重启后保留
+    @Autowired
+    private SessionStore sessionStore;
+
+    @Autowired
+    private SessionActivityTracker activityTracker;
+
+    @Autowired
+    private LoginThrottle loginThrottle;
+
+    @Autowired
+    private UserExistenceFilter userExistenceFilter;
+
+    // 每个用户最多保留的设备会话数，超出时淘汰最久没有活动的会话
+    @Value("${app.sessions.max-per-user:10}")
+    private int maxSessionsPerUser;
+
+    // 二次验证令牌的签名和验证码摘要密钥（Base64，至少 32 字节）；各节点配置同一个值，令牌可在任意节点验证，重启后仍然有效
+    @Value("${app.auth.two-factor.secret}")
+    private String twoFactorSecret;
+
+    // 二次验证不保存每次登录的状态：二次验证令牌是签名的短期令牌，已使用的令牌和 TOTP 时间步记录在会话存储中防止重放，
+    // 使用共享存储时在所有节点上只能用一次
+    private Key twoFactorKey;
     
     // Token validity periods (in minutes)
     private static final int ACCESS_TOKEN_VALIDITY_MINUTES = 30; // 30 minutes
     private static final int REFRESH_TOKEN_VALIDITY_MINUTES = 43200; // 30 days
     private static final int EXTENDED_REFRESH_TOKEN_VALIDITY_DAYS = 30; // 30 days for "remember me"
     
-    // 登录尝试限制
-    private static final int MAX_FAILED_ATTEMPTS = 5;
+    // 登录失败次数的限制见 LoginThrottle，达到上限时写入锁定记录，共享会话存储的其他节点同样生效
     private static final int LOCKOUT_DURATION_MINUTES = 15;
     
-    // 二次验证码有效期
+    // 用户不存在时也执行一次同样代价的 BCrypt 校验，响应时间不暴露用户名是否存在
+    private static final String DUMMY_PASSWORD_HASH = BCrypt.hashpw("dummy-password", BCrypt.gensalt());
+    
+    // 二次验证码（和二次验证令牌）有效期
     private static final int TWO_FACTOR_CODE_VALIDITY_MINUTES = 10;
+    // TOTP 允许前后各一个时间步的时钟偏差
+    private static final int TOTP_WINDOW_STEPS = 1;
+    private static final String TWO_FACTOR_TOKEN_TYPE = "2fa";
+    private static final SecureRandom SECURE_RANDOM = new SecureRandom();
     
     // JWT 密钥
     private static final Key JWT_SECRET_KEY = Keys.secretKeyFor(SignatureAlgorithm.HS512);
     
     // 不再需要手动管理ID，由数据库自动生成
 
+    @PostConstruct
+    public void init() {
+        twoFactorKey = Keys.hmacShaKeyFor(Base64.getDecoder().decode(twoFactorSecret));
+    }
+
     public User register(RegisterRequest request) {
-        // Check if username already exists
-        if (userRepository.existsByUsername(request.getUsername())) {
+        // Check if username already exists (the filter rules out most new usernames without a query)
+        if (userExistenceFilter.mightContainUsername(request.getUsername())
+                && userRepository.existsByUsername(request.getUsername())) {
             return null; // Username already exists
         }
         
         // Check if email already exists
-        if (userRepository.existsByEmail(request.getEmail())) {
+        if (userExistenceFilter.mightContainEmail(request.getEmail())
+                && userRepository.existsByEmail(request.getEmail())) {
             return null; // Email already exists
         }
 
@@ -106,52 +160,75 @@ public class UserService {
                 request.getPhone()
         );
 
-        // Save user to database
-        return userRepository.save(user);
+        // Save user to database; other nodes may have registered the same name since their filters refreshed
+        User saved;
+        try {
+            saved = userRepository.save(user);
+        } catch (DataIntegrityViolationException e) {
+            return null; // Username or email already exists
+        }
+        userExistenceFilter.add(saved.getUsername(), saved.getEmail());
+        // 该ID之前可能以 "user-<id>" 缓存过
+        authorDirectoryService.evict(saved.getId());
+        return saved;
     }
 
     
+    public LoginResponse login(LoginRequest request) {
+        return login(request, null);
+    }
+
     /**
      * 登录方法，支持密码验证、登录尝试限制和二次验证
+     * @param clientIp 请求的客户端地址，记录在新建的设备会话中
      */
-    public LoginResponse login(LoginRequest request) {
+    public LoginResponse login(LoginRequest request, String clientIp) {
         String username = request.getUsername();
         
+        // 先检查内存中的失败计数，被限流的请求不查询数据库、不做 BCrypt 校验
+        LoginThrottle.Verdict verdict = loginThrottle.check(username, clientIp);
+        if (!verdict.isAllowed()) {
+            if (verdict.isUserLimited()) {
+                throw new AccountLockedException("账户已被锁定，请稍后再试");
+            }
+            throw new LoginThrottledException("登录失败次数过多，请稍后再试", verdict.getRetryAfterSeconds());
+        }
+        
         // 检查是否被锁定
         if (isUserLockedOut(username)) {
             throw new AccountLockedException("账户已被锁定，请稍后再试");
         }
         
-        // 检查用户是否存在
-        User user = userRepository.findByUsername(username).orElse(null);
+        // 检查用户是否存在，过滤器确定不存在的用户名不查询数据库
+        User user = userExistenceFilter.mightContainUsername(username)
+                ? userRepository.findByUsername(username).orElse(null) : null;
         if (user == null) {
-            recordFailedLoginAttempt(username);
+            BCrypt.checkpw(request.getPassword(), DUMMY_PASSWORD_HASH);
+            recordFailedLoginAttempt(username, clientIp);
             return null; // 用户不存在
         }
         
         // 检查密码是否匹配（使用 BCrypt 验证）
         String storedPassword = user.getPassword();
         if (storedPassword == null || !BCrypt.checkpw(request.getPassword(), storedPassword)) {
-            recordFailedLoginAttempt(username);
+            recordFailedLoginAttempt(username, clientIp);
             return null; // 密码不匹配
         }
         
-        // 登录成功，重置失败计数
-        resetFailedLoginAttempts(username);
-        
-        // 检查用户是否启用了二次验证
+        // 检查用户是否启用了二次验证；密码正确但尚未通过二次验证，失败计数保留到二次验证成功
         if (user.isTwoFactorEnabled()) {
-            // 生成二次验证码
-            String twoFactorCode = generateTwoFactorCode();
-            String twoFactorToken = generateTwoFactorToken(username);
-            
-            // 存储验证码
-            twoFactorCodes.put(username, twoFactorCode);
-            twoFactorCodeExpiry.put(username, LocalDateTime.now().plusMinutes(TWO_FACTOR_CODE_VALIDITY_MINUTES));
-            twoFactorTokens.put(twoFactorToken, username);
-            
-            // 发送验证码到用户邮箱或手机（模拟）
-            sendTwoFactorCode(user, twoFactorCode);
+            String twoFactorToken;
+            if (user.getTwoFactorSecret() != null) {
+                // 配置了 TOTP 密钥时由验证器应用生成验证码，不发送
+                twoFactorToken = generateTwoFactorToken(username, null);
+            } else {
+                // 生成二次验证码，摘要写入二次验证令牌
+                String twoFactorCode = generateTwoFactorCode();
+                twoFactorToken = generateTwoFactorToken(username, twoFactorCode);
+                
+                // 发送验证码到用户邮箱或手机（模拟）
+                sendTwoFactorCode(user, twoFactorCode);
+            }
             
             // 返回需要二次验证的响应
             LoginResponse response = new LoginResponse();
@@ -161,11 +238,12 @@ public class UserService {
             return response;
         }
         
-        // 不需要二次验证，直接生成令牌
-        TokenResponse tokens = generateTokens(user, request.getDeviceInfo(), request.isRememberMe());
+        // 不需要二次验证，登录成功，重置失败计数并生成令牌
+        resetFailedLoginAttempts(username);
+        TokenResponse tokens = generateTokens(user, request.getDeviceInfo(), request.isRememberMe(), clientIp);
         
         // 获取用户的活跃会话
-        List<DeviceSession> activeSessions = getUserActiveSessions(username);
+        List<DeviceSession> activeSessions = getUserActiveSessions(username, currentSessionId(tokens));
         
         return new LoginResponse(tokens, cleanUserForResponse(user), false, null, activeSessions);
     }
@@ -189,13 +267,10 @@ public class UserService {
     /**
      * 记录登录失败尝试
      */
-    private void recordFailedLoginAttempt(String username) {
-        int attempts = failedLoginAttempts.getOrDefault(username, 0) + 1;
-        failedLoginAttempts.put(username, attempts);
-        
-        // 如果达到最大尝试次数，锁定账户
-        if (attempts >= MAX_FAILED_ATTEMPTS) {
-            lockoutTime.put(username, LocalDateTime.now().plusMinutes(LOCKOUT_DURATION_MINUTES));
+    private void recordFailedLoginAttempt(String username, String clientIp) {
+        // 如果窗口内达到最大尝试次数，锁定账户
+        if (loginThrottle.recordFailure(username, clientIp)) {
+            sessionStore.putLockout(username, LocalDateTime.now().plusMinutes(LOCKOUT_DURATION_MINUTES));
         }
     }
     
@@ -203,7 +278,7 @@ public class UserService {
      * 检查用户是否被锁定
      */
     private boolean isUserLockedOut(String username) {
-        LocalDateTime lockedUntil = lockoutTime.get(username);
+        LocalDateTime lockedUntil = sessionStore.getLockout(username);
         return lockedUntil != null && lockedUntil.isAfter(LocalDateTime.now());
     }
     
@@ -211,8 +286,10 @@ public class UserService {
      * 重置登录失败计数
      */
     private void resetFailedLoginAttempts(String username) {
-        failedLoginAttempts.remove(username);
-        lockoutTime.remove(username);
+        loginThrottle.recordSuccess(username);
+        if (sessionStore.getLockout(username) != null) {
+            sessionStore.removeLockout(username);
+        }
     }
     
     /**
@@ -220,61 +297,137 @@ public class UserService {
      */
     private String generateTwoFactorCode() {
         // 生成 6 位数字验证码
-        Random random = new Random();
-        int code = 100000 + random.nextInt(900000);
+        int code = 100000 + SECURE_RANDOM.nextInt(900000);
         return String.valueOf(code);
     }
     
     /**
-     * 生成二次验证令牌
+     * 生成二次验证令牌：签名的短期 JWT，记录用户名；发送验证码时附带验证码与令牌ID的 HMAC，服务端不保存验证码
+     * @param code 发送给用户的验证码，TOTP 模式为 null
      */
-    private String generateTwoFactorToken(String username) {
-        return UUID.randomUUID().toString();
+    private String generateTwoFactorToken(String username, String code) {
+        Date now = new Date();
+        String tokenId = UUID.randomUUID().toString();
+        JwtBuilder builder = Jwts.builder()
+                .setId(tokenId)
+                .setSubject(username)
+                .setIssuedAt(now)
+                .setExpiration(new Date(now.getTime() + TWO_FACTOR_CODE_VALIDITY_MINUTES * 60 * 1000L))
+                .claim("typ", TWO_FACTOR_TOKEN_TYPE);
+        if (code != null) {
+            builder.claim("code", twoFactorCodeDigest(tokenId, code));
+        }
+        return builder.signWith(twoFactorKey).compact();
+    }
+    
+    private String twoFactorCodeDigest(String tokenId, String code) {
+        try {
+            Mac mac = Mac.getInstance("HmacSHA256");
+            mac.init(new SecretKeySpec(twoFactorKey.getEncoded(), "HmacSHA256"));
+            byte[] digest = mac.doFinal((tokenId + ":" + code).getBytes(StandardCharsets.UTF_8));
+            return Base64.getUrlEncoder().withoutPadding().encodeToString(digest);
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
     }
     
+    public LoginResponse verifyTwoFactorCode(TwoFactorVerifyRequest request) {
+        return verifyTwoFactorCode(request, null);
+    }
+
     /**
      * 验证二次验证码
+     *
+     * 令牌的签名、有效期和类型通过后，TOTP 模式按用户的密钥验证（同一时间步的验证码只能用一次），
+     * 发送验证码模式与令牌中的摘要定长比较。每个二次验证令牌只能成功使用一次；验证码错误计入登录失败限流。
      */
-    public LoginResponse verifyTwoFactorCode(TwoFactorVerifyRequest request) {
+    public LoginResponse verifyTwoFactorCode(TwoFactorVerifyRequest request, String clientIp) {
         // 验证令牌
-        String token = request.getTwoFactorToken();
-        if (token == null || !twoFactorTokens.containsKey(token)) {
-            return null; // 无效的令牌
+        Claims claims = parseTwoFactorToken(request.getTwoFactorToken());
+        if (claims == null) {
+            return null; // 无效或过期的令牌
+        }
+        
+        String username = claims.getSubject();
+        LoginThrottle.Verdict verdict = loginThrottle.check(username, clientIp);
+        if (!verdict.isAllowed()) {
+            if (verdict.isUserLimited()) {
+                throw new AccountLockedException("账户已被锁定，请稍后再试");
+            }
+            throw new LoginThrottledException("登录失败次数过多，请稍后再试", verdict.getRetryAfterSeconds());
+        }
+        
+        // 锁定记录在会话存储中，其他节点累计的失败同样生效；只检查本节点的计数时，每个节点都能各猜一轮验证码
+        if (isUserLockedOut(username)) {
+            throw new AccountLockedException("账户已被锁定，请稍后再试");
         }
         
-        // 获取用户名
-        String username = twoFactorTokens.get(token);
         User user = userRepository.findByUsername(username).orElse(null);
-        if (user == null) {
-            return null; // 用户不存在
+        if (user == null || !user.isTwoFactorEnabled()) {
+            return null; // 用户不存在或已关闭二次验证
         }
         
         // 检查验证码
-        String storedCode = twoFactorCodes.get(username);
-        LocalDateTime expiry = twoFactorCodeExpiry.get(username);
-        
-        if (storedCode == null || expiry == null || expiry.isBefore(LocalDateTime.now())) {
-            return null; // 验证码不存在或已过期
+        String code = request.getCode();
+        long tokenExpiresAt = claims.getExpiration().getTime();
+        String expectedDigest = claims.get("code", String.class);
+        if (expectedDigest == null) {
+            long step = Totp.verify(user.getTwoFactorSecret(), code,
+                    System.currentTimeMillis() / 1000, TOTP_WINDOW_STEPS);
+            if (step < 0) {
+                recordFailedLoginAttempt(username, clientIp);
+                return null; // 验证码不匹配
+            }
+            long stepExpiresAt = (step + TOTP_WINDOW_STEPS + 1) * Totp.STEP_SECONDS * 1000L;
+            if (!sessionStore.markUsed("totp:" + username + ":" + step, toLocalDateTime(stepExpiresAt))) {
+                return null; // 验证码已使用
+            }
+        } else {
+            byte[] actual = twoFactorCodeDigest(claims.getId(), code == null ? "" : code)
+                    .getBytes(StandardCharsets.US_ASCII);
+            if (!MessageDigest.isEqual(actual, expectedDigest.getBytes(StandardCharsets.US_ASCII))) {
+                recordFailedLoginAttempt(username, clientIp);
+                return null; // 验证码不匹配
+            }
         }
         
-        if (!storedCode.equals(request.getCode())) {
-            return null; // 验证码不匹配
+        // 验证成功，令牌作废
+        if (!sessionStore.markUsed("2fa-token:" + claims.getId(), toLocalDateTime(tokenExpiresAt))) {
+            return null; // 令牌已使用
         }
         
-        // 验证成功，清除验证码
-        twoFactorCodes.remove(username);
-        twoFactorCodeExpiry.remove(username);
-        twoFactorTokens.remove(token);
+        // 二次验证通过才算登录成功，重置失败计数
+        resetFailedLoginAttempts(username);
         
         // 生成令牌
-        TokenResponse tokens = generateTokens(user, request.getDeviceInfo(), false);
+        TokenResponse tokens = generateTokens(user, request.getDeviceInfo(), false, clientIp);
         
         // 获取用户的活跃会话
-        List<DeviceSession> activeSessions = getUserActiveSessions(username);
+        List<DeviceSession> activeSessions = getUserActiveSessions(username, currentSessionId(tokens));
         
         return new LoginResponse(tokens, cleanUserForResponse(user), false, null, activeSessions);
     }
     
+    /**
+     * 解析二次验证令牌，签名无效、已过期或不是二次验证令牌时返回 null
+     */
+    private Claims parseTwoFactorToken(String token) {
+        if (token == null) {
+            return null;
+        }
+        try {
+            Claims claims = Jwts.parserBuilder().setSigningKey(twoFactorKey).build()
+                    .parseClaimsJws(token).getBody();
+            return TWO_FACTOR_TOKEN_TYPE.equals(claims.get("typ", String.class)) ? claims : null;
+        } catch (JwtException | IllegalArgumentException e) {
+            return null;
+        }
+    }
+    
+    private static LocalDateTime toLocalDateTime(long epochMillis) {
+        return LocalDateTime.ofInstant(Instant.ofEpochMilli(epochMillis), ZoneId.systemDefault());
+    }
+    
     /**
      * 模拟发送二次验证码
      */
@@ -287,13 +440,83 @@ public class UserService {
      * 获取用户的活跃会话
      */
     public List<DeviceSession> getUserActiveSessions(String username) {
-        Set<String> sessionIds = userActiveSessions.getOrDefault(username, new HashSet<>());
-        return sessionIds.stream()
-                .map(sessionInfo::get)
-                .filter(Objects::nonNull)
+        return getUserActiveSessions(username, null);
+    }
+
+    /**
+     * 获取用户的活跃会话，currentSessionId 对应的会话标记为当前设备
+     */
+    public List<DeviceSession> getUserActiveSessions(String username, String currentSessionId) {
+        // 存储中的对象可能被其他请求共享，返回副本
+        return sessionStore.getSessions(username).stream()
+                .map(session -> new DeviceSession(session.getSessionId(), session.getDeviceInfo(),
+                        session.getLoginTime(), session.getLastActivityTime(), session.getIpAddress(),
+                        session.getSessionId().equals(currentSessionId)))
                 .collect(Collectors.toList());
     }
 
+    /**
+     * 撤销用户的一个会话，会话签发的令牌随之失效
+     * @return 会话不存在或不属于该用户时返回 false
+     */
+    public boolean revokeSession(String username, String sessionId) {
+        boolean owned = sessionStore.getSessions(username).stream()
+                .anyMatch(session -> session.getSessionId().equals(sessionId));
+        if (!owned) {
+            return false;
+        }
+        sessionStore.removeSession(sessionId);
+        activityTracker.forget(sessionId);
+        return true;
+    }
+
+    /**
+     * 撤销用户的全部会话
+     * @param keepSessionId 保留的会话（通常是当前设备）；为 null 时全部撤销，并增加会话代数，
+     *                      之前签发的所有令牌立即失效，包括并发登录中尚未出现在会话列表里的令牌
+     * @return 撤销的会话数
+     */
+    public int revokeAllSessions(String username, String keepSessionId) {
+        if (keepSessionId == null) {
+            sessionStore.incrementGeneration(username);
+        }
+        int revoked = 0;
+        for (DeviceSession session : sessionStore.getSessions(username)) {
+            if (!session.getSessionId().equals(keepSessionId)) {
+                sessionStore.removeSession(session.getSessionId());
+                activityTracker.forget(session.getSessionId());
+                revoked++;
+            }
+        }
+        return revoked;
+    }
+
+    /**
+     * 会话数达到上限时淘汰最久没有活动的会话，为新会话留出位置
+     */
+    private void evictSessionsOverLimit(String username) {
+        List<DeviceSession> sessions = sessionStore.getSessions(username);
+        if (sessions.size() < maxSessionsPerUser) {
+            return;
+        }
+        sessions.stream()
+                .sorted(Comparator.comparing(UserService::lastActive, Comparator.nullsFirst(Comparator.naturalOrder())))
+                .limit(sessions.size() - maxSessionsPerUser + 1L)
+                .forEach(session -> {
+                    sessionStore.removeSession(session.getSessionId());
+                    activityTracker.forget(session.getSessionId());
+                });
+    }
+
+    private static LocalDateTime lastActive(DeviceSession session) {
+        return session.getLastActivityTime() != null ? session.getLastActivityTime() : session.getLoginTime();
+    }
+
+    private String currentSessionId(TokenResponse tokens) {
+        StoredToken stored = sessionStore.getToken(TokenType.ACCESS, tokens.getAccessToken());
+        return stored != null ? stored.getSessionId() : null;
+    }
+
     /**
      * 生成访问令牌和刷新令牌
      */
@@ -305,12 +528,17 @@ public class UserService {
      * 生成访问令牌和刷新令牌，支持设备信息和记住我功能
      */
     public TokenResponse generateTokens(User user, DeviceInfo deviceInfo, boolean rememberMe) {
+        return generateTokens(user, deviceInfo, rememberMe, null);
+    }
+
+    /**
+     * 生成访问令牌和刷新令牌，每次登录创建一个设备会话并记录客户端地址
+     */
+    public TokenResponse generateTokens(User user, DeviceInfo deviceInfo, boolean rememberMe, String clientIp) {
         String username = user.getUsername();
         
-        // 生成 JWT 令牌
+        // 生成 JWT 访问令牌
         String accessToken = generateJwtToken(user, ACCESS_TOKEN_VALIDITY_MINUTES);
-        String refreshToken = generateJwtToken(user, rememberMe ? 
-                EXTENDED_REFRESH_TOKEN_VALIDITY_DAYS * 24 * 60 : REFRESH_TOKEN_VALIDITY_MINUTES);
 
         // 设置过期时间
         LocalDateTime accessTokenExpiry = LocalDateTime.now().plusMinutes(ACCESS_TOKEN_VALIDITY_MINUTES);
@@ -318,29 +546,29 @@ public class UserService {
                 LocalDateTime.now().plusDays(EXTENDED_REFRESH_TOKEN_VALIDITY_DAYS) :
                 LocalDateTime.now().plusMinutes(REFRESH_TOKEN_VALIDITY_MINUTES);
         
-        // 存储令牌
-        accessTokenStore.put(username, accessToken);
-        refreshTokenStore.put(username, refreshToken);
-        accessTokenExpiryStore.put(accessToken, accessTokenExpiry);
-        refreshTokenExpiryStore.put(refreshToken, refreshTokenExpiry);
-        
-        // 创建新会话
-        if (deviceInfo != null) {
-            String sessionId = UUID.randomUUID().toString();
-            DeviceSession session = new DeviceSession();
-            session.setSessionId(sessionId);
-            session.setDeviceInfo(deviceInfo);
-            session.setLoginTime(LocalDateTime.now());
-            session.setLastActivityTime(LocalDateTime.now());
-            session.setIpAddress("127.0.0.1"); // 在实际应用中，从请求中获取
-            session.setCurrentDevice(true);
-            
-            // 存储会话信息
-            Set<String> userSessions = userActiveSessions.computeIfAbsent(username, k -> new HashSet<>());
-            userSessions.add(sessionId);
-            sessionToUsername.put(sessionId, username);
-            sessionInfo.put(sessionId, session);
-        }
+        // 创建新会话；没有设备信息的登录同样占用一个会话，重复登录不会无限累积令牌
+        evictSessionsOverLimit(username);
+        String sessionId = UUID.randomUUID().toString();
+        DeviceSession session = new DeviceSession();
+        session.setSessionId(sessionId);
+        session.setDeviceInfo(deviceInfo);
+        session.setLoginTime(LocalDateTime.now());
+        session.setLastActivityTime(LocalDateTime.now());
+        session.setIpAddress(clientIp);
+        // 是否为当前设备取决于查看者，在返回会话列表时设置
+        
+        // 存储会话信息
+        sessionStore.putSession(username, session);
+
+        // 存储访问令牌，按令牌索引，记录所属用户、会话和签发时的会话代数
+        long generation = sessionStore.getGeneration(username);
+        sessionStore.putToken(TokenType.ACCESS, accessToken,
+                new StoredToken(username, sessionId, accessTokenExpiry, generation));
+
+        // 刷新令牌家族以会话ID为家族ID，只保存当前序号和令牌摘要
+        String refreshToken = RefreshFamily.newToken(sessionId, 0);
+        sessionStore.putRefreshFamily(sessionId,
+                RefreshFamily.forToken(username, refreshToken, 0, refreshTokenExpiry, generation));
 
         // 返回令牌响应
         return new TokenResponse(accessToken, refreshToken, ACCESS_TOKEN_VALIDITY_MINUTES, 
@@ -348,28 +576,42 @@ public class UserService {
     }
     
     public TokenResponse refreshToken(RefreshTokenRequest request) {
+        return refreshToken(request, null);
+    }
+
+    /**
+     * 用刷新令牌换发访问令牌和新的刷新令牌，旧刷新令牌随即失效
+     *
+     * 出示刚被换掉的上一个令牌（摘要与家族记录一致）或在并发换发中落败，视为令牌被盗用，撤销整个会话；
+     * 无法证明签发过的旧序号令牌只拒绝，不撤销。
+     * 家族记录的有效期不随换发延长，从登录起计算。
+     */
+    public TokenResponse refreshToken(RefreshTokenRequest request, String clientIp) {
         String refreshToken = request.getRefreshToken();
-        
-        // Check if refresh token exists and is valid
-        if (!refreshTokenExpiryStore.containsKey(refreshToken)) {
-            return null; // Token not found
+        String familyId = RefreshFamily.familyIdOf(refreshToken);
+        long counter = familyId != null ? RefreshFamily.counterOf(refreshToken) : -1;
+        if (counter < 0) {
+            return null; // Malformed token
         }
-        
-        LocalDateTime expiry = refreshTokenExpiryStore.get(refreshToken);
-        if (expiry.isBefore(LocalDateTime.now())) {
-            // Remove expired token
-            String username = getUsernameByRefreshToken(refreshToken);
-            if (username != null) {
-                refreshTokenStore.remove(username);
-            }
-            refreshTokenExpiryStore.remove(refreshToken);
-            return null; // Token expired
+
+        RefreshFamily family = sessionStore.getRefreshFamily(familyId);
+        if (family == null || family.isExpired(LocalDateTime.now())) {
+            return null; // Token not found or expired
         }
-        
-        // Get username from refresh token
-        String username = getUsernameByRefreshToken(refreshToken);
-        if (username == null) {
-            return null; // Username not found
+
+        // 只有确认是真正签发过的上一个令牌才视为重复使用并撤销会话；伪造的旧序号只拒绝
+        if (counter == family.getCounter() - 1 && family.matchesPrevious(refreshToken)) {
+            revokeReusedFamily(family, familyId);
+            return null; // Rotated token reused
+        }
+        if (counter != family.getCounter() || !family.matches(refreshToken)) {
+            return null; // Unknown token
+        }
+
+        String username = family.getUsername();
+        if (family.getGeneration() != sessionStore.getGeneration(username)
+                || sessionStore.getSession(familyId) == null) {
+            return null; // Session revoked
         }
         
         // Get user
@@ -377,62 +619,76 @@ public class UserService {
         if (user == null) {
             return null; // User not found
         }
+
+        // Rotate refresh token; losing a concurrent rotation means the same token was presented twice
+        String newRefreshToken = RefreshFamily.newToken(familyId, counter + 1);
+        RefreshFamily next = family.rotate(newRefreshToken);
+        if (!sessionStore.replaceRefreshFamily(familyId, counter, next)) {
+            revokeReusedFamily(family, familyId);
+            return null;
+        }
         
         // Generate new access token
         String newAccessToken = generateSecureToken();
         LocalDateTime newAccessTokenExpiry = LocalDateTime.now().plusMinutes(ACCESS_TOKEN_VALIDITY_MINUTES);
         
-        // Update access token
-        accessTokenStore.put(username, newAccessToken);
-        accessTokenExpiryStore.put(newAccessToken, newAccessTokenExpiry);
+        sessionStore.putToken(TokenType.ACCESS, newAccessToken,
+                new StoredToken(username, familyId, newAccessTokenExpiry, family.getGeneration()));
+        activityTracker.record(username, familyId, clientIp);
         
-        // Return new tokens (keeping the same refresh token)
         return new TokenResponse(
             newAccessToken, 
-            refreshToken, 
+            newRefreshToken, 
             newAccessTokenExpiry, 
-            refreshTokenExpiryStore.get(refreshToken)
+            family.getExpiresAt()
         );
     }
+
+    private void revokeReusedFamily(RefreshFamily family, String familyId) {
+        System.err.println("Refresh token reuse detected, revoking session " + familyId
+                + " of user " + family.getUsername());
+        sessionStore.removeSession(familyId);
+        activityTracker.forget(familyId);
+    }
     
     public boolean validateAccessToken(String accessToken) {
-        if (!accessTokenExpiryStore.containsKey(accessToken)) {
-            return false; // Token not found
-        }
-        
-        LocalDateTime expiry = accessTokenExpiryStore.get(accessToken);
-        return !expiry.isBefore(LocalDateTime.now()); // Token is valid if not expired
+        return authenticate(accessToken) != null;
     }
     
-    public User getUserByAccessToken(String accessToken) {
-        if (!validateAccessToken(accessToken)) {
-            return null; // Invalid token
-        }
-        
-        String username = getUsernameByAccessToken(accessToken);
-        if (username == null) {
-            return null; // Username not found
+    /**
+     * 验证访问令牌：存在、未过期、签发后用户没有撤销全部会话、所属会话仍然存在，全部为 O(1) 查找
+     * @return 令牌记录，无效时返回 null
+     */
+    public StoredToken authenticate(String accessToken) {
+        StoredToken stored = sessionStore.getToken(TokenType.ACCESS, accessToken);
+        if (stored == null || stored.isExpired(LocalDateTime.now()) || !isLive(stored)) {
+            return null;
         }
-        
-        return userRepository.findByUsername(username).orElse(null);
+        return stored;
     }
     
-    private String getUsernameByAccessToken(String accessToken) {
-        for (Map.Entry<String, String> entry : accessTokenStore.entrySet()) {
-            if (entry.getValue().equals(accessToken)) {
-                return entry.getKey();
-            }
+    private boolean isLive(StoredToken stored) {
+        return stored.getGeneration() == sessionStore.getGeneration(stored.getUsername())
+                && (stored.getSessionId() == null || sessionStore.getSession(stored.getSessionId()) != null);
+    }
+    
+    /**
+     * 记录一次携带访问令牌的请求，更新对应设备会话的活动时间和地址；令牌无效时忽略
+     */
+    public void recordActivity(String accessToken, String clientIp) {
+        StoredToken stored = authenticate(accessToken);
+        if (stored != null) {
+            activityTracker.record(stored.getUsername(), stored.getSessionId(), clientIp);
         }
-        return null;
     }
     
-    private String getUsernameByRefreshToken(String refreshToken) {
-        for (Map.Entry<String, String> entry : refreshTokenStore.entrySet()) {
-            if (entry.getValue().equals(refreshToken)) {
-                return entry.getKey();
-            }
+    public User getUserByAccessToken(String accessToken) {
+        StoredToken stored = authenticate(accessToken);
+        if (stored == null) {
+            return null; // Invalid token
         }
-        return null;
+        
+        return userRepository.findByUsername(stored.getUsername()).orElse(null);
     }
     
     /**
@@ -442,7 +698,9 @@ public class UserService {
         Date now = new Date();
         Date expiryDate = new Date(now.getTime() + validityMinutes * 60 * 1000);
         
+        // jti 保证同一秒内签发的令牌也互不相同，否则不同会话会共用同一个令牌
         return Jwts.builder()
+                .setId(UUID.randomUUID().toString())
                 .setSubject(user.getUsername())
                 .setIssuedAt(now)
                 .setExpiration(expiryDate)
@@ -0,0 +1,379 @@
+package com.thinknows.x_server.session;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * 内嵌的 Redis 协议替身，只用于本地开发和测试
+ *
+ * 只实现 RedisSessionStore 用到的命令：PING、AUTH、GET、SET（PX/EX/KEEPTTL/NX/XX）、MGET、DEL、INCR、
+ * PEXPIREAT（NX/GT）、SADD、SREM、SMEMBERS、PUBLISH、SUBSCRIBE、FLUSHALL。数据保存在内存中，过期在访问时检查。
+ * 每个连接一个守护线程，不追求性能。
+ */
+public class EmbeddedRespServer implements Closeable {
+
+    private static final class Entry {
+        final Object value; // byte[] 或 Set<String>
+        final long expiresAtMillis; // 0 表示不过期
+
+        Entry(Object value, long expiresAtMillis) {
+            this.value = value;
+            this.expiresAtMillis = expiresAtMillis;
+        }
+
+        boolean isExpired(long now) {
+            return expiresAtMillis != 0 && expiresAtMillis <= now;
+        }
+    }
+
+    private final Map<String, Entry> data = new HashMap<>();
+    private final ReentrantLock dataLock = new ReentrantLock();
+    private final Map<String, Set<Client>> subscribers = new ConcurrentHashMap<>();
+    private final Set<Client> clients = ConcurrentHashMap.newKeySet();
+    private final ServerSocket serverSocket;
+
+    private volatile boolean closed;
+
+    /**
+     * 在本机回环地址上监听，port 为 0 时使用随机端口
+     */
+    public EmbeddedRespServer(int port) throws IOException {
+        serverSocket = new ServerSocket(port, 50, InetAddress.getLoopbackAddress());
+        Thread acceptor = new Thread(this::acceptLoop, "embedded-resp-server");
+        acceptor.setDaemon(true);
+        acceptor.start();
+    }
+
+    public int getPort() {
+        return serverSocket.getLocalPort();
+    }
+
+    @Override
+    public void close() throws IOException {
+        closed = true;
+        serverSocket.close();
+        clients.forEach(Client::close);
+    }
+
+    private void acceptLoop() {
+        while (!closed) {
+            try {
+                Client client = new Client(serverSocket.accept());
+                clients.add(client);
+                Thread thread = new Thread(client, "embedded-resp-client");
+                thread.setDaemon(true);
+                thread.start();
+            } catch (IOException e) {
+                if (!closed) {
+                    System.err.println("Embedded RESP server accept failed: " + e.getMessage());
+                }
+            }
+        }
+    }
+
+    private final class Client implements Runnable, Closeable {
+        private final Socket socket;
+        private final OutputStream out;
+        private final ReentrantLock writeLock = new ReentrantLock();
+
+        Client(Socket socket) throws IOException {
+            this.socket = socket;
+            this.out = new BufferedOutputStream(socket.getOutputStream());
+        }
+
+        @Override
+        public void run() {
+            try (InputStream in = new BufferedInputStream(socket.getInputStream())) {
+                while (!closed) {
+                    Object request = Resp.read(in);
+                    if (!(request instanceof List<?> args) || args.isEmpty()) {
+                        reply(o -> Resp.writeError(o, "ERR protocol error"));
+                        continue;
+                    }
+                    execute(args);
+                }
+            } catch (SocketException e) {
+                // 连接关闭
+            } catch (IOException | RuntimeException e) {
+                if (!closed) {
+                    System.err.println("Embedded RESP client failed: " + e.getMessage());
+                }
+            } finally {
+                close();
+            }
+        }
+
+        @Override
+        public void close() {
+            clients.remove(this);
+            subscribers.values().forEach(set -> set.remove(this));
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // 忽略
+            }
+        }
+
+        void reply(ReplyWriter writer) throws IOException {
+            writeLock.lock();
+            try {
+                writer.write(out);
+                out.flush();
+            } finally {
+                writeLock.unlock();
+            }
+        }
+
+        private void execute(List<?> args) throws IOException {
+            String command = arg(args, 0).toUpperCase(Locale.ROOT);
+            long now = System.currentTimeMillis();
+            switch (command) {
+                case "PING" -> reply(o -> Resp.writeSimple(o, "PONG"));
+                case "AUTH" -> reply(o -> Resp.writeSimple(o, "OK"));
+                case "GET" -> {
+                    Object value = read(arg(args, 1), now);
+                    if (value instanceof Set) {
+                        reply(o -> Resp.writeError(o, "WRONGTYPE Operation against a key holding the wrong kind of value"));
+                    } else {
+                        reply(o -> Resp.writeBulk(o, (byte[]) value));
+                    }
+                }
+                case "MGET" -> {
+                    List<byte[]> values = new ArrayList<>();
+                    for (int i = 1; i < args.size(); i++) {
+                        Object value = read(arg(args, i), now);
+                        values.add(value instanceof byte[] bytes ? bytes : null);
+                    }
+                    reply(o -> {
+                        Resp.writeArrayHeader(o, values.size());
+                        for (byte[] value : values) {
+                            Resp.writeBulk(o, value);
+                        }
+                    });
+                }
+                case "SET" -> {
+                    String key = arg(args, 1);
+                    long expiresAt = 0;
+                    boolean keepTtl = false;
+                    boolean ifAbsent = false;
+                    boolean ifPresent = false;
+                    for (int i = 3; i < args.size(); i++) {
+                        String option = arg(args, i).toUpperCase(Locale.ROOT);
+                        switch (option) {
+                            case "PX" -> expiresAt = now + Long.parseLong(arg(args, ++i));
+                            case "EX" -> expiresAt = now + Long.parseLong(arg(args, ++i)) * 1000;
+                            case "KEEPTTL" -> keepTtl = true;
+                            case "NX" -> ifAbsent = true;
+                            case "XX" -> ifPresent = true;
+                            default -> { }
+                        }
+                    }
+                    boolean written;
+                    dataLock.lock();
+                    try {
+                        Entry existing = data.get(key);
+                        boolean present = existing != null && !existing.isExpired(now);
+                        written = !(ifAbsent && present) && !(ifPresent && !present);
+                        if (written) {
+                            long expiry = keepTtl && present ? existing.expiresAtMillis : expiresAt;
+                            data.put(key, new Entry(args.get(2), expiry));
+                        }
+                    } finally {
+                        dataLock.unlock();
+                    }
+                    if (written) {
+                        reply(o -> Resp.writeSimple(o, "OK"));
+                    } else {
+                        reply(o -> Resp.writeBulk(o, null));
+                    }
+                }
+                case "PEXPIREAT" -> {
+                    String key = arg(args, 1);
+                    long expiresAt = Long.parseLong(arg(args, 2));
+                    String condition = args.size() > 3 ? arg(args, 3).toUpperCase(Locale.ROOT) : "";
+                    boolean updated = false;
+                    dataLock.lock();
+                    try {
+                        Entry entry = data.get(key);
+                        if (entry != null && !entry.isExpired(now)) {
+                            // 与 Redis 相同：GT 把不过期的键视为过期时间无穷大
+                            updated = switch (condition) {
+                                case "NX" -> entry.expiresAtMillis == 0;
+                                case "GT" -> entry.expiresAtMillis != 0 && expiresAt > entry.expiresAtMillis;
+                                default -> true;
+                            };
+                            if (updated) {
+                                data.put(key, new Entry(entry.value, expiresAt));
+                            }
+                        }
+                    } finally {
+                        dataLock.unlock();
+                    }
+                    long result = updated ? 1 : 0;
+                    reply(o -> Resp.writeInteger(o, result));
+                }
+                case "DEL" -> {
+                    long removed = 0;
+                    dataLock.lock();
+                    try {
+                        for (int i = 1; i < args.size(); i++) {
+                            Entry entry = data.remove(arg(args, i));
+                            if (entry != null && !entry.isExpired(now)) {
+                                removed++;
+                            }
+                        }
+                    } finally {
+                        dataLock.unlock();
+                    }
+                    long count = removed;
+                    reply(o -> Resp.writeInteger(o, count));
+                }
+                case "INCR" -> {
+                    String key = arg(args, 1);
+                    long value;
+                    dataLock.lock();
+                    try {
+                        Entry entry = data.get(key);
+                        long current = 0;
+                        if (entry != null && !entry.isExpired(now)) {
+                            current = Long.parseLong(Resp.string((byte[]) entry.value));
+                        }
+                        value = current + 1;
+                        data.put(key, new Entry(Resp.bytes(Long.toString(value)), entry != null ? entry.expiresAtMillis : 0));
+                    } finally {
+                        dataLock.unlock();
+                    }
+                    reply(o -> Resp.writeInteger(o, value));
+                }
+                case "SADD", "SREM" -> {
+                    long changed = 0;
+                    String key = arg(args, 1);
+                    dataLock.lock();
+                    try {
+                        Entry entry = data.get(key);
+                        Set<String> members = new LinkedHashSet<>();
+                        long expiresAt = 0;
+                        if (entry != null && !entry.isExpired(now) && entry.value instanceof Set<?> existing) {
+                            existing.forEach(member -> members.add((String) member));
+                            expiresAt = entry.expiresAtMillis;
+                        }
+                        for (int i = 2; i < args.size(); i++) {
+                            boolean result = command.equals("SADD") ? members.add(arg(args, i)) : members.remove(arg(args, i));
+                            if (result) {
+                                changed++;
+                            }
+                        }
+                        if (members.isEmpty()) {
+                            data.remove(key);
+                        } else {
+                            data.put(key, new Entry(members, expiresAt));
+                        }
+                    } finally {
+                        dataLock.unlock();
+                    }
+                    long count = changed;
+                    reply(o -> Resp.writeInteger(o, count));
+                }
+                case "SMEMBERS" -> {
+                    Object value = read(arg(args, 1), now);
+                    List<String> members = new ArrayList<>();
+                    if (value instanceof Set<?> set) {
+                        set.forEach(member -> members.add((String) member));
+                    }
+                    reply(o -> {
+                        Resp.writeArrayHeader(o, members.size());
+                        for (String member : members) {
+                            Resp.writeBulk(o, Resp.bytes(member));
+                        }
+                    });
+                }
+                case "PUBLISH" -> {
+                    byte[] message = (byte[]) args.get(2);
+                    Set<Client> targets = subscribers.getOrDefault(arg(args, 1), Set.of());
+                    for (Client target : targets) {
+                        try {
+                            target.reply(o -> {
+                                Resp.writeArrayHeader(o, 3);
+                                Resp.writeBulk(o, Resp.bytes("message"));
+                                Resp.writeBulk(o, (byte[]) args.get(1));
+                                Resp.writeBulk(o, message);
+                            });
+                        } catch (IOException e) {
+                            target.close();
+                        }
+                    }
+                    reply(o -> Resp.writeInteger(o, targets.size()));
+                }
+                case "SUBSCRIBE" -> {
+                    for (int i = 1; i < args.size(); i++) {
+                        String channel = arg(args, i);
+                        subscribers.computeIfAbsent(channel, key -> ConcurrentHashMap.newKeySet()).add(this);
+                        long index = i;
+                        reply(o -> {
+                            Resp.writeArrayHeader(o, 3);
+                            Resp.writeBulk(o, Resp.bytes("subscribe"));
+                            Resp.writeBulk(o, Resp.bytes(channel));
+                            Resp.writeInteger(o, index);
+                        });
+                    }
+                }
+                case "FLUSHALL" -> {
+                    withData(data::clear);
+                    reply(o -> Resp.writeSimple(o, "OK"));
+                }
+                default -> reply(o -> Resp.writeError(o, "ERR unknown command '" + command + "'"));
+            }
+        }
+    }
+
+    private interface ReplyWriter {
+        void write(OutputStream out) throws IOException;
+    }
+
+    private Object read(String key, long now) {
+        dataLock.lock();
+        try {
+            Entry entry = data.get(key);
+            if (entry == null) {
+                return null;
+            }
+            if (entry.isExpired(now)) {
+                data.remove(key);
+                return null;
+            }
+            return entry.value;
+        } finally {
+            dataLock.unlock();
+        }
+    }
+
+    private void withData(Runnable action) {
+        dataLock.lock();
+        try {
+            action.run();
+        } finally {
+            dataLock.unlock();
+        }
+    }
+
+    private static String arg(List<?> args, int index) {
+        return Resp.string((byte[]) args.get(index));
+    }
+}
@@ -0,0 +1,679 @@
+package com.thinknows.x_server.session;
+
+import com.thinknows.x_server.model.response.DeviceSession;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * 文件会话存储：内存状态 + 追加日志 + 快照
+ *
+ * 读取直接访问内存状态；每次修改先追加一条带 CRC 的日志记录，再更新内存，
+ * 两步在同一把锁内完成，日志顺序与内存状态一致。
+ * 日志按段写入 sessions-&lt;序号&gt;.log；累计 app.sessions.file.compact-after 条记录后写一次快照：
+ * 先切换到新日志段，再遍历内存状态写 snapshot.bin，快照期间的修改落在新段中。
+ * 快照只包含完整状态的写入和删除，重放新段得到的结果与顺序执行一致，因此快照不需要停写。
+ * 启动时读取快照，再重放快照之后的日志段；进程崩溃留下的半条记录只会出现在最新日志段的末尾，
+ * 按长度和 CRC 识别后截掉。快照或其他位置的记录损坏说明文件已不可信，启动失败。
+ */
+@Service
+@ConditionalOnProperty(name = "app.sessions.store", havingValue = "file")
+public class FileSessionStore implements SessionStore {
+
+    private static final int SNAPSHOT_MAGIC = 0x58535353; // "XSSS"
+    private static final int MAX_RECORD_BYTES = 1 << 20;
+    // 记录头：长度和 CRC32
+    private static final int RECORD_HEADER_BYTES = 8;
+    // 快照头：magic 和开始重放的日志段序号
+    private static final int SNAPSHOT_HEADER_BYTES = 12;
+    private static final String SNAPSHOT_FILE = "snapshot.bin";
+    private static final String LOCK_FILE = "sessions.lock";
+    private static final Pattern SEGMENT_NAME = Pattern.compile("sessions-(\\d{16})\\.log");
+
+    private static final byte PUT_TOKEN = 1;
+    private static final byte REMOVE_TOKEN = 2;
+    private static final byte PUT_SESSION = 3;
+    private static final byte REMOVE_SESSION = 4;
+    private static final byte PUT_LOCKOUT = 5;
+    private static final byte REMOVE_LOCKOUT = 6;
+    private static final byte PUT_GENERATION = 7;
+    private static final byte PUT_REFRESH_FAMILY = 8;
+    private static final byte PUT_USED_KEY = 9;
+
+    @Value("${app.sessions.file.dir:./data/sessions}")
+    private String directory;
+
+    @Value("${app.sessions.file.compact-after:100000}")
+    private long compactAfter;
+
+    @Value("${app.sessions.file.fsync:false}")
+    private boolean fsync;
+
+    private final InMemorySessionStore state = new InMemorySessionStore();
+    private final ReentrantLock writeLock = new ReentrantLock();
+
+    private Path dir;
+    private FileChannel lockChannel;
+    private FileLock fileLock;
+    private FileOutputStream segmentFile;
+    private DataOutputStream segment;
+    private long segmentSeq;
+    private volatile long recordsSinceSnapshot;
+    private ScheduledExecutorService maintenance;
+
+    @PostConstruct
+    public void init() throws IOException {
+        dir = Paths.get(directory);
+        Files.createDirectories(dir);
+        lockChannel = FileChannel.open(dir.resolve(LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+        fileLock = lockChannel.tryLock();
+        if (fileLock == null) {
+            lockChannel.close();
+            throw new IllegalStateException("Session store directory is in use by another process: " + dir.toAbsolutePath());
+        }
+
+        try {
+            recover();
+        } catch (IOException | RuntimeException e) {
+            // 启动失败时释放目录锁，修复文件后可以在同一进程内重试
+            fileLock.release();
+            lockChannel.close();
+            throw e;
+        }
+
+        maintenance = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "session-store-maintenance");
+            thread.setDaemon(true);
+            return thread;
+        });
+        maintenance.scheduleWithFixedDelay(this::maintain, 1, 1, TimeUnit.MINUTES);
+    }
+
+    /**
+     * 读取快照并重放之后的日志段，然后打开新的日志段
+     */
+    private void recover() throws IOException {
+        long replayFrom = readSnapshot();
+        long replayed = 0;
+        long lastSeq = replayFrom - 1;
+        List<Long> segments = listSegments();
+        for (Long seq : segments) {
+            if (seq >= replayFrom) {
+                // 只有最新的日志段在崩溃时可能正在写入
+                boolean newest = seq.equals(segments.get(segments.size() - 1));
+                Path file = segmentPath(seq);
+                Replay result = replay(file, newest);
+                replayed += result.records;
+                if (newest && result.validBytes < Files.size(file)) {
+                    truncate(file, result.validBytes);
+                }
+            }
+            lastSeq = Math.max(lastSeq, seq);
+        }
+        recordsSinceSnapshot = replayed;
+        // 总是从新段开始写；崩溃留下的半条记录已从旧段末尾截掉，旧段之后只包含完整记录
+        openSegment(lastSeq + 1);
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        if (maintenance != null) {
+            maintenance.shutdownNow();
+        }
+        writeLock.lock();
+        try {
+            if (segment != null) {
+                segment.flush();
+                segmentFile.getChannel().force(false);
+                segment.close();
+                segment = null;
+            }
+        } finally {
+            writeLock.unlock();
+        }
+        if (fileLock != null) {
+            fileLock.release();
+            lockChannel.close();
+        }
+    }
+
+    @Override
+    public void putToken(TokenType type, String token, StoredToken value) {
+        append(PUT_TOKEN, out -> {
+            out.writeByte(type.ordinal());
+            out.writeUTF(token);
+            SessionCodec.writeToken(out, value);
+        }, () -> state.putToken(type, token, value));
+    }
+
+    @Override
+    public StoredToken getToken(TokenType type, String token) {
+        return state.getToken(type, token);
+    }
+
+    @Override
+    public void removeToken(TokenType type, String token) {
+        append(REMOVE_TOKEN, out -> {
+            out.writeByte(type.ordinal());
+            out.writeUTF(token);
+        }, () -> state.removeToken(type, token));
+    }
+
+    @Override
+    public void putSession(String username, DeviceSession session) {
+        append(PUT_SESSION, out -> {
+            out.writeUTF(username);
+            SessionCodec.writeSession(out, session);
+        }, () -> state.putSession(username, session));
+    }
+
+    @Override
+    public int updateSessionsIfPresent(Map<String, List<DeviceSession>> sessionsByUsername) {
+        // 检查和写入在同一把锁内，删除会话的记录不会插在中间
+        writeLock.lock();
+        try {
+            List<byte[]> payloads = new ArrayList<>();
+            Map<String, List<DeviceSession>> present = new HashMap<>();
+            sessionsByUsername.forEach((username, sessions) -> {
+                for (DeviceSession session : sessions) {
+                    if (state.getSession(session.getSessionId()) == null) {
+                        continue;
+                    }
+                    payloads.add(encode(PUT_SESSION, out -> {
+                        out.writeUTF(username);
+                        SessionCodec.writeSession(out, session);
+                    }));
+                    present.computeIfAbsent(username, key -> new ArrayList<>()).add(session);
+                }
+            });
+            if (!payloads.isEmpty()) {
+                appendAll(payloads, () -> state.updateSessionsIfPresent(present));
+            }
+            return payloads.size();
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public DeviceSession getSession(String sessionId) {
+        return state.getSession(sessionId);
+    }
+
+    @Override
+    public List<DeviceSession> getSessions(String username) {
+        return state.getSessions(username);
+    }
+
+    @Override
+    public void removeSession(String sessionId) {
+        append(REMOVE_SESSION, out -> out.writeUTF(sessionId), () -> state.removeSession(sessionId));
+    }
+
+    @Override
+    public void putRefreshFamily(String familyId, RefreshFamily family) {
+        append(PUT_REFRESH_FAMILY, out -> {
+            out.writeUTF(familyId);
+            SessionCodec.writeFamily(out, family);
+        }, () -> state.putRefreshFamily(familyId, family));
+    }
+
+    @Override
+    public RefreshFamily getRefreshFamily(String familyId) {
+        return state.getRefreshFamily(familyId);
+    }
+
+    @Override
+    public boolean replaceRefreshFamily(String familyId, long expectedCounter, RefreshFamily next) {
+        // 检查和写入在同一把锁内，其他写入不会插在中间
+        writeLock.lock();
+        try {
+            RefreshFamily current = state.getRefreshFamily(familyId);
+            if (current == null || current.getCounter() != expectedCounter) {
+                return false;
+            }
+            putRefreshFamily(familyId, next);
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public long getGeneration(String username) {
+        return state.getGeneration(username);
+    }
+
+    @Override
+    public long incrementGeneration(String username) {
+        // 读取和写入在同一把锁内，日志中记录的是递增后的绝对值
+        writeLock.lock();
+        try {
+            long next = state.getGeneration(username) + 1;
+            append(PUT_GENERATION, out -> {
+                out.writeUTF(username);
+                out.writeLong(next);
+            }, () -> state.setGeneration(username, next));
+            return next;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    @Override
+    public void putLockout(String username, LocalDateTime lockedUntil) {
+        append(PUT_LOCKOUT, out -> {
+            out.writeUTF(username);
+            SessionCodec.writeTime(out, lockedUntil);
+        }, () -> state.putLockout(username, lockedUntil));
+    }
+
+    @Override
+    public LocalDateTime getLockout(String username) {
+        return state.getLockout(username);
+    }
+
+    @Override
+    public void removeLockout(String username) {
+        append(REMOVE_LOCKOUT, out -> out.writeUTF(username), () -> state.removeLockout(username));
+    }
+
+    @Override
+    public boolean markUsed(String key, LocalDateTime expiresAt) {
+        // 检查和写入在同一把锁内，并发的两次使用只有一次成功；记录写入日志，重启后仍然有效
+        writeLock.lock();
+        try {
+            if (state.isUsed(key, LocalDateTime.now())) {
+                return false;
+            }
+            append(PUT_USED_KEY, out -> {
+                out.writeUTF(key);
+                SessionCodec.writeTime(out, expiresAt);
+            }, () -> state.markUsed(key, expiresAt));
+            return true;
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * 过期条目只从内存中移除，不写日志：快照不包含过期条目，重放出的过期条目会在下一次清理时再次移除
+     */
+    @Override
+    public int purgeExpired(LocalDateTime now) {
+        return state.purgeExpired(now);
+    }
+
+    /**
+     * 立即写快照并删除已被快照覆盖的日志段
+     */
+    public void compact() throws IOException {
+        long replayFrom;
+        writeLock.lock();
+        try {
+            replayFrom = segmentSeq + 1;
+            openSegment(replayFrom);
+            recordsSinceSnapshot = 0;
+        } finally {
+            writeLock.unlock();
+        }
+
+        LocalDateTime now = LocalDateTime.now();
+        Path tmp = dir.resolve(SNAPSHOT_FILE + ".tmp");
+        try (FileOutputStream file = new FileOutputStream(tmp.toFile());
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(file, 64 * 1024))) {
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeLong(replayFrom);
+            // 遍历回调不能抛出受检异常，写入失败包装为 UncheckedIOException 后在这里还原
+            try {
+                for (TokenType type : TokenType.values()) {
+                    state.forEachToken(type, (token, value) -> {
+                        if (!value.isExpired(now)) {
+                            writeSnapshotRecord(out, PUT_TOKEN, payload -> {
+                                payload.writeByte(type.ordinal());
+                                payload.writeUTF(token);
+                                SessionCodec.writeToken(payload, value);
+                            });
+                        }
+                    });
+                }
+                state.forEachSession((username, session) -> writeSnapshotRecord(out, PUT_SESSION, payload -> {
+                    payload.writeUTF(username);
+                    SessionCodec.writeSession(payload, session);
+                }));
+                state.forEachLockout((username, lockedUntil) -> {
+                    if (lockedUntil.isAfter(now)) {
+                        writeSnapshotRecord(out, PUT_LOCKOUT, payload -> {
+                            payload.writeUTF(username);
+                            SessionCodec.writeTime(payload, lockedUntil);
+                        });
+                    }
+                });
+                state.forEachUsedKey((key, expiresAt) -> {
+                    if (expiresAt.isAfter(now)) {
+                        writeSnapshotRecord(out, PUT_USED_KEY, payload -> {
+                            payload.writeUTF(key);
+                            SessionCodec.writeTime(payload, expiresAt);
+                        });
+                    }
+                });
+                state.forEachRefreshFamily((familyId, family) -> {
+                    if (!family.isExpired(now)) {
+                        writeSnapshotRecord(out, PUT_REFRESH_FAMILY, payload -> {
+                            payload.writeUTF(familyId);
+                            SessionCodec.writeFamily(payload, family);
+                        });
+                    }
+                });
+                state.forEachGeneration((username, generation) -> writeSnapshotRecord(out, PUT_GENERATION, payload -> {
+                    payload.writeUTF(username);
+                    payload.writeLong(generation);
+                }));
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            out.flush();
+            file.getChannel().force(true);
+        }
+        Files.move(tmp, dir.resolve(SNAPSHOT_FILE), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+
+        for (Long seq : listSegments()) {
+            if (seq < replayFrom) {
+                Files.deleteIfExists(segmentPath(seq));
+            }
+        }
+    }
+
+    private void maintain() {
+        try {
+            state.purgeExpired(LocalDateTime.now());
+            if (recordsSinceSnapshot >= compactAfter) {
+                compact();
+            }
+        } catch (IOException | UncheckedIOException e) {
+            System.err.println("Session store compaction failed: " + e.getMessage());
+        }
+    }
+
+    // ---- 日志写入 ----
+
+    private interface PayloadWriter {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private void append(byte op, PayloadWriter writer, Runnable apply) {
+        appendAll(List.of(encode(op, writer)), apply);
+    }
+
+    /**
+     * 多条记录一次写入、一次 flush
+     */
+    private void appendAll(List<byte[]> payloads, Runnable apply) {
+        writeLock.lock();
+        try {
+            for (byte[] payload : payloads) {
+                writeRecord(segment, payload);
+            }
+            segment.flush();
+            if (fsync) {
+                segmentFile.getChannel().force(false);
+            }
+            apply.run();
+            recordsSinceSnapshot += payloads.size();
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to append session log", e);
+        } finally {
+            writeLock.unlock();
+        }
+    }
+
+    private static void writeSnapshotRecord(DataOutputStream out, byte op, PayloadWriter writer) {
+        try {
+            writeRecord(out, encode(op, writer));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static byte[] encode(byte op, PayloadWriter writer) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(op);
+            writer.write(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * 记录格式：长度、CRC32、内容
+     */
+    private static void writeRecord(DataOutputStream out, byte[] payload) throws IOException {
+        CRC32 crc = new CRC32();
+        crc.update(payload);
+        out.writeInt(payload.length);
+        out.writeInt((int) crc.getValue());
+        out.write(payload);
+    }
+
+    private void openSegment(long seq) throws IOException {
+        if (segment != null) {
+            segment.flush();
+            segmentFile.getChannel().force(false);
+            segment.close();
+        }
+        segmentFile = new FileOutputStream(segmentPath(seq).toFile(), true);
+        segment = new DataOutputStream(new BufferedOutputStream(segmentFile, 8192));
+        segmentSeq = seq;
+    }
+
+    private Path segmentPath(long seq) {
+        return dir.resolve(String.format("sessions-%016d.log", seq));
+    }
+
+    private List<Long> listSegments() throws IOException {
+        List<Long> seqs = new ArrayList<>();
+        try (Stream<Path> files = Files.list(dir)) {
+            files.forEach(file -> {
+                Matcher matcher = SEGMENT_NAME.matcher(file.getFileName().toString());
+                if (matcher.matches()) {
+                    seqs.add(Long.parseLong(matcher.group(1)));
+                }
+            });
+        }
+        seqs.sort(null);
+        return seqs;
+    }
+
+    // ---- 恢复 ----
+
+    /**
+     * @return 需要从哪个日志段开始重放；没有快照时为 0
+     */
+    private long readSnapshot() throws IOException {
+        Path file = dir.resolve(SNAPSHOT_FILE);
+        if (!Files.exists(file)) {
+            return 0;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file), 64 * 1024))) {
+            if (in.readInt() != SNAPSHOT_MAGIC) {
+                throw new IllegalStateException("Invalid session snapshot: " + file.toAbsolutePath());
+            }
+            long replayFrom = in.readLong();
+            // 快照先写临时文件再原子替换，任何损坏都不是写入中断造成的
+            replayRecords(in, file, SNAPSHOT_HEADER_BYTES, false);
+            return replayFrom;
+        }
+    }
+
+    private Replay replay(Path file, boolean newest) throws IOException {
+        try (InputStream stream = Files.newInputStream(file);
+             DataInputStream in = new DataInputStream(new BufferedInputStream(stream, 64 * 1024))) {
+            return replayRecords(in, file, 0, newest);
+        }
+    }
+
+    /**
+     * 按顺序重放文件中的记录
+     * @param start 第一条记录在文件中的位置
+     * @param newest 是否为最新的日志段，只有此时才允许末尾存在半条记录
+     */
+    private Replay replayRecords(DataInputStream in, Path file, long start, boolean newest) throws IOException {
+        long size = Files.size(file);
+        long position = start;
+        long count = 0;
+        while (position < size) {
+            long remaining = size - position;
+            if (remaining < RECORD_HEADER_BYTES) {
+                return discardTail(file, newest, position, count, "truncated record header");
+            }
+            int length = in.readInt();
+            int expectedCrc = in.readInt();
+            if (length <= 0 || length > MAX_RECORD_BYTES) {
+                // 有些文件系统在崩溃后把未写完的尾部补零
+                if (length == 0 && expectedCrc == 0 && zeroUntilEnd(in)) {
+                    return discardTail(file, newest, position, count, "zero-filled tail");
+                }
+                throw corrupt(file, position, "invalid record length " + length);
+            }
+            if (remaining - RECORD_HEADER_BYTES < length) {
+                return discardTail(file, newest, position, count, "truncated record");
+            }
+            byte[] payload = new byte[length];
+            in.readFully(payload);
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            if ((int) crc.getValue() != expectedCrc) {
+                // 最后一条记录的内容只写入了一部分；后面还有记录时不可能是崩溃造成的
+                if (remaining - RECORD_HEADER_BYTES == length) {
+                    return discardTail(file, newest, position, count, "checksum mismatch in last record");
+                }
+                throw corrupt(file, position, "checksum mismatch");
+            }
+            apply(payload);
+            count++;
+            position += RECORD_HEADER_BYTES + length;
+        }
+        return new Replay(count, position);
+    }
+
+    private static Replay discardTail(Path file, boolean newest, long position, long count, String problem) {
+        if (!newest) {
+            throw corrupt(file, position, problem);
+        }
+        System.err.println("Discarding incomplete session record at end of " + file.getFileName()
+                + " (offset " + position + ", " + problem + ") after " + count + " records");
+        return new Replay(count, position);
+    }
+
+    private static IllegalStateException corrupt(Path file, long position, String problem) {
+        return new IllegalStateException("Corrupt session record in " + file.toAbsolutePath()
+                + " at offset " + position + ": " + problem);
+    }
+
+    private static boolean zeroUntilEnd(DataInputStream in) throws IOException {
+        int b;
+        while ((b = in.read()) != -1) {
+            if (b != 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * 截掉最新日志段末尾的半条记录，之后追加的段不会跟在损坏的数据后面
+     */
+    private static void truncate(Path file, long validBytes) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+            channel.truncate(validBytes);
+            channel.force(true);
+        }
+    }
+
+    private void apply(byte[] payload) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        byte op = in.readByte();
+        switch (op) {
+            case PUT_TOKEN -> {
+                TokenType type = TokenType.values()[in.readByte()];
+                String token = in.readUTF();
+                state.putToken(type, token, SessionCodec.readToken(in));
+            }
+            case REMOVE_TOKEN -> {
+                TokenType type = TokenType.values()[in.readByte()];
+                state.removeToken(type, in.readUTF());
+            }
+            case PUT_SESSION -> {
+                String username = in.readUTF();
+                state.putSession(username, SessionCodec.readSession(in));
+            }
+            case REMOVE_SESSION -> state.removeSession(in.readUTF());
+            case PUT_LOCKOUT -> {
+                String username = in.readUTF();
+                state.putLockout(username, SessionCodec.readTime(in));
+            }
+            case REMOVE_LOCKOUT -> state.removeLockout(in.readUTF());
+            case PUT_REFRESH_FAMILY -> {
+                String familyId = in.readUTF();
+                state.putRefreshFamily(familyId, SessionCodec.readFamily(in));
+            }
+            case PUT_GENERATION -> {
+                String username = in.readUTF();
+                state.setGeneration(username, in.readLong());
+            }
+            case PUT_USED_KEY -> {
+                String key = in.readUTF();
+                state.markUsed(key, SessionCodec.readTime(in));
+            }
+            default -> throw new IOException("Unknown session record type: " + op);
+        }
+    }
+
+    /**
+     * 重放结果：有效记录数和最后一条有效记录结束的位置
+     */
+    private static final class Replay {
+        private final long records;
+        private final long validBytes;
+
+        private Replay(long records, long validBytes) {
+            this.records = records;
+            this.validBytes = validBytes;
+        }
+    }
+}
@@ -0,0 +1,312 @@
+package com.thinknows.x_server.session;
+
+import com.thinknows.x_server.model.response.DeviceSession;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiConsumer;
+
+/**
+ * 内存会话存储，进程重启后全部丢失
+ *
+ * 令牌按令牌字符串索引，验证和由令牌查用户都是 O(1)；设备会话另按用户名建立索引，
+ * 会话签发的令牌按会话ID建立索引，删除会话时连同刷新令牌家族一并删除。
+ * 也作为 FileSessionStore 的内存状态使用；作为独立的 Bean 时每分钟清除一次过期条目。
+ */
+@Service
+@ConditionalOnProperty(name = "app.sessions.store", havingValue = "memory", matchIfMissing = true)
+public class InMemorySessionStore implements SessionStore {
+
+    private final Map<TokenType, Map<String, StoredToken>> tokens = new EnumMap<>(TokenType.class);
+    private final Map<String, DeviceSession> sessions = new ConcurrentHashMap<>(); // sessionId -> DeviceSession
+    private final Map<String, String> sessionOwners = new ConcurrentHashMap<>(); // sessionId -> username
+    private final Map<String, Set<String>> userSessions = new ConcurrentHashMap<>(); // username -> Set<sessionId>
+    private final Map<String, Set<String>> sessionTokens = new ConcurrentHashMap<>(); // sessionId -> Set<tokenKey>
+    private final Map<String, RefreshFamily> refreshFamilies = new ConcurrentHashMap<>(); // sessionId -> family
+    private final Map<String, LocalDateTime> lockouts = new ConcurrentHashMap<>(); // username -> lockout until
+    private final Map<String, LocalDateTime> usedKeys = new ConcurrentHashMap<>(); // one-time credential -> kept until
+    private final Map<String, Long> generations = new ConcurrentHashMap<>(); // username -> generation
+    private ScheduledExecutorService purger;
+
+    public InMemorySessionStore() {
+        for (TokenType type : TokenType.values()) {
+            tokens.put(type, new ConcurrentHashMap<>());
+        }
+    }
+
+    @PostConstruct
+    public void init() {
+        purger = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "session-store-purge");
+            thread.setDaemon(true);
+            return thread;
+        });
+        purger.scheduleWithFixedDelay(() -> purgeExpired(LocalDateTime.now()), 1, 1, TimeUnit.MINUTES);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        if (purger != null) {
+            purger.shutdownNow();
+        }
+    }
+
+    @Override
+    public void putToken(TokenType type, String token, StoredToken value) {
+        tokens.get(type).put(token, value);
+        if (value.getSessionId() != null) {
+            sessionTokens.compute(value.getSessionId(), (key, keys) -> {
+                Set<String> result = keys != null ? keys : ConcurrentHashMap.newKeySet();
+                result.add(tokenKey(type, token));
+                return result;
+            });
+        }
+    }
+
+    @Override
+    public StoredToken getToken(TokenType type, String token) {
+        return token != null ? tokens.get(type).get(token) : null;
+    }
+
+    @Override
+    public void removeToken(TokenType type, String token) {
+        StoredToken removed = tokens.get(type).remove(token);
+        if (removed != null) {
+            unlinkToken(removed.getSessionId(), tokenKey(type, token));
+        }
+    }
+
+    private void unlinkToken(String sessionId, String tokenKey) {
+        if (sessionId != null) {
+            sessionTokens.computeIfPresent(sessionId, (key, keys) -> {
+                keys.remove(tokenKey);
+                return keys.isEmpty() ? null : keys;
+            });
+        }
+    }
+
+    private static String tokenKey(TokenType type, String token) {
+        return type.name() + ":" + token;
+    }
+
+    @Override
+    public void putSession(String username, DeviceSession session) {
+        String sessionId = session.getSessionId();
+        sessions.put(sessionId, session);
+        String previousOwner = sessionOwners.put(sessionId, username);
+        if (previousOwner != null && !previousOwner.equals(username)) {
+            unlink(previousOwner, sessionId);
+        }
+        // compute 与 unlink 中的 computeIfPresent 互斥，不会把ID加进刚被移除的空集合
+        userSessions.compute(username, (key, ids) -> {
+            Set<String> result = ids != null ? ids : ConcurrentHashMap.newKeySet();
+            result.add(sessionId);
+            return result;
+        });
+    }
+
+    @Override
+    public int updateSessionsIfPresent(Map<String, List<DeviceSession>> sessionsByUsername) {
+        int updated = 0;
+        for (List<DeviceSession> batch : sessionsByUsername.values()) {
+            for (DeviceSession session : batch) {
+                // computeIfPresent 与 removeSession 中的 remove 互斥，已删除的会话不会被放回
+                if (sessions.computeIfPresent(session.getSessionId(), (id, current) -> session) != null) {
+                    updated++;
+                }
+            }
+        }
+        return updated;
+    }
+
+    @Override
+    public DeviceSession getSession(String sessionId) {
+        return sessionId != null ? sessions.get(sessionId) : null;
+    }
+
+    @Override
+    public List<DeviceSession> getSessions(String username) {
+        Set<String> ids = userSessions.get(username);
+        if (ids == null) {
+            return Collections.emptyList();
+        }
+        List<DeviceSession> result = new ArrayList<>(ids.size());
+        for (String id : ids) {
+            DeviceSession session = sessions.get(id);
+            if (session != null) {
+                result.add(session);
+            }
+        }
+        return result;
+    }
+
+    @Override
+    public void removeSession(String sessionId) {
+        sessions.remove(sessionId);
+        String owner = sessionOwners.remove(sessionId);
+        if (owner != null) {
+            unlink(owner, sessionId);
+        }
+        Set<String> keys = sessionTokens.remove(sessionId);
+        if (keys != null) {
+            for (String key : keys) {
+                int separator = key.indexOf(':');
+                tokens.get(TokenType.valueOf(key.substring(0, separator))).remove(key.substring(separator + 1));
+            }
+        }
+        refreshFamilies.remove(sessionId);
+    }
+
+    @Override
+    public void putRefreshFamily(String familyId, RefreshFamily family) {
+        refreshFamilies.put(familyId, family);
+    }
+
+    @Override
+    public RefreshFamily getRefreshFamily(String familyId) {
+        return familyId != null ? refreshFamilies.get(familyId) : null;
+    }
+
+    @Override
+    public boolean replaceRefreshFamily(String familyId, long expectedCounter, RefreshFamily next) {
+        boolean[] replaced = new boolean[1];
+        refreshFamilies.computeIfPresent(familyId, (key, current) -> {
+            if (current.getCounter() != expectedCounter) {
+                return current;
+            }
+            replaced[0] = true;
+            return next;
+        });
+        return replaced[0];
+    }
+
+    private void unlink(String username, String sessionId) {
+        userSessions.computeIfPresent(username, (key, ids) -> {
+            ids.remove(sessionId);
+            return ids.isEmpty() ? null : ids;
+        });
+    }
+
+    @Override
+    public long getGeneration(String username) {
+        return generations.getOrDefault(username, 0L);
+    }
+
+    @Override
+    public long incrementGeneration(String username) {
+        return generations.merge(username, 1L, Long::sum);
+    }
+
+    @Override
+    public void putLockout(String username, LocalDateTime lockedUntil) {
+        lockouts.put(username, lockedUntil);
+    }
+
+    @Override
+    public LocalDateTime getLockout(String username) {
+        return username != null ? lockouts.get(username) : null;
+    }
+
+    @Override
+    public void removeLockout(String username) {
+        lockouts.remove(username);
+    }
+
+    @Override
+    public boolean markUsed(String key, LocalDateTime expiresAt) {
+        LocalDateTime now = LocalDateTime.now();
+        boolean[] added = {false};
+        usedKeys.compute(key, (k, existing) -> {
+            if (existing != null && existing.isAfter(now)) {
+                return existing;
+            }
+            added[0] = true;
+            return expiresAt;
+        });
+        return added[0];
+    }
+
+    @Override
+    public int purgeExpired(LocalDateTime now) {
+        int removed = 0;
+        for (Map.Entry<TokenType, Map<String, StoredToken>> byType : tokens.entrySet()) {
+            Map<String, StoredToken> byToken = byType.getValue();
+            for (Map.Entry<String, StoredToken> entry : byToken.entrySet()) {
+                StoredToken value = entry.getValue();
+                if (value.isExpired(now) && byToken.remove(entry.getKey(), value)) {
+                    unlinkToken(value.getSessionId(), tokenKey(byType.getKey(), entry.getKey()));
+                    removed++;
+                }
+            }
+        }
+        for (Map.Entry<String, RefreshFamily> entry : refreshFamilies.entrySet()) {
+            if (entry.getValue().isExpired(now) && refreshFamilies.remove(entry.getKey(), entry.getValue())) {
+                removed++;
+            }
+        }
+        for (Map.Entry<String, LocalDateTime> entry : lockouts.entrySet()) {
+            if (entry.getValue().isBefore(now) && lockouts.remove(entry.getKey(), entry.getValue())) {
+                removed++;
+            }
+        }
+        for (Map.Entry<String, LocalDateTime> entry : usedKeys.entrySet()) {
+            if (!entry.getValue().isAfter(now) && usedKeys.remove(entry.getKey(), entry.getValue())) {
+                removed++;
+            }
+        }
+        return removed;
+    }
+
+    // 以下方法供 FileSessionStore 生成快照
+
+    void forEachToken(TokenType type, BiConsumer<String, StoredToken> action) {
+        tokens.get(type).forEach(action);
+    }
+
+    void forEachSession(BiConsumer<String, DeviceSession> action) {
+        sessions.forEach((sessionId, session) -> {
+            String owner = sessionOwners.get(sessionId);
+            if (owner != null) {
+                action.accept(owner, session);
+            }
+        });
+    }
+
+    void forEachLockout(BiConsumer<String, LocalDateTime> action) {
+        lockouts.forEach(action);
+    }
+
+    void forEachUsedKey(BiConsumer<String, LocalDateTime> action) {
+        usedKeys.forEach(action);
+    }
+
+    boolean isUsed(String key, LocalDateTime now) {
+        LocalDateTime expiresAt = usedKeys.get(key);
+        return expiresAt != null && expiresAt.isAfter(now);
+    }
+
+    void forEachRefreshFamily(BiConsumer<String, RefreshFamily> action) {
+        refreshFamilies.forEach(action);
+    }
+
+    void forEachGeneration(BiConsumer<String, Long> action) {
+        generations.forEach(action);
+    }
+
+    void setGeneration(String username, long generation) {
+        generations.put(username, generation);
+    }
+}
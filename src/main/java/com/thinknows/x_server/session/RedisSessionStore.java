@@ -0,0 +1,440 @@
+package com.thinknows.x_server.session;
+
+import com.thinknows.x_server.model.response.DeviceSession;
+import com.thinknows.x_server.util.LruCache;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * 共享会话存储，使用 Redis 协议，多个节点看到同一份令牌和会话，负载均衡不再需要会话粘滞
+ *
+ * 键布局（前缀为 app.sessions.redis.key-prefix）：
+ * token:ACCESS:&lt;令牌&gt; 为令牌记录，TTL 等于令牌剩余有效期；
+ * refresh-family:&lt;会话ID&gt; 为刷新令牌家族，refresh-counter:&lt;会话ID&gt; 为家族序号，换发时用 INCR 保证只有一个请求成功；
+ * session:&lt;会话ID&gt; 为设备会话，user-sessions:&lt;用户名&gt; 为用户的会话ID集合，
+ * session-tokens:&lt;会话ID&gt; 为会话签发的令牌键集合，删除会话时连同刷新令牌家族一并删除；
+ * 这三个键在保存刷新令牌家族时获得家族的过期时间，用户的会话ID集合取其中最晚的一个，会话不再被使用后由 Redis 清除；
+ * generation:&lt;用户名&gt; 为会话代数；lockout:&lt;用户名&gt; 为账户锁定，TTL 等于剩余锁定时间；
+ * used:&lt;键&gt; 为已使用的一次性凭据，用 SET NX 写入，TTL 等于凭据剩余有效期。
+ *
+ * 令牌、会话和会话代数的读取经过本地近缓存，每次验证令牌不必访问 Redis。删除令牌、删除或更新会话、代数增加时，
+ * 在 invalidate 频道上广播缓存键，各节点收到后移除本地条目；订阅断开重连后整体清空近缓存。
+ * 近缓存条目另有 app.sessions.redis.near-cache-ttl-ms 的存活上限，作为漏收消息时的兜底。
+ */
+@Service
+@ConditionalOnProperty(name = "app.sessions.store", havingValue = "redis")
+public class RedisSessionStore implements SessionStore {
+
+    @Value("${app.sessions.redis.host:localhost}")
+    private String host;
+
+    @Value("${app.sessions.redis.port:6379}")
+    private int port;
+
+    @Value("${app.sessions.redis.password:}")
+    private String password;
+
+    @Value("${app.sessions.redis.key-prefix:x-server:}")
+    private String keyPrefix;
+
+    @Value("${app.sessions.redis.pool-size:16}")
+    private int poolSize;
+
+    @Value("${app.sessions.redis.timeout-ms:2000}")
+    private int timeoutMillis;
+
+    @Value("${app.sessions.redis.near-cache-size:100000}")
+    private int nearCacheSize;
+
+    @Value("${app.sessions.redis.near-cache-ttl-ms:30000}")
+    private long nearCacheTtlMillis;
+
+    @Value("${app.sessions.redis.embedded:false}")
+    private boolean embedded;
+
+    private EmbeddedRespServer embeddedServer;
+    private RespClient client;
+    private LruCache<String, Cached> nearCache;
+    private String channel;
+
+    // 每次失效（包括重连清空）加一；读取 Redis 前后版本不同时不写入近缓存，避免把刚失效的旧值放回去
+    private final AtomicLong invalidations = new AtomicLong();
+
+    private static final class Cached {
+        final Object value; // StoredToken、DeviceSession 或 Long（代数）
+        final long loadedAtNanos;
+
+        Cached(Object value, long loadedAtNanos) {
+            this.value = value;
+            this.loadedAtNanos = loadedAtNanos;
+        }
+    }
+
+    @PostConstruct
+    public void init() throws IOException {
+        if (embedded) {
+            embeddedServer = new EmbeddedRespServer(port);
+        }
+        client = new RespClient(host, port, password, poolSize, timeoutMillis);
+        nearCache = new LruCache<>(nearCacheSize);
+        channel = keyPrefix + "invalidate";
+        client.subscribe(channel, message -> {
+            nearCache.remove(Resp.string(message));
+            invalidations.incrementAndGet();
+        }, () -> {
+            nearCache.clear();
+            invalidations.incrementAndGet();
+        });
+    }
+
+    @PreDestroy
+    public void close() throws IOException {
+        if (client != null) {
+            client.close();
+        }
+        if (embeddedServer != null) {
+            embeddedServer.close();
+        }
+    }
+
+    @Override
+    public void putToken(TokenType type, String token, StoredToken value) {
+        String cacheKey = tokenCacheKey(type, token);
+        setWithExpiry(keyPrefix + "token:" + cacheKey, encode(out -> SessionCodec.writeToken(out, value)),
+                value.getExpiresAt());
+        if (value.getSessionId() != null) {
+            client.call("SADD", keyPrefix + "session-tokens:" + value.getSessionId(), cacheKey);
+        }
+        nearCache.remove(cacheKey);
+    }
+
+    @Override
+    public StoredToken getToken(TokenType type, String token) {
+        if (token == null) {
+            return null;
+        }
+        String cacheKey = tokenCacheKey(type, token);
+        return (StoredToken) cachedGet(cacheKey, () -> {
+            byte[] value = (byte[]) client.call("GET", keyPrefix + "token:" + cacheKey);
+            return value != null ? decode(value, SessionCodec::readToken) : null;
+        });
+    }
+
+    @Override
+    public void removeToken(TokenType type, String token) {
+        String cacheKey = tokenCacheKey(type, token);
+        client.call("DEL", keyPrefix + "token:" + cacheKey);
+        invalidate(cacheKey);
+    }
+
+    @Override
+    public void putSession(String username, DeviceSession session) {
+        String sessionId = session.getSessionId();
+        // KEEPTTL：更新活动时间不清除登录时设置的过期时间
+        client.call("SET", keyPrefix + "session:" + sessionId, encode(out -> {
+            out.writeUTF(username);
+            SessionCodec.writeSession(out, session);
+        }), "KEEPTTL");
+        client.call("SADD", keyPrefix + "user-sessions:" + username, sessionId);
+        invalidate(sessionCacheKey(sessionId));
+    }
+
+    /**
+     * SET XX 只在会话键仍存在时写入，KEEPTTL 保留随刷新令牌家族设置的过期时间
+     */
+    @Override
+    public int updateSessionsIfPresent(Map<String, List<DeviceSession>> sessionsByUsername) {
+        int updated = 0;
+        for (Map.Entry<String, List<DeviceSession>> entry : sessionsByUsername.entrySet()) {
+            String username = entry.getKey();
+            for (DeviceSession session : entry.getValue()) {
+                String sessionId = session.getSessionId();
+                Object reply = client.call("SET", keyPrefix + "session:" + sessionId, encode(out -> {
+                    out.writeUTF(username);
+                    SessionCodec.writeSession(out, session);
+                }), "XX", "KEEPTTL");
+                if (reply != null) {
+                    invalidate(sessionCacheKey(sessionId));
+                    updated++;
+                }
+            }
+        }
+        return updated;
+    }
+
+    @Override
+    public DeviceSession getSession(String sessionId) {
+        if (sessionId == null) {
+            return null;
+        }
+        return (DeviceSession) cachedGet(sessionCacheKey(sessionId), () -> {
+            byte[] value = (byte[]) client.call("GET", keyPrefix + "session:" + sessionId);
+            return value != null ? decode(value, RedisSessionStore::readOwnedSession).session : null;
+        });
+    }
+
+    @Override
+    public List<DeviceSession> getSessions(String username) {
+        List<?> ids = (List<?>) client.call("SMEMBERS", keyPrefix + "user-sessions:" + username);
+        if (ids == null || ids.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Object[] args = new Object[ids.size() + 1];
+        args[0] = "MGET";
+        for (int i = 0; i < ids.size(); i++) {
+            args[i + 1] = keyPrefix + "session:" + Resp.string((byte[]) ids.get(i));
+        }
+        List<?> values = (List<?>) client.call(args);
+        List<DeviceSession> result = new ArrayList<>(values.size());
+        List<Object> expired = new ArrayList<>();
+        for (int i = 0; i < values.size(); i++) {
+            if (values.get(i) instanceof byte[] bytes) {
+                result.add(decode(bytes, RedisSessionStore::readOwnedSession).session);
+            } else {
+                expired.add(ids.get(i));
+            }
+        }
+        // 已按 TTL 过期的会话仍留在集合中，顺便移除
+        if (!expired.isEmpty()) {
+            expired.add(0, "SREM");
+            expired.add(1, keyPrefix + "user-sessions:" + username);
+            client.call(expired.toArray());
+        }
+        return result;
+    }
+
+    @Override
+    public void removeSession(String sessionId) {
+        byte[] value = (byte[]) client.call("GET", keyPrefix + "session:" + sessionId);
+        if (value == null) {
+            return;
+        }
+        String username = decode(value, RedisSessionStore::readOwnedSession).username;
+        client.call("DEL", keyPrefix + "session:" + sessionId);
+        client.call("SREM", keyPrefix + "user-sessions:" + username, sessionId);
+        invalidate(sessionCacheKey(sessionId));
+
+        List<?> tokenKeys = (List<?>) client.call("SMEMBERS", keyPrefix + "session-tokens:" + sessionId);
+        if (tokenKeys != null && !tokenKeys.isEmpty()) {
+            Object[] args = new Object[tokenKeys.size() + 1];
+            args[0] = "DEL";
+            for (int i = 0; i < tokenKeys.size(); i++) {
+                args[i + 1] = keyPrefix + "token:" + Resp.string((byte[]) tokenKeys.get(i));
+            }
+            client.call(args);
+            for (Object tokenKey : tokenKeys) {
+                invalidate(Resp.string((byte[]) tokenKey));
+            }
+        }
+        client.call("DEL", keyPrefix + "session-tokens:" + sessionId,
+                keyPrefix + "refresh-family:" + sessionId, keyPrefix + "refresh-counter:" + sessionId);
+    }
+
+    @Override
+    public void putRefreshFamily(String familyId, RefreshFamily family) {
+        setWithExpiry(keyPrefix + "refresh-counter:" + familyId, Resp.bytes(Long.toString(family.getCounter())),
+                family.getExpiresAt());
+        setWithExpiry(keyPrefix + "refresh-family:" + familyId, encode(out -> SessionCodec.writeFamily(out, family)),
+                family.getExpiresAt());
+
+        // 会话和令牌键集合随家族一起过期；家族有效期不随换发延长，只需在这里设置一次
+        String expiresAt = Long.toString(epochMillis(family.getExpiresAt()));
+        client.call("PEXPIREAT", keyPrefix + "session:" + familyId, expiresAt);
+        client.call("PEXPIREAT", keyPrefix + "session-tokens:" + familyId, expiresAt);
+        // 用户的会话集合取最晚的过期时间：NX 设置首个过期时间，GT 只向后延长
+        String userSessions = keyPrefix + "user-sessions:" + family.getUsername();
+        client.call("PEXPIREAT", userSessions, expiresAt, "NX");
+        client.call("PEXPIREAT", userSessions, expiresAt, "GT");
+    }
+
+    @Override
+    public RefreshFamily getRefreshFamily(String familyId) {
+        if (familyId == null) {
+            return null;
+        }
+        byte[] value = (byte[]) client.call("GET", keyPrefix + "refresh-family:" + familyId);
+        return value != null ? decode(value, SessionCodec::readFamily) : null;
+    }
+
+    /**
+     * 序号计数器的 INCR 是原子的，并发换发时只有一个请求得到 expectedCounter + 1；next 的序号必须是 expectedCounter + 1
+     */
+    @Override
+    public boolean replaceRefreshFamily(String familyId, long expectedCounter, RefreshFamily next) {
+        RefreshFamily current = getRefreshFamily(familyId);
+        if (current == null || current.getCounter() != expectedCounter) {
+            return false;
+        }
+        long counter = (Long) client.call("INCR", keyPrefix + "refresh-counter:" + familyId);
+        if (counter != expectedCounter + 1) {
+            return false;
+        }
+        setWithExpiry(keyPrefix + "refresh-family:" + familyId, encode(out -> SessionCodec.writeFamily(out, next)),
+                next.getExpiresAt());
+        return true;
+    }
+
+    @Override
+    public long getGeneration(String username) {
+        return (Long) cachedGet("g:" + username, () -> {
+            byte[] value = (byte[]) client.call("GET", keyPrefix + "generation:" + username);
+            return value != null ? Long.parseLong(Resp.string(value)) : 0L;
+        });
+    }
+
+    @Override
+    public long incrementGeneration(String username) {
+        long generation = (Long) client.call("INCR", keyPrefix + "generation:" + username);
+        invalidate("g:" + username);
+        return generation;
+    }
+
+    @Override
+    public void putLockout(String username, LocalDateTime lockedUntil) {
+        setWithExpiry(keyPrefix + "lockout:" + username, encode(out -> SessionCodec.writeTime(out, lockedUntil)),
+                lockedUntil);
+    }
+
+    @Override
+    public LocalDateTime getLockout(String username) {
+        if (username == null) {
+            return null;
+        }
+        byte[] value = (byte[]) client.call("GET", keyPrefix + "lockout:" + username);
+        return value != null ? decode(value, SessionCodec::readTime) : null;
+    }
+
+    @Override
+    public void removeLockout(String username) {
+        client.call("DEL", keyPrefix + "lockout:" + username);
+    }
+
+    /**
+     * SET NX 原子地检查并记录，所有节点共享同一份记录
+     */
+    @Override
+    public boolean markUsed(String key, LocalDateTime expiresAt) {
+        long ttlMillis = Duration.between(LocalDateTime.now(), expiresAt).toMillis();
+        if (ttlMillis <= 0) {
+            return false; // 凭据已过期，不再接受
+        }
+        return client.call("SET", keyPrefix + "used:" + key, "1", "PX", Long.toString(ttlMillis), "NX") != null;
+    }
+
+    /**
+     * 所有键都带有 TTL，由 Redis 自行过期，这里不需要做任何事
+     */
+    @Override
+    public int purgeExpired(LocalDateTime now) {
+        return 0;
+    }
+
+    // ---- 近缓存 ----
+
+    private interface Loader {
+        Object load();
+    }
+
+    private Object cachedGet(String cacheKey, Loader loader) {
+        Cached cached = nearCache.get(cacheKey);
+        if (cached != null && System.nanoTime() - cached.loadedAtNanos < TimeUnit.MILLISECONDS.toNanos(nearCacheTtlMillis)) {
+            return cached.value;
+        }
+        long version = invalidations.get();
+        Object value = loader.load();
+        // 未找到的键不缓存：新令牌可能随时在其他节点上签发
+        if (value != null && invalidations.get() == version) {
+            nearCache.put(cacheKey, new Cached(value, System.nanoTime()));
+        }
+        return value;
+    }
+
+    private void invalidate(String cacheKey) {
+        nearCache.remove(cacheKey);
+        invalidations.incrementAndGet();
+        client.call("PUBLISH", channel, cacheKey);
+    }
+
+    private static String tokenCacheKey(TokenType type, String token) {
+        return type.name() + ":" + token;
+    }
+
+    private static String sessionCacheKey(String sessionId) {
+        return "s:" + sessionId;
+    }
+
+    // ---- 编码 ----
+
+    private void setWithExpiry(String key, byte[] value, LocalDateTime expiresAt) {
+        long ttlMillis = Duration.between(LocalDateTime.now(), expiresAt).toMillis();
+        if (ttlMillis <= 0) {
+            client.call("DEL", key);
+            return;
+        }
+        client.call("SET", key, value, "PX", Long.toString(ttlMillis));
+    }
+
+    private static long epochMillis(LocalDateTime time) {
+        return time.atZone(ZoneId.systemDefault()).toInstant().toEpochMilli();
+    }
+
+    private static final class OwnedSession {
+        final String username;
+        final DeviceSession session;
+
+        OwnedSession(String username, DeviceSession session) {
+            this.username = username;
+            this.session = session;
+        }
+    }
+
+    private static OwnedSession readOwnedSession(DataInputStream in) throws IOException {
+        String username = in.readUTF();
+        return new OwnedSession(username, SessionCodec.readSession(in));
+    }
+
+    private interface Writer {
+        void write(DataOutputStream out) throws IOException;
+    }
+
+    private interface Reader<T> {
+        T read(DataInputStream in) throws IOException;
+    }
+
+    private static byte[] encode(Writer writer) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(128);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            writer.write(out);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    private static <T> T decode(byte[] value, Reader<T> reader) {
+        try {
+            return reader.read(new DataInputStream(new ByteArrayInputStream(value)));
+        } catch (IOException e) {
+            throw new UncheckedIOException("Corrupt session store value", e);
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.thinknows.x_server.session;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.time.LocalDateTime;
+import java.util.Base64;
+
+/**
+ * 刷新令牌家族：一次登录（一个设备会话）签发的全部刷新令牌
+ *
+ * 刷新令牌的格式为 &lt;家族ID&gt;.&lt;序号&gt;.&lt;随机串&gt;，每次刷新序号加一并换发新令牌。
+ * 存储中只保存当前序号、当前令牌和上一个令牌 SHA-256 的前 128 位，不保存令牌字符串；验证是一次定长比较。
+ * 出示的令牌与上一个令牌的摘要一致，说明已换掉的令牌被重复使用，调用方应撤销整个家族；
+ * 更早的序号无法确认令牌是否真的签发过，只拒绝，不撤销，知道会话ID的人不能借此让用户下线。
+ */
+public final class RefreshFamily {
+
+    private static final SecureRandom RANDOM = new SecureRandom();
+
+    private final String username;
+    private final long counter;
+    private final long hashHigh;
+    private final long hashLow;
+    // 上一个令牌的摘要，序号为 0 时没有上一个令牌，两者都为 0
+    private final long previousHashHigh;
+    private final long previousHashLow;
+    private final LocalDateTime expiresAt;
+    private final long generation;
+
+    public RefreshFamily(String username, long counter, long hashHigh, long hashLow,
+                         long previousHashHigh, long previousHashLow,
+                         LocalDateTime expiresAt, long generation) {
+        this.username = username;
+        this.counter = counter;
+        this.hashHigh = hashHigh;
+        this.hashLow = hashLow;
+        this.previousHashHigh = previousHashHigh;
+        this.previousHashLow = previousHashLow;
+        this.expiresAt = expiresAt;
+        this.generation = generation;
+    }
+
+    /**
+     * 生成家族中序号为 counter 的新令牌
+     */
+    public static String newToken(String familyId, long counter) {
+        byte[] secret = new byte[16];
+        RANDOM.nextBytes(secret);
+        return familyId + "." + counter + "." + Base64.getUrlEncoder().withoutPadding().encodeToString(secret);
+    }
+
+    /**
+     * 以 token 作为家族当前令牌的记录
+     */
+    public static RefreshFamily forToken(String username, String token, long counter,
+                                         LocalDateTime expiresAt, long generation) {
+        ByteBuffer hash = ByteBuffer.wrap(sha256(token));
+        return new RefreshFamily(username, counter, hash.getLong(), hash.getLong(), 0, 0, expiresAt, generation);
+    }
+
+    /**
+     * 换发后的记录：序号加一，当前令牌换成 token，原来的当前令牌成为上一个令牌，有效期和代数不变
+     */
+    public RefreshFamily rotate(String token) {
+        ByteBuffer hash = ByteBuffer.wrap(sha256(token));
+        return new RefreshFamily(username, counter + 1, hash.getLong(), hash.getLong(), hashHigh, hashLow,
+                expiresAt, generation);
+    }
+
+    /**
+     * 令牌中的家族ID，格式不正确时返回 null
+     */
+    public static String familyIdOf(String token) {
+        int first = token != null ? token.indexOf('.') : -1;
+        return first > 0 ? token.substring(0, first) : null;
+    }
+
+    /**
+     * 令牌中的序号，格式不正确时返回 -1
+     */
+    public static long counterOf(String token) {
+        int first = token.indexOf('.');
+        int second = token.indexOf('.', first + 1);
+        if (first < 0 || second < 0) {
+            return -1;
+        }
+        try {
+            return Long.parseLong(token.substring(first + 1, second));
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * token 是否为家族的当前令牌；比较耗时与内容无关
+     */
+    public boolean matches(String token) {
+        ByteBuffer hash = ByteBuffer.wrap(sha256(token));
+        return ((hash.getLong() ^ hashHigh) | (hash.getLong() ^ hashLow)) == 0;
+    }
+
+    /**
+     * token 是否为已被换掉的上一个令牌；比较耗时与内容无关
+     */
+    public boolean matchesPrevious(String token) {
+        if ((previousHashHigh | previousHashLow) == 0) {
+            return false;
+        }
+        ByteBuffer hash = ByteBuffer.wrap(sha256(token));
+        return ((hash.getLong() ^ previousHashHigh) | (hash.getLong() ^ previousHashLow)) == 0;
+    }
+
+    public boolean isExpired(LocalDateTime now) {
+        return expiresAt.isBefore(now);
+    }
+
+    private static byte[] sha256(String token) {
+        try {
+            return MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public long getCounter() {
+        return counter;
+    }
+
+    long getHashHigh() {
+        return hashHigh;
+    }
+
+    long getHashLow() {
+        return hashLow;
+    }
+
+    long getPreviousHashHigh() {
+        return previousHashHigh;
+    }
+
+    long getPreviousHashLow() {
+        return previousHashLow;
+    }
+
+    public LocalDateTime getExpiresAt() {
+        return expiresAt;
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+}
@@ -0,0 +1,146 @@
+package com.thinknows.x_server.session;
+
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * RESP2 协议编解码（Redis 序列化协议），客户端和内嵌服务器共用
+ *
+ * 回复映射为 Java 对象：简单字符串为 String，整数为 Long，批量字符串为 byte[]，
+ * 空值为 null，数组为 List；错误回复抛出 RespException。
+ */
+final class Resp {
+
+    private static final byte[] CRLF = {'\r', '\n'};
+
+    private Resp() {
+    }
+
+    /**
+     * Redis 返回的错误回复
+     */
+    static class RespException extends RuntimeException {
+        RespException(String message) {
+            super(message);
+        }
+    }
+
+    static byte[] bytes(String value) {
+        return value.getBytes(StandardCharsets.UTF_8);
+    }
+
+    static String string(byte[] value) {
+        return value != null ? new String(value, StandardCharsets.UTF_8) : null;
+    }
+
+    // ---- 写入 ----
+
+    static void writeCommand(OutputStream out, byte[]... args) throws IOException {
+        writeArrayHeader(out, args.length);
+        for (byte[] arg : args) {
+            writeBulk(out, arg);
+        }
+    }
+
+    static void writeArrayHeader(OutputStream out, int length) throws IOException {
+        writeLine(out, '*', Integer.toString(length));
+    }
+
+    static void writeBulk(OutputStream out, byte[] value) throws IOException {
+        if (value == null) {
+            writeLine(out, '$', "-1");
+            return;
+        }
+        writeLine(out, '$', Integer.toString(value.length));
+        out.write(value);
+        out.write(CRLF);
+    }
+
+    static void writeSimple(OutputStream out, String value) throws IOException {
+        writeLine(out, '+', value);
+    }
+
+    static void writeError(OutputStream out, String message) throws IOException {
+        writeLine(out, '-', message);
+    }
+
+    static void writeInteger(OutputStream out, long value) throws IOException {
+        writeLine(out, ':', Long.toString(value));
+    }
+
+    private static void writeLine(OutputStream out, char type, String value) throws IOException {
+        out.write(type);
+        out.write(value.getBytes(StandardCharsets.UTF_8));
+        out.write(CRLF);
+    }
+
+    // ---- 读取 ----
+
+    /**
+     * 读取一个完整的回复；连接关闭时抛出 EOFException
+     */
+    static Object read(InputStream in) throws IOException {
+        int type = in.read();
+        if (type < 0) {
+            throw new EOFException("Connection closed");
+        }
+        String line = readLine(in);
+        switch (type) {
+            case '+':
+                return line;
+            case '-':
+                throw new RespException(line);
+            case ':':
+                return Long.parseLong(line);
+            case '$': {
+                int length = Integer.parseInt(line);
+                if (length < 0) {
+                    return null;
+                }
+                byte[] value = in.readNBytes(length);
+                if (value.length < length || in.read() != '\r' || in.read() != '\n') {
+                    throw new EOFException("Truncated bulk string");
+                }
+                return value;
+            }
+            case '*': {
+                int length = Integer.parseInt(line);
+                if (length < 0) {
+                    return null;
+                }
+                List<Object> items = new ArrayList<>(length);
+                for (int i = 0; i < length; i++) {
+                    try {
+                        items.add(read(in));
+                    } catch (RespException e) {
+                        items.add(e);
+                    }
+                }
+                return items;
+            }
+            default:
+                throw new IOException("Unexpected RESP type: " + (char) type);
+        }
+    }
+
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream(16);
+        int b;
+        while ((b = in.read()) != '\r') {
+            if (b < 0) {
+                throw new EOFException("Connection closed");
+            }
+            line.write(b);
+        }
+        if (in.read() != '\n') {
+            throw new IOException("Malformed RESP line");
+        }
+        return line.toString(StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,194 @@
+package com.thinknows.x_server.session;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * 最小的阻塞式 RESP2 客户端：固定上限的连接池 + 一个订阅线程
+ *
+ * 每个命令占用一条连接，请求-回复完成后归还；连接出错时丢弃并用新连接重试一次，
+ * 服务端重启后无需重启应用。
+ */
+class RespClient implements Closeable {
+
+    private final String host;
+    private final int port;
+    private final String password;
+    private final int timeoutMillis;
+    private final BlockingQueue<Connection> idle;
+    private final Semaphore permits;
+
+    private volatile boolean closed;
+    private volatile Connection subscriber;
+
+    RespClient(String host, int port, String password, int poolSize, int timeoutMillis) {
+        this.host = host;
+        this.port = port;
+        this.password = password;
+        this.timeoutMillis = timeoutMillis;
+        this.idle = new ArrayBlockingQueue<>(poolSize);
+        this.permits = new Semaphore(poolSize);
+    }
+
+    /**
+     * 执行一条命令并返回回复，参数为 String 或 byte[]
+     */
+    Object call(Object... args) {
+        byte[][] encoded = new byte[args.length][];
+        for (int i = 0; i < args.length; i++) {
+            encoded[i] = args[i] instanceof byte[] bytes ? bytes : Resp.bytes(args[i].toString());
+        }
+        try {
+            if (!permits.tryAcquire(timeoutMillis, TimeUnit.MILLISECONDS)) {
+                throw new IllegalStateException("Timed out waiting for a session store connection");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted waiting for a session store connection", e);
+        }
+        try {
+            IOException failure = null;
+            for (int attempt = 0; attempt < 2; attempt++) {
+                Connection connection = idle.poll();
+                try {
+                    if (connection == null) {
+                        connection = connect();
+                    }
+                    Object reply = connection.call(encoded);
+                    idle.offer(connection);
+                    return reply;
+                } catch (Resp.RespException e) {
+                    // 错误回复不影响连接本身
+                    idle.offer(connection);
+                    throw e;
+                } catch (IOException e) {
+                    failure = e;
+                    if (connection != null) {
+                        connection.close();
+                    }
+                }
+            }
+            throw new UncheckedIOException("Session store command failed", failure);
+        } finally {
+            permits.release();
+        }
+    }
+
+    /**
+     * 在后台线程中订阅频道；连接断开后每秒重连一次，重连成功后先调用 onReconnect，
+     * 断开期间可能漏掉的消息由调用方自行补偿
+     */
+    void subscribe(String channel, Consumer<byte[]> onMessage, Runnable onReconnect) {
+        Thread thread = new Thread(() -> {
+            boolean first = true;
+            while (!closed) {
+                try (Connection connection = connect()) {
+                    subscriber = connection;
+                    connection.send(Resp.bytes("SUBSCRIBE"), Resp.bytes(channel));
+                    connection.read(); // 订阅确认
+                    connection.socket.setSoTimeout(0);
+                    if (!first) {
+                        onReconnect.run();
+                    }
+                    first = false;
+                    while (!closed) {
+                        if (connection.read() instanceof List<?> message && message.size() == 3
+                                && "message".equals(Resp.string((byte[]) message.get(0)))) {
+                            onMessage.accept((byte[]) message.get(2));
+                        }
+                    }
+                } catch (IOException | RuntimeException e) {
+                    if (closed) {
+                        return;
+                    }
+                    first = false;
+                    System.err.println("Session store subscription lost: " + e.getMessage());
+                    try {
+                        Thread.sleep(1000);
+                    } catch (InterruptedException interrupted) {
+                        return;
+                    }
+                }
+            }
+        }, "session-store-subscriber");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        Connection current = subscriber;
+        if (current != null) {
+            current.close();
+        }
+        Connection connection;
+        while ((connection = idle.poll()) != null) {
+            connection.close();
+        }
+    }
+
+    private Connection connect() throws IOException {
+        Connection connection = new Connection(host, port, timeoutMillis);
+        if (password != null && !password.isEmpty()) {
+            connection.call(new byte[][] {Resp.bytes("AUTH"), Resp.bytes(password)});
+        }
+        return connection;
+    }
+
+    private static final class Connection implements Closeable {
+        private final Socket socket;
+        private final InputStream in;
+        private final OutputStream out;
+
+        Connection(String host, int port, int timeoutMillis) throws IOException {
+            socket = new Socket();
+            try {
+                socket.connect(new InetSocketAddress(host, port), timeoutMillis);
+                socket.setSoTimeout(timeoutMillis);
+                socket.setTcpNoDelay(true);
+                in = new BufferedInputStream(socket.getInputStream());
+                out = new BufferedOutputStream(socket.getOutputStream());
+            } catch (IOException e) {
+                socket.close();
+                throw e;
+            }
+        }
+
+        Object call(byte[][] args) throws IOException {
+            send(args);
+            return read();
+        }
+
+        void send(byte[]... args) throws IOException {
+            Resp.writeCommand(out, args);
+            out.flush();
+        }
+
+        Object read() throws IOException {
+            return Resp.read(in);
+        }
+
+        @Override
+        public void close() {
+            try {
+                socket.close();
+            } catch (IOException e) {
+                // 忽略
+            }
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package com.thinknows.x_server.session;
+
+import com.thinknows.x_server.model.response.DeviceSession;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+
+import java.time.Instant;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * 设备会话活动记录
+ *
+ * 每个已认证请求调用 record，但只有活动时间比上次记录前进超过 app.sessions.activity.granularity-seconds，
+ * 或客户端 IP 变化时，才把会话标记为待写入；绝大多数请求只有一次 ConcurrentHashMap 读取和一次比较，不加锁也不写存储。
+ * 待写入的会话由后台线程每 app.sessions.activity.flush-interval-ms 批量写回 SessionStore。
+ */
+@Service
+public class SessionActivityTracker {
+
+    @Autowired
+    private SessionStore sessionStore;
+
+    @Value("${app.sessions.activity.granularity-seconds:60}")
+    private long granularitySeconds;
+
+    @Value("${app.sessions.activity.flush-interval-ms:10000}")
+    private long flushIntervalMillis;
+
+    private static final class Activity {
+        final String username;
+        volatile long recordedMillis; // 最近一次标记写入时的活动时间
+        volatile String ipAddress;
+
+        Activity(String username) {
+            this.username = username;
+        }
+    }
+
+    private final Map<String, Activity> activities = new ConcurrentHashMap<>(); // sessionId -> Activity
+    private final Set<String> dirty = ConcurrentHashMap.newKeySet();
+    private ScheduledExecutorService flusher;
+
+    @PostConstruct
+    public void init() {
+        flusher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "session-activity-flusher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        flusher.scheduleWithFixedDelay(this::flushQuietly, flushIntervalMillis, flushIntervalMillis, TimeUnit.MILLISECONDS);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        flusher.shutdownNow();
+        flushQuietly();
+    }
+
+    /**
+     * 记录一次会话活动
+     */
+    public void record(String username, String sessionId, String ipAddress) {
+        if (sessionId == null) {
+            return;
+        }
+        long now = System.currentTimeMillis();
+        Activity activity = activities.get(sessionId);
+        if (activity == null) {
+            activity = activities.computeIfAbsent(sessionId, id -> new Activity(username));
+        }
+        if (now - activity.recordedMillis < TimeUnit.SECONDS.toMillis(granularitySeconds)
+                && (ipAddress == null || ipAddress.equals(activity.ipAddress))) {
+            return;
+        }
+        activity.recordedMillis = now;
+        if (ipAddress != null) {
+            activity.ipAddress = ipAddress;
+        }
+        dirty.add(sessionId);
+    }
+
+    /**
+     * 会话被删除后调用，丢弃尚未写入的活动，避免写回时重新创建会话
+     */
+    public void forget(String sessionId) {
+        activities.remove(sessionId);
+        dirty.remove(sessionId);
+    }
+
+    /**
+     * 把待写入的活动批量写回存储
+     * @return 写入的会话数
+     */
+    public int flush() {
+        Map<String, List<DeviceSession>> batch = new HashMap<>();
+        for (Iterator<String> iterator = dirty.iterator(); iterator.hasNext(); ) {
+            String sessionId = iterator.next();
+            iterator.remove();
+            Activity activity = activities.get(sessionId);
+            DeviceSession session = sessionStore.getSession(sessionId);
+            if (activity == null || session == null) {
+                activities.remove(sessionId);
+                continue;
+            }
+            LocalDateTime lastActivity = LocalDateTime.ofInstant(
+                    Instant.ofEpochMilli(activity.recordedMillis), ZoneId.systemDefault());
+            DeviceSession updated = new DeviceSession(session.getSessionId(), session.getDeviceInfo(),
+                    session.getLoginTime(), lastActivity,
+                    activity.ipAddress != null ? activity.ipAddress : session.getIpAddress(), false);
+            batch.computeIfAbsent(activity.username, key -> new ArrayList<>()).add(updated);
+        }
+        // 读取之后会话可能已被撤销，由存储在写入时再检查一次，不会把它重新创建出来
+        int count = batch.isEmpty() ? 0 : sessionStore.updateSessionsIfPresent(batch);
+
+        // 长时间没有活动的会话不再保留记录，再次出现时会立即写入一次
+        long idleBefore = System.currentTimeMillis() - TimeUnit.SECONDS.toMillis(granularitySeconds) * 10;
+        activities.entrySet().removeIf(entry ->
+                entry.getValue().recordedMillis < idleBefore && !dirty.contains(entry.getKey()));
+        return count;
+    }
+
+    private void flushQuietly() {
+        try {
+            flush();
+        } catch (RuntimeException e) {
+            System.err.println("Failed to flush session activity: " + e.getMessage());
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package com.thinknows.x_server.session;
+
+import com.thinknows.x_server.model.DeviceInfo;
+import com.thinknows.x_server.model.response.DeviceSession;
+
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.time.LocalDateTime;
+import java.time.ZoneOffset;
+
+/**
+ * 会话存储的二进制编码，文件日志和共享存储使用同一格式
+ */
+final class SessionCodec {
+
+    private SessionCodec() {
+    }
+
+    static void writeToken(DataOutputStream out, StoredToken token) throws IOException {
+        out.writeUTF(token.getUsername());
+        writeString(out, token.getSessionId());
+        writeTime(out, token.getExpiresAt());
+        out.writeLong(token.getGeneration());
+    }
+
+    static StoredToken readToken(DataInputStream in) throws IOException {
+        return new StoredToken(in.readUTF(), readString(in), readTime(in), in.readLong());
+    }
+
+    static void writeFamily(DataOutputStream out, RefreshFamily family) throws IOException {
+        out.writeUTF(family.getUsername());
+        out.writeLong(family.getCounter());
+        out.writeLong(family.getHashHigh());
+        out.writeLong(family.getHashLow());
+        writeTime(out, family.getExpiresAt());
+        out.writeLong(family.getGeneration());
+        // 上一个令牌的摘要写在最后，之前版本写入的记录没有这两个字段
+        out.writeLong(family.getPreviousHashHigh());
+        out.writeLong(family.getPreviousHashLow());
+    }
+
+    /**
+     * 家族记录必须是输入中的最后一个字段
+     */
+    static RefreshFamily readFamily(DataInputStream in) throws IOException {
+        String username = in.readUTF();
+        long counter = in.readLong();
+        long hashHigh = in.readLong();
+        long hashLow = in.readLong();
+        LocalDateTime expiresAt = readTime(in);
+        long generation = in.readLong();
+        long previousHashHigh = 0;
+        long previousHashLow = 0;
+        if (in.available() >= 16) {
+            previousHashHigh = in.readLong();
+            previousHashLow = in.readLong();
+        }
+        return new RefreshFamily(username, counter, hashHigh, hashLow, previousHashHigh, previousHashLow,
+                expiresAt, generation);
+    }
+
+    static void writeSession(DataOutputStream out, DeviceSession session) throws IOException {
+        out.writeUTF(session.getSessionId());
+        DeviceInfo device = session.getDeviceInfo();
+        out.writeBoolean(device != null);
+        if (device != null) {
+            writeString(out, device.getDeviceId());
+            writeString(out, device.getDeviceName());
+            writeString(out, device.getDeviceType());
+            writeString(out, device.getIpAddress());
+            writeString(out, device.getUserAgent());
+            writeString(out, device.getOsInfo());
+            writeString(out, device.getBrowserInfo());
+            writeString(out, device.getLocation());
+        }
+        writeTime(out, session.getLoginTime());
+        writeTime(out, session.getLastActivityTime());
+        writeString(out, session.getIpAddress());
+        out.writeBoolean(session.isCurrentDevice());
+    }
+
+    static DeviceSession readSession(DataInputStream in) throws IOException {
+        DeviceSession session = new DeviceSession();
+        session.setSessionId(in.readUTF());
+        if (in.readBoolean()) {
+            DeviceInfo device = new DeviceInfo();
+            device.setDeviceId(readString(in));
+            device.setDeviceName(readString(in));
+            device.setDeviceType(readString(in));
+            device.setIpAddress(readString(in));
+            device.setUserAgent(readString(in));
+            device.setOsInfo(readString(in));
+            device.setBrowserInfo(readString(in));
+            device.setLocation(readString(in));
+            session.setDeviceInfo(device);
+        }
+        session.setLoginTime(readTime(in));
+        session.setLastActivityTime(readTime(in));
+        session.setIpAddress(readString(in));
+        session.setCurrentDevice(in.readBoolean());
+        return session;
+    }
+
+    static void writeString(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    static String readString(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    static void writeTime(DataOutputStream out, LocalDateTime time) throws IOException {
+        out.writeBoolean(time != null);
+        if (time != null) {
+            out.writeLong(time.toEpochSecond(ZoneOffset.UTC));
+            out.writeInt(time.getNano());
+        }
+    }
+
+    static LocalDateTime readTime(DataInputStream in) throws IOException {
+        return in.readBoolean() ? LocalDateTime.ofEpochSecond(in.readLong(), in.readInt(), ZoneOffset.UTC) : null;
+    }
+}
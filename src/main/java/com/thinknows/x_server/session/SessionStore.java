@@ -0,0 +1,100 @@
+package com.thinknows.x_server.session;
+
+import com.thinknows.x_server.model.response.DeviceSession;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * 会话存储 SPI：访问令牌、刷新令牌家族、设备会话、账户锁定和已使用的一次性凭据
+ *
+ * 实现由 app.sessions.store 选择：memory（默认，仅保存在内存中）、file（追加日志 + 快照，重启后恢复）
+ * 或 redis（多节点共享）。
+ * 读取方法必须是无锁的；返回的 DeviceSession 只能读取，修改后需要再次调用 putSession 才会持久化。
+ */
+public interface SessionStore {
+
+    /**
+     * 按令牌字符串保存的令牌类型；刷新令牌不保存字符串，见 RefreshFamily
+     */
+    enum TokenType {
+        ACCESS
+    }
+
+    void putToken(TokenType type, String token, StoredToken value);
+
+    /**
+     * @return 令牌记录，不存在时返回 null；已过期的记录也可能返回，由调用方检查
+     */
+    StoredToken getToken(TokenType type, String token);
+
+    void removeToken(TokenType type, String token);
+
+    /**
+     * 保存或覆盖设备会话
+     */
+    void putSession(String username, DeviceSession session);
+
+    /**
+     * 批量更新仍然存在的设备会话，键为用户名；已被删除的会话直接跳过，不会重新创建
+     *
+     * 检查和写入必须是原子的，会话在调用方读取之后被撤销时不能因这次更新而重新出现
+     * @return 更新的会话数
+     */
+    int updateSessionsIfPresent(Map<String, List<DeviceSession>> sessionsByUsername);
+
+    DeviceSession getSession(String sessionId);
+
+    /**
+     * 用户的全部设备会话
+     */
+    List<DeviceSession> getSessions(String username);
+
+    /**
+     * 删除设备会话，同时删除该会话签发的令牌和刷新令牌家族
+     */
+    void removeSession(String sessionId);
+
+    /**
+     * 保存刷新令牌家族，家族ID即设备会话ID
+     */
+    void putRefreshFamily(String familyId, RefreshFamily family);
+
+    RefreshFamily getRefreshFamily(String familyId);
+
+    /**
+     * 当前序号等于 expectedCounter 时替换为 next，用于并发刷新时只有一个请求能换发成功
+     * @return 是否替换成功；家族不存在或序号已变化时返回 false
+     */
+    boolean replaceRefreshFamily(String familyId, long expectedCounter, RefreshFamily next);
+
+    /**
+     * 用户当前的会话代数，从未撤销过时为 0
+     */
+    long getGeneration(String username);
+
+    /**
+     * 代数加一，之前签发的全部令牌在验证时失效
+     * @return 新的代数
+     */
+    long incrementGeneration(String username);
+
+    void putLockout(String username, LocalDateTime lockedUntil);
+
+    LocalDateTime getLockout(String username);
+
+    void removeLockout(String username);
+
+    /**
+     * 记录一次性凭据（如二次验证令牌、TOTP 时间步）已被使用，保留到 expiresAt；检查和记录是原子的
+     * @return 该键已记录且尚未过期时返回 false
+     */
+    boolean markUsed(String key, LocalDateTime expiresAt);
+
+    /**
+     * 清除已过期的令牌、刷新令牌家族、锁定和一次性凭据记录
+     * @return 清除的条目数
+     */
+    int purgeExpired(LocalDateTime now);
+}
@@ -0,0 +1,44 @@
+package com.thinknows.x_server.session;
+
+import java.time.LocalDateTime;
+
+/**
+ * 令牌记录，创建后不可变
+ */
+public final class StoredToken {
+    private final String username;
+    private final String sessionId;
+    private final LocalDateTime expiresAt;
+    private final long generation;
+
+    /**
+     * @param sessionId 签发令牌的设备会话
+     * @param generation 签发时用户的会话代数，用户撤销全部会话后代数增加，旧令牌随之失效
+     */
+    public StoredToken(String username, String sessionId, LocalDateTime expiresAt, long generation) {
+        this.username = username;
+        this.sessionId = sessionId;
+        this.expiresAt = expiresAt;
+        this.generation = generation;
+    }
+
+    public boolean isExpired(LocalDateTime now) {
+        return expiresAt.isBefore(now);
+    }
+
+    public String getUsername() {
+        return username;
+    }
+
+    public String getSessionId() {
+        return sessionId;
+    }
+
+    public LocalDateTime getExpiresAt() {
+        return expiresAt;
+    }
+
+    public long getGeneration() {
+        return generation;
+    }
+}
@@ -0,0 +1,95 @@
+package com.thinknows.x_server.util;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * 字符串的布隆过滤器，线程安全，读取无锁
+ *
+ * mightContain 返回 false 表示一定没有加入过；返回 true 时有 falsePositiveRate 左右的概率误判。
+ * 位数组只置位不清除，不支持删除。每个元素计算两个 64 位哈希，再用双重哈希派生出 k 个位置。
+ */
+public final class BloomFilter {
+
+    private final AtomicLongArray bits;
+    private final long bitCount;
+    private final int hashCount;
+    private final long capacity;
+
+    /**
+     * @param expectedInsertions 预计加入的元素数量，超出后误判率上升
+     * @param falsePositiveRate 期望的误判率
+     */
+    public BloomFilter(long expectedInsertions, double falsePositiveRate) {
+        long n = Math.max(1, expectedInsertions);
+        double p = Math.min(Math.max(falsePositiveRate, 1e-9), 0.5);
+        long m = (long) Math.ceil(-n * Math.log(p) / (Math.log(2) * Math.log(2)));
+        int words = (int) Math.min(Integer.MAX_VALUE - 8, (m + 63) / 64);
+        this.bits = new AtomicLongArray(words);
+        this.bitCount = (long) words * 64;
+        this.hashCount = Math.max(1, (int) Math.round((double) bitCount / n * Math.log(2)));
+        this.capacity = n;
+    }
+
+    public void put(String value) {
+        long[] hash = hash(value);
+        long combined = hash[0];
+        for (int i = 0; i < hashCount; i++) {
+            long index = Math.floorMod(combined, bitCount);
+            int word = (int) (index >>> 6);
+            long mask = 1L << index;
+            long current = bits.get(word);
+            while ((current & mask) == 0 && !bits.compareAndSet(word, current, current | mask)) {
+                current = bits.get(word);
+            }
+            combined += hash[1];
+        }
+    }
+
+    public boolean mightContain(String value) {
+        long[] hash = hash(value);
+        long combined = hash[0];
+        for (int i = 0; i < hashCount; i++) {
+            long index = Math.floorMod(combined, bitCount);
+            if ((bits.get((int) (index >>> 6)) & (1L << index)) == 0) {
+                return false;
+            }
+            combined += hash[1];
+        }
+        return true;
+    }
+
+    /**
+     * 创建时预计的元素数量
+     */
+    public long getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * 占用的字节数
+     */
+    public long getSizeInBytes() {
+        return bitCount / 8;
+    }
+
+    private static long[] hash(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        // FNV-1a 经 MurmurHash3 fmix64 打散得到第一个哈希，再打散一次得到步长（奇数）
+        long h = 0xcbf29ce484222325L;
+        for (byte b : bytes) {
+            h = (h ^ (b & 0xff)) * 0x100000001b3L;
+        }
+        long h1 = fmix(h);
+        return new long[]{h1, fmix(h1 + 0x9e3779b97f4a7c15L) | 1};
+    }
+
+    private static long fmix(long h) {
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb53a87e34e53L;
+        h ^= h >>> 33;
+        return h;
+    }
+}
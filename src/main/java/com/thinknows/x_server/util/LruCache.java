@@ -0,0 +1,83 @@
+package com.thinknows.x_server.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Function;
+
+/**
+ * 容量有限的 LRU 缓存，线程安全
+ *
+ * 加载函数在锁外执行，可以安全地进行数据库等阻塞调用；并发加载同一个键时以后写入的为准。
+ * 使用 ReentrantLock 而不是 synchronized，虚拟线程等待锁时不会占住载体线程。
+ */
+public class LruCache<K, V> {
+
+    private final Map<K, V> map;
+    private final ReentrantLock lock = new ReentrantLock();
+
+    public LruCache(int maxSize) {
+        this.map = new LinkedHashMap<>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<K, V> eldest) {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    public V get(K key) {
+        lock.lock();
+        try {
+            return map.get(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void put(K key, V value) {
+        lock.lock();
+        try {
+            map.put(key, value);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void remove(K key) {
+        lock.lock();
+        try {
+            map.remove(key);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public V computeIfAbsent(K key, Function<? super K, ? extends V> loader) {
+        V value = get(key);
+        if (value == null) {
+            value = loader.apply(key);
+            if (value != null) {
+                put(key, value);
+            }
+        }
+        return value;
+    }
+
+    public int size() {
+        lock.lock();
+        try {
+            return map.size();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public void clear() {
+        lock.lock();
+        try {
+            map.clear();
+        } finally {
+            lock.unlock();
+        }
+    }
+}
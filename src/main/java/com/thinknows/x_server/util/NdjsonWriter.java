@@ -0,0 +1,35 @@
+package com.thinknows.x_server.util;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.ObjectWriter;
+
+import java.io.BufferedOutputStream;
+import java.io.Flushable;
+import java.io.IOException;
+import java.io.OutputStream;
+
+/**
+ * 逐行写出 NDJSON（每行一个 JSON 对象），不关闭底层输出流
+ */
+public class NdjsonWriter implements Flushable {
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private final ObjectWriter writer;
+    private final OutputStream out;
+
+    public NdjsonWriter(ObjectMapper objectMapper, OutputStream out) {
+        this.writer = objectMapper.writer();
+        this.out = new BufferedOutputStream(out, BUFFER_SIZE);
+    }
+
+    public void write(Object value) throws IOException {
+        out.write(writer.writeValueAsBytes(value));
+        out.write('\n');
+    }
+
+    @Override
+    public void flush() throws IOException {
+        out.flush();
+    }
+}
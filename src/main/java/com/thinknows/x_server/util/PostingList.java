@@ -0,0 +1,190 @@
+package com.thinknows.x_server.util;
+
+import java.util.Arrays;
+
+/**
+ * 有序、去重的帖子ID列表（倒排表），读取无锁
+ *
+ * 实例对读取方不可变。写操作返回新实例：追加更大的ID时复用底层数组的空余容量，
+ * 只发布一个新的 (数组, 长度) 视图，旧视图看到的前缀不会被改动；其它修改复制数组。
+ * 因此同一个列表只能由一个写入方基于最新实例修改。
+ */
+public final class PostingList {
+
+    public static final PostingList EMPTY = new PostingList(new long[0], 0);
+
+    private final long[] ids;
+    private final int size;
+
+    private PostingList(long[] ids, int size) {
+        this.ids = ids;
+        this.size = size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public long get(int index) {
+        if (index < 0 || index >= size) {
+            throw new IndexOutOfBoundsException(index);
+        }
+        return ids[index];
+    }
+
+    public boolean contains(long id) {
+        return Arrays.binarySearch(ids, 0, size, id) >= 0;
+    }
+
+    public long[] toArray() {
+        return Arrays.copyOf(ids, size);
+    }
+
+    /**
+     * 加入一个ID，已存在时返回自身
+     */
+    public PostingList with(long id) {
+        if (size == 0 || id > ids[size - 1]) {
+            // 追加：新ID通常最大，多数情况下不需要复制
+            long[] target = ids;
+            if (size == ids.length) {
+                target = Arrays.copyOf(ids, Math.max(4, size + (size >> 1)));
+            }
+            target[size] = id;
+            return new PostingList(target, size + 1);
+        }
+        int index = Arrays.binarySearch(ids, 0, size, id);
+        if (index >= 0) {
+            return this;
+        }
+        int insertAt = -index - 1;
+        long[] target = new long[Math.max(size + 1, ids.length)];
+        System.arraycopy(ids, 0, target, 0, insertAt);
+        target[insertAt] = id;
+        System.arraycopy(ids, insertAt, target, insertAt + 1, size - insertAt);
+        return new PostingList(target, size + 1);
+    }
+
+    /**
+     * 移除一个ID，不存在时返回自身
+     */
+    public PostingList without(long id) {
+        int index = Arrays.binarySearch(ids, 0, size, id);
+        if (index < 0) {
+            return this;
+        }
+        if (size == 1) {
+            return EMPTY;
+        }
+        long[] target = new long[size - 1];
+        System.arraycopy(ids, 0, target, 0, index);
+        System.arraycopy(ids, index + 1, target, index, size - index - 1);
+        return new PostingList(target, size - 1);
+    }
+
+    /**
+     * 交集。两边长度相差悬殊时，对长列表做倍增查找，代价约为 O(短 × log(长/短))
+     */
+    public PostingList and(PostingList other) {
+        PostingList small = size <= other.size ? this : other;
+        PostingList large = small == this ? other : this;
+        if (small.size == 0) {
+            return EMPTY;
+        }
+
+        long[] result = new long[small.size];
+        int count = 0;
+        int position = 0;
+        for (int i = 0; i < small.size && position < large.size; i++) {
+            long id = small.ids[i];
+            // 倍增确定范围后二分
+            int step = 1;
+            int high = position;
+            while (high < large.size && large.ids[high] < id) {
+                position = high + 1;
+                high = position + step;
+                step <<= 1;
+            }
+            int found = Arrays.binarySearch(large.ids, position, Math.min(high + 1, large.size), id);
+            if (found >= 0) {
+                result[count++] = id;
+                position = found + 1;
+            } else {
+                position = -found - 1;
+            }
+        }
+        return count == 0 ? EMPTY : new PostingList(result, count);
+    }
+
+    /**
+     * 并集，线性归并
+     */
+    public PostingList or(PostingList other) {
+        if (other.size == 0) {
+            return this;
+        }
+        if (size == 0) {
+            return other;
+        }
+        long[] result = new long[size + other.size];
+        int i = 0;
+        int j = 0;
+        int count = 0;
+        while (i < size && j < other.size) {
+            long a = ids[i];
+            long b = other.ids[j];
+            if (a < b) {
+                result[count++] = a;
+                i++;
+            } else if (a > b) {
+                result[count++] = b;
+                j++;
+            } else {
+                result[count++] = a;
+                i++;
+                j++;
+            }
+        }
+        while (i < size) {
+            result[count++] = ids[i++];
+        }
+        while (j < other.size) {
+            result[count++] = other.ids[j++];
+        }
+        return new PostingList(result, count);
+    }
+
+    /**
+     * 批量构建，ID 可以无序、重复
+     */
+    public static final class Builder {
+        private long[] ids = new long[16];
+        private int size;
+
+        public Builder add(long id) {
+            if (size == ids.length) {
+                ids = Arrays.copyOf(ids, size << 1);
+            }
+            ids[size++] = id;
+            return this;
+        }
+
+        public PostingList build() {
+            if (size == 0) {
+                return EMPTY;
+            }
+            Arrays.sort(ids, 0, size);
+            int count = 1;
+            for (int i = 1; i < size; i++) {
+                if (ids[i] != ids[count - 1]) {
+                    ids[count++] = ids[i];
+                }
+            }
+            return new PostingList(ids, count);
+        }
+    }
+}
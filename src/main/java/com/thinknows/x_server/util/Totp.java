@@ -0,0 +1,95 @@
+package com.thinknows.x_server.util;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Locale;
+
+/**
+ * RFC 6238 基于时间的一次性密码（TOTP），HMAC-SHA1、6 位数字、30 秒步长，与常见的验证器应用兼容
+ *
+ * 密钥以 Base32（RFC 4648，不区分大小写，忽略空格和填充）保存。验证时比较允许的全部时间步，
+ * 不因提前匹配而返回，比较耗时与验证码内容无关。
+ */
+public final class Totp {
+
+    public static final int STEP_SECONDS = 30;
+    private static final int DIGITS = 6;
+    private static final int MODULUS = 1_000_000;
+    private static final String BASE32_ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZ234567";
+
+    private Totp() {
+    }
+
+    /**
+     * 验证 code 是否为当前时间前后 window 个步长内的验证码
+     * @param base32Secret Base32 编码的密钥
+     * @return 匹配的时间步；不匹配或密钥无效时返回 -1
+     */
+    public static long verify(String base32Secret, String code, long epochSeconds, int window) {
+        byte[] key = decodeBase32(base32Secret);
+        if (key == null || key.length == 0 || code == null || code.length() != DIGITS) {
+            return -1;
+        }
+        byte[] expected = code.getBytes(StandardCharsets.US_ASCII);
+        long current = Math.floorDiv(epochSeconds, STEP_SECONDS);
+        long matched = -1;
+        for (long step = current - window; step <= current + window; step++) {
+            byte[] candidate = generate(key, step).getBytes(StandardCharsets.US_ASCII);
+            if (MessageDigest.isEqual(candidate, expected)) {
+                matched = step;
+            }
+        }
+        return matched;
+    }
+
+    /**
+     * 计算时间步 step 的验证码
+     */
+    public static String generate(byte[] key, long step) {
+        byte[] hash;
+        try {
+            Mac mac = Mac.getInstance("HmacSHA1");
+            mac.init(new SecretKeySpec(key, "HmacSHA1"));
+            hash = mac.doFinal(ByteBuffer.allocate(8).putLong(step).array());
+        } catch (GeneralSecurityException e) {
+            throw new IllegalStateException(e);
+        }
+        int offset = hash[hash.length - 1] & 0x0f;
+        int binary = ((hash[offset] & 0x7f) << 24) | ((hash[offset + 1] & 0xff) << 16)
+                | ((hash[offset + 2] & 0xff) << 8) | (hash[offset + 3] & 0xff);
+        String digits = Integer.toString(binary % MODULUS);
+        return "0".repeat(DIGITS - digits.length()) + digits;
+    }
+
+    /**
+     * 解码 Base32 密钥，包含非法字符时返回 null
+     */
+    public static byte[] decodeBase32(String value) {
+        if (value == null) {
+            return null;
+        }
+        String normalized = value.replace(" ", "").replace("=", "").toUpperCase(Locale.ROOT);
+        ByteBuffer out = ByteBuffer.allocate(normalized.length() * 5 / 8);
+        int buffer = 0;
+        int bits = 0;
+        for (int i = 0; i < normalized.length(); i++) {
+            int index = BASE32_ALPHABET.indexOf(normalized.charAt(i));
+            if (index < 0) {
+                return null;
+            }
+            buffer = (buffer << 5) | index;
+            bits += 5;
+            if (bits >= 8) {
+                bits -= 8;
+                out.put((byte) (buffer >> bits));
+            }
+        }
+        byte[] result = new byte[out.position()];
+        out.flip().get(result);
+        return result;
+    }
+}
@@ -0,0 +1,97 @@
+package com.thinknows.x_server.reactive;
+
+import com.thinknows.x_server.model.response.PrecomputedJson;
+import com.thinknows.x_server.service.ConfigRegistry;
+import com.thinknows.x_server.service.ConfigService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Mono;
+
+import java.time.Duration;
+import java.util.concurrent.TimeoutException;
+
+/**
+ * 配置接口的响应式处理器
+ *
+ * 响应体由 ConfigService 预先序列化，这里只做 ETag 比较和字节输出；长轮询挂起时不占用线程。
+ */
+@Component
+public class ReactiveConfigHandler {
+
+    private static final int MAX_LONG_POLL_SECONDS = 60;
+
+    private final ConfigService configService;
+    private final ConfigRegistry configRegistry;
+
+    @Autowired
+    public ReactiveConfigHandler(ConfigService configService, ConfigRegistry configRegistry) {
+        this.configService = configService;
+        this.configRegistry = configRegistry;
+    }
+
+    /**
+     * GET /api/v1/app-config
+     */
+    public Mono<ServerResponse> getAppConfig(ServerRequest request) {
+        return precomputed(request, appConfigJson(request));
+    }
+
+    /**
+     * GET /api/v1/app-config?sinceRevision=，配置版本与 sinceRevision 不同时返回新配置，超时返回 304
+     */
+    public Mono<ServerResponse> awaitAppConfig(ServerRequest request) {
+        long sinceRevision;
+        int timeoutSeconds;
+        try {
+            sinceRevision = Long.parseLong(request.queryParam("sinceRevision").orElse(""));
+            timeoutSeconds = Integer.parseInt(request.queryParam("timeoutSeconds").orElse("30"));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid sinceRevision or timeoutSeconds");
+        }
+        Duration timeout = Duration.ofSeconds(Math.max(1, Math.min(timeoutSeconds, MAX_LONG_POLL_SECONDS)));
+
+        // 取消订阅（客户端断开或超时）时 future 被取消，等待者随之注销
+        return Mono.fromFuture(() -> configRegistry.awaitChange(sinceRevision))
+                .timeout(timeout)
+                .flatMap(snapshot -> ok(appConfigJson(request)))
+                .onErrorResume(TimeoutException.class, e -> notModified(appConfigJson(request)));
+    }
+
+    /**
+     * GET /api/v1/config
+     */
+    public Mono<ServerResponse> getConfig(ServerRequest request) {
+        return precomputed(request, configService.getClientConfigJson());
+    }
+
+    private PrecomputedJson appConfigJson(ServerRequest request) {
+        HttpHeaders headers = request.headers().asHttpHeaders();
+        return configService.getAppConfigJson(headers.getFirst("X-App-Version"), headers.getFirst("X-Device-Id"));
+    }
+
+    private static Mono<ServerResponse> precomputed(ServerRequest request, PrecomputedJson json) {
+        return request.checkNotModified(json.getETag())
+                .switchIfEmpty(Mono.defer(() -> ok(json)));
+    }
+
+    private static Mono<ServerResponse> ok(PrecomputedJson json) {
+        return ServerResponse.ok()
+                .contentType(MediaType.APPLICATION_JSON)
+                .cacheControl(CacheControl.noCache())
+                .eTag(json.getETag())
+                .bodyValue(json.getBody());
+    }
+
+    private static Mono<ServerResponse> notModified(PrecomputedJson json) {
+        return ServerResponse.status(HttpStatus.NOT_MODIFIED)
+                .cacheControl(CacheControl.noCache())
+                .eTag(json.getETag())
+                .build();
+    }
+}
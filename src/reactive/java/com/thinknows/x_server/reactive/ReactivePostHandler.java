@@ -0,0 +1,276 @@
+package com.thinknows.x_server.reactive;
+
+import com.thinknows.x_server.model.response.ApiResponse;
+import com.thinknows.x_server.model.response.PageResponse;
+import com.thinknows.x_server.model.response.PostResponse;
+import com.thinknows.x_server.service.AuthorDirectoryService;
+import io.r2dbc.spi.Closeable;
+import io.r2dbc.spi.ConnectionFactories;
+import io.r2dbc.spi.ConnectionFactory;
+import io.r2dbc.spi.ConnectionFactoryOptions;
+import io.r2dbc.spi.Readable;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.r2dbc.core.DatabaseClient;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+import java.time.LocalDateTime;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+
+/**
+ * 帖子列表的响应式处理器
+ *
+ * 通过 R2DBC（连接池，app.reactive.r2dbc.*）直接查询 posts / post_tags / users 表，不经过 JPA，
+ * 整个请求不阻塞事件循环线程。
+ * 筛选参数与 Servlet 版 GET /api/v1/posts 相同，排序和分页由数据库完成。
+ */
+@Component
+public class ReactivePostHandler {
+
+    private static final int MAX_PAGE_SIZE = 500;
+    // 流式输出时每批补齐标签的帖子数
+    private static final int STREAM_BATCH_SIZE = 500;
+
+    private static final String SELECT_POSTS =
+            "SELECT p.id, p.title, p.content, p.author_id, "
+                    + "COALESCE(u.username, '" + AuthorDirectoryService.FALLBACK_PREFIX + "' || p.author_id) AS author_name, "
+                    + "p.created_at, p.updated_at, p.status, p.category "
+                    + "FROM posts p LEFT JOIN users u ON u.id = p.author_id";
+
+    private final ConnectionFactory connectionFactory;
+    private final DatabaseClient databaseClient;
+
+    @Autowired
+    public ReactivePostHandler(@Value("${app.reactive.r2dbc.url}") String url,
+                               @Value("${app.reactive.r2dbc.username:}") String username,
+                               @Value("${app.reactive.r2dbc.password:}") String password) {
+        this.connectionFactory = ConnectionFactories.get(ConnectionFactoryOptions.parse(url).mutate()
+                .option(ConnectionFactoryOptions.USER, username)
+                .option(ConnectionFactoryOptions.PASSWORD, password)
+                .build());
+        this.databaseClient = DatabaseClient.create(connectionFactory);
+    }
+
+    @PreDestroy
+    public void close() {
+        if (connectionFactory instanceof Closeable closeable) {
+            Mono.from(closeable.close()).block();
+        }
+    }
+
+    /**
+     * GET /api/v1/posts，返回与 Servlet 版相同的分页响应
+     */
+    public Mono<ServerResponse> getPosts(ServerRequest request) {
+        PostFilter filter = PostFilter.from(request);
+        int page = intParam(request, "page", 0);
+        int size = intParam(request, "size", 10);
+        if (page < 0 || size < 1 || size > MAX_PAGE_SIZE) {
+            throw new IllegalArgumentException("Invalid page or size");
+        }
+
+        String[] sortParams = request.queryParam("sort").orElse("createdAt,desc").split(",");
+        String direction = sortParams.length > 1 && "asc".equalsIgnoreCase(sortParams[1]) ? "ASC" : "DESC";
+        String orderBy = " ORDER BY " + sortColumn(sortParams[0]) + " " + direction + ", p.id " + direction
+                + " LIMIT :limit OFFSET :offset";
+
+        Mono<Long> total = filter.bind(databaseClient.sql("SELECT COUNT(*) FROM posts p" + filter.where()))
+                .map(row -> row.get(0, Long.class))
+                .one();
+        Mono<List<PostResponse>> content = filter.bind(databaseClient.sql(SELECT_POSTS + filter.where() + orderBy))
+                .bind("limit", size)
+                .bind("offset", (long) page * size)
+                .map(ReactivePostHandler::toResponse)
+                .all()
+                .collectList()
+                .flatMap(this::withTags);
+
+        return Mono.zip(total, content).flatMap(result -> {
+            int totalElements = result.getT1().intValue();
+            int totalPages = (int) Math.ceil((double) totalElements / size);
+            PageResponse<PostResponse> pageResponse = new PageResponse<>(result.getT2(), page, size,
+                    totalPages, totalElements, page > 0, page < totalPages - 1);
+            return ServerResponse.ok()
+                    .contentType(MediaType.APPLICATION_JSON)
+                    .bodyValue(new ApiResponse<>(200, "获取帖子列表成功", pageResponse));
+        });
+    }
+
+    /**
+     * GET /api/v1/posts/stream，按ID顺序以 NDJSON 逐条输出全部符合条件的帖子
+     *
+     * 按客户端的读取速度从数据库拉取：下游没有需求时不再读取新的行，慢客户端不会让服务端缓存整个结果集
+     */
+    public Mono<ServerResponse> streamPosts(ServerRequest request) {
+        PostFilter filter = PostFilter.from(request);
+        Flux<PostResponse> posts = filter.bind(databaseClient.sql(SELECT_POSTS + filter.where() + " ORDER BY p.id"))
+                .map(ReactivePostHandler::toResponse)
+                .all()
+                .buffer(STREAM_BATCH_SIZE)
+                .concatMap(batch -> withTags(batch).flatMapIterable(list -> list), 1);
+
+        return ServerResponse.ok()
+                .contentType(MediaType.APPLICATION_NDJSON)
+                .body(posts, PostResponse.class);
+    }
+
+    /**
+     * 一次查询补齐一批帖子的标签
+     */
+    private Mono<List<PostResponse>> withTags(List<PostResponse> posts) {
+        if (posts.isEmpty()) {
+            return Mono.just(posts);
+        }
+        Map<Long, PostResponse> byId = new LinkedHashMap<>();
+        for (PostResponse post : posts) {
+            post.setTags(new ArrayList<>());
+            byId.put(post.getId(), post);
+        }
+        return databaseClient.sql("SELECT post_id, tags FROM post_tags WHERE post_id IN (:ids)")
+                .bind("ids", byId.keySet())
+                .map(row -> Map.entry(row.get("post_id", Long.class), row.get("tags", String.class)))
+                .all()
+                .doOnNext(tag -> byId.get(tag.getKey()).getTags().add(tag.getValue()))
+                .then(Mono.just(posts));
+    }
+
+    private static PostResponse toResponse(Readable row) {
+        PostResponse post = new PostResponse();
+        post.setId(row.get("id", Long.class));
+        post.setTitle(row.get("title", String.class));
+        post.setContent(row.get("content", String.class));
+        post.setAuthorId(row.get("author_id", Long.class));
+        post.setAuthorName(row.get("author_name", String.class));
+        post.setCreatedAt(row.get("created_at", LocalDateTime.class));
+        post.setUpdatedAt(row.get("updated_at", LocalDateTime.class));
+        post.setStatus(row.get("status", String.class));
+        post.setCategory(row.get("category", String.class));
+        return post;
+    }
+
+    /**
+     * 排序字段映射到列名，与 Servlet 版一致，未知字段按创建时间排序
+     */
+    private static String sortColumn(String field) {
+        switch (field.toLowerCase()) {
+            case "title":
+                return "p.title";
+            case "authorname":
+                return "author_name";
+            case "category":
+                return "p.category";
+            case "updatedat":
+                return "p.updated_at";
+            case "createdat":
+            default:
+                return "p.created_at";
+        }
+    }
+
+    private static int intParam(ServerRequest request, String name, int defaultValue) {
+        String value = request.queryParam(name).orElse(null);
+        if (value == null || value.isBlank()) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Invalid " + name + ": " + value);
+        }
+    }
+
+    /**
+     * 标签、分类和作者筛选条件，生成 WHERE 子句并绑定参数
+     */
+    private static final class PostFilter {
+        private final List<String> tags;
+        private final boolean matchAllTags;
+        private final List<String> categories;
+        private final Long authorId;
+
+        private PostFilter(List<String> tags, boolean matchAllTags, List<String> categories, Long authorId) {
+            this.tags = tags;
+            this.matchAllTags = matchAllTags;
+            this.categories = categories;
+            this.authorId = authorId;
+        }
+
+        static PostFilter from(ServerRequest request) {
+            String tagMode = request.queryParam("tagMode").orElse("and");
+            boolean matchAll;
+            if ("and".equalsIgnoreCase(tagMode) || "all".equalsIgnoreCase(tagMode)) {
+                matchAll = true;
+            } else if ("or".equalsIgnoreCase(tagMode) || "any".equalsIgnoreCase(tagMode)) {
+                matchAll = false;
+            } else {
+                throw new IllegalArgumentException("Invalid tagMode: " + tagMode);
+            }
+
+            String author = request.queryParam("authorId").orElse(null);
+            Long authorId;
+            try {
+                authorId = author == null || author.isBlank() ? null : Long.valueOf(author.trim());
+            } catch (NumberFormatException e) {
+                throw new IllegalArgumentException("Invalid authorId: " + author);
+            }
+
+            return new PostFilter(nonBlank(request.queryParams().get("tag")), matchAll,
+                    nonBlank(request.queryParams().get("category")), authorId);
+        }
+
+        String where() {
+            List<String> conditions = new ArrayList<>();
+            if (!tags.isEmpty()) {
+                conditions.add(matchAllTags
+                        ? "p.id IN (SELECT t.post_id FROM post_tags t WHERE t.tags IN (:tags) "
+                                + "GROUP BY t.post_id HAVING COUNT(DISTINCT t.tags) = :tagCount)"
+                        : "p.id IN (SELECT t.post_id FROM post_tags t WHERE t.tags IN (:tags))");
+            }
+            if (!categories.isEmpty()) {
+                conditions.add("p.category IN (:categories)");
+            }
+            if (authorId != null) {
+                conditions.add("p.author_id = :authorId");
+            }
+            return conditions.isEmpty() ? "" : " WHERE " + String.join(" AND ", conditions);
+        }
+
+        DatabaseClient.GenericExecuteSpec bind(DatabaseClient.GenericExecuteSpec spec) {
+            if (!tags.isEmpty()) {
+                spec = spec.bind("tags", tags);
+                if (matchAllTags) {
+                    spec = spec.bind("tagCount", (long) tags.size());
+                }
+            }
+            if (!categories.isEmpty()) {
+                spec = spec.bind("categories", categories);
+            }
+            if (authorId != null) {
+                spec = spec.bind("authorId", authorId);
+            }
+            return spec;
+        }
+
+        private static List<String> nonBlank(List<String> values) {
+            if (values == null) {
+                return Collections.emptyList();
+            }
+            return values.stream()
+                    .filter(value -> value != null && !value.isBlank())
+                    .map(String::trim)
+                    .distinct()
+                    .collect(Collectors.toList());
+        }
+    }
+}
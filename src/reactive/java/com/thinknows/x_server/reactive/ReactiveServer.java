@@ -0,0 +1,89 @@
+package com.thinknows.x_server.reactive;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.thinknows.x_server.model.response.ApiResponse;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.context.WebServerInitializedEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.http.codec.json.Jackson2JsonDecoder;
+import org.springframework.http.codec.json.Jackson2JsonEncoder;
+import org.springframework.http.server.reactive.HttpHandler;
+import org.springframework.http.server.reactive.ReactorHttpHandlerAdapter;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.server.HandlerStrategies;
+import org.springframework.web.reactive.function.server.RequestPredicates;
+import org.springframework.web.reactive.function.server.RouterFunction;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import reactor.core.publisher.Mono;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+/**
+ * 响应式只读接口服务
+ *
+ * 应用本身仍是 Servlet 应用，这里在 app.reactive.port 上另起一个 Reactor Netty 服务，
+ * 用函数式路由提供读多写少的边缘接口：
+ * GET /api/v1/posts、GET /api/v1/posts/stream、GET /api/v1/app-config、GET /api/v1/config。
+ * JSON 序列化使用应用的 ObjectMapper，响应格式与 Servlet 接口一致。
+ */
+@Component
+public class ReactiveServer {
+
+    @Autowired
+    private ReactivePostHandler postHandler;
+
+    @Autowired
+    private ReactiveConfigHandler configHandler;
+
+    @Autowired
+    private ObjectMapper objectMapper;
+
+    @Value("${app.reactive.port:8082}")
+    private int port;
+
+    private DisposableServer server;
+
+    /**
+     * 随内嵌 Servlet 服务器一起启动；MOCK 环境的测试没有真实服务器，也不会占用端口
+     */
+    @EventListener(WebServerInitializedEvent.class)
+    public void start() {
+        HandlerStrategies strategies = HandlerStrategies.builder()
+                .codecs(configurer -> {
+                    configurer.defaultCodecs().jackson2JsonEncoder(new Jackson2JsonEncoder(objectMapper));
+                    configurer.defaultCodecs().jackson2JsonDecoder(new Jackson2JsonDecoder(objectMapper));
+                })
+                .build();
+        HttpHandler httpHandler = RouterFunctions.toHttpHandler(routes(), strategies);
+        server = HttpServer.create()
+                .port(port)
+                .handle(new ReactorHttpHandlerAdapter(httpHandler))
+                .bindNow();
+    }
+
+    @PreDestroy
+    public void stop() {
+        if (server != null) {
+            server.disposeNow();
+        }
+    }
+
+    private RouterFunction<ServerResponse> routes() {
+        return RouterFunctions.route()
+                .path("/api/v1", builder -> builder
+                        .GET("/posts/stream", postHandler::streamPosts)
+                        .GET("/posts", postHandler::getPosts)
+                        .GET("/app-config", RequestPredicates.queryParam("sinceRevision", value -> true),
+                                configHandler::awaitAppConfig)
+                        .GET("/app-config", configHandler::getAppConfig)
+                        .GET("/config", configHandler::getConfig))
+                // 参数错误返回 400，处理器中同步抛出的异常也转换为错误信号
+                .filter((request, next) -> Mono.defer(() -> next.handle(request))
+                        .onErrorResume(IllegalArgumentException.class, e -> ServerResponse.badRequest()
+                                .bodyValue(new ApiResponse<>(400, e.getMessage(), null))))
+                .build();
+    }
+}
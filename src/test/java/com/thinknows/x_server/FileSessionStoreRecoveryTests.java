@@ -0,0 +1,137 @@
+package com.thinknows.x_server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.LocalDateTime;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.thinknows.x_server.session.FileSessionStore;
+import com.thinknows.x_server.session.SessionStore.TokenType;
+import com.thinknows.x_server.session.StoredToken;
+
+/**
+ * 文件会话存储的崩溃恢复：最新日志段末尾的半条记录被截掉，其他位置的损坏使启动失败
+ */
+class FileSessionStoreRecoveryTests {
+
+	@TempDir
+	Path dir;
+
+	@Test
+	void truncatedTailOfNewestSegmentIsDiscarded() throws Exception {
+		FileSessionStore store = open();
+		putTokens(store, "a", "b", "c");
+		store.close();
+
+		Path segment = segment(0);
+		long complete = Files.size(segment);
+		truncate(segment, complete - 3);
+
+		store = open();
+		assertNotNull(store.getToken(TokenType.ACCESS, "a"));
+		assertNotNull(store.getToken(TokenType.ACCESS, "b"));
+		assertNull(store.getToken(TokenType.ACCESS, "c"));
+		// 半条记录已从文件中截掉，之后的日志段不会跟在损坏的数据后面
+		assertTrue(Files.size(segment) < complete - 3);
+		putTokens(store, "d");
+		store.close();
+
+		store = open();
+		assertNotNull(store.getToken(TokenType.ACCESS, "b"));
+		assertNotNull(store.getToken(TokenType.ACCESS, "d"));
+		store.close();
+	}
+
+	@Test
+	void zeroFilledTailOfNewestSegmentIsDiscarded() throws Exception {
+		FileSessionStore store = open();
+		putTokens(store, "a", "b");
+		store.close();
+
+		Path segment = segment(0);
+		long complete = Files.size(segment);
+		Files.write(segment, new byte[64], StandardOpenOption.APPEND);
+
+		store = open();
+		assertNotNull(store.getToken(TokenType.ACCESS, "a"));
+		assertNotNull(store.getToken(TokenType.ACCESS, "b"));
+		assertEquals(complete, Files.size(segment));
+		store.close();
+	}
+
+	@Test
+	void corruptOlderSegmentFailsStartup() throws Exception {
+		FileSessionStore store = open();
+		putTokens(store, "a");
+		store.close();
+		// 重新打开后写入新的日志段，第一个日志段不再是最新的
+		store = open();
+		putTokens(store, "b");
+		store.close();
+
+		Path segment = segment(0);
+		try (FileChannel channel = FileChannel.open(segment, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+			long last = channel.size() - 1;
+			ByteBuffer buffer = ByteBuffer.allocate(1);
+			channel.read(buffer, last);
+			buffer.put(0, (byte) (buffer.get(0) ^ 0xFF));
+			buffer.rewind();
+			channel.write(buffer, last);
+		}
+
+		FileSessionStore corrupted = newStore();
+		IllegalStateException error = assertThrows(IllegalStateException.class, corrupted::init);
+		assertTrue(error.getMessage().contains(segment.getFileName().toString()), error.getMessage());
+
+		// 启动失败时已释放目录锁，移走损坏的日志段后可以重新打开
+		Files.delete(segment);
+		store = open();
+		assertNull(store.getToken(TokenType.ACCESS, "a"));
+		assertNotNull(store.getToken(TokenType.ACCESS, "b"));
+		store.close();
+	}
+
+	private FileSessionStore newStore() {
+		FileSessionStore store = new FileSessionStore();
+		ReflectionTestUtils.setField(store, "directory", dir.toString());
+		ReflectionTestUtils.setField(store, "compactAfter", 100000L);
+		ReflectionTestUtils.setField(store, "fsync", true);
+		return store;
+	}
+
+	private FileSessionStore open() throws IOException {
+		FileSessionStore store = newStore();
+		store.init();
+		return store;
+	}
+
+	private static void putTokens(FileSessionStore store, String... tokens) {
+		for (String token : tokens) {
+			store.putToken(TokenType.ACCESS, token,
+					new StoredToken("user", "session-" + token, LocalDateTime.now().plusHours(1), 0));
+		}
+	}
+
+	private Path segment(long seq) {
+		return dir.resolve(String.format("sessions-%016d.log", seq));
+	}
+
+	private static void truncate(Path file, long size) throws IOException {
+		try (FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE)) {
+			channel.truncate(size);
+		}
+	}
+}
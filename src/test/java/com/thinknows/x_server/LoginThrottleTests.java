@@ -0,0 +1,67 @@
+package com.thinknows.x_server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.thinknows.x_server.service.LoginThrottle;
+import com.thinknows.x_server.service.UserExistenceFilter;
+
+/**
+ * 用户名维度的窗口只为可能存在的用户名建立，大量不存在的用户名挤不掉真实用户的窗口
+ */
+class LoginThrottleTests {
+
+	@Test
+	void sprayingUnknownUsernamesDoesNotEvictVictimWindow() {
+		UserExistenceFilter filter = mock(UserExistenceFilter.class);
+		when(filter.mightContainUsername(anyString())).thenReturn(false);
+		when(filter.mightContainUsername("victim")).thenReturn(true);
+		LoginThrottle throttle = newThrottle(filter, 100);
+
+		for (int i = 0; i < 4; i++) {
+			throttle.recordFailure("victim", null);
+		}
+		for (int i = 0; i < 10000; i++) {
+			throttle.recordFailure("spray-" + i, null);
+		}
+
+		assertEquals(1, throttle.getTrackedUsers());
+		assertTrue(throttle.recordFailure("victim", null));
+		assertFalse(throttle.check("victim", null).isAllowed());
+	}
+
+	@Test
+	void evictionKeepsTrackedUsersBelowLimit() {
+		UserExistenceFilter filter = mock(UserExistenceFilter.class);
+		when(filter.mightContainUsername(anyString())).thenReturn(true);
+		LoginThrottle throttle = newThrottle(filter, 1000);
+
+		for (int i = 0; i < 5000; i++) {
+			throttle.recordFailure("user-" + i, null);
+		}
+
+		assertTrue(throttle.getTrackedUsers() <= 1000, "tracked: " + throttle.getTrackedUsers());
+	}
+
+	private static LoginThrottle newThrottle(UserExistenceFilter filter, int maxUsers) {
+		LoginThrottle throttle = new LoginThrottle();
+		ReflectionTestUtils.setField(throttle, "userExistenceFilter", filter);
+		ReflectionTestUtils.setField(throttle, "enabled", true);
+		ReflectionTestUtils.setField(throttle, "windowSeconds", 900);
+		ReflectionTestUtils.setField(throttle, "bucketCount", 15);
+		ReflectionTestUtils.setField(throttle, "maxUserFailures", 5);
+		ReflectionTestUtils.setField(throttle, "maxIpFailures", 50);
+		ReflectionTestUtils.setField(throttle, "maxUsers", maxUsers);
+		ReflectionTestUtils.setField(throttle, "sketchWidth", 4096);
+		ReflectionTestUtils.setField(throttle, "sketchDepth", 4);
+		throttle.init();
+		return throttle;
+	}
+}
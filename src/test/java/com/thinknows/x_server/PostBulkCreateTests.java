@@ -0,0 +1,65 @@
+package com.thinknows.x_server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.post;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.servlet.MockMvc;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.thinknows.x_server.model.Post;
+import com.thinknows.x_server.model.request.CreatePostRequest;
+
+import jakarta.persistence.EntityManagerFactory;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class PostBulkCreateTests {
+
+	private static final int POSTS = 120;
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	@Test
+	void bulkCreateInsertsRowsInJdbcBatches() throws Exception {
+		List<CreatePostRequest> requests = new ArrayList<>();
+		for (int i = 0; i < POSTS; i++) {
+			requests.add(new CreatePostRequest("bulk " + i, "content", "tech", List.of("java", "batch")));
+		}
+
+		Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		statistics.clear();
+
+		mockMvc.perform(post("/api/v1/posts/bulk")
+						.header("userId", 1L)
+						.contentType(MediaType.APPLICATION_JSON)
+						.content(objectMapper.writeValueAsString(requests)))
+				.andExpect(status().isCreated())
+				.andExpect(jsonPath("$.data.length()").value(POSTS));
+
+		assertEquals(POSTS, statistics.getEntityStatistics(Post.class.getName()).getInsertCount());
+		// 逐行插入需要 120 条帖子语句和 240 条标签语句；按 50 行一批时每批只准备一次语句，
+		// 再加上序列取值和作者名称查询
+		long prepared = statistics.getPrepareStatementCount();
+		assertTrue(prepared <= 20, "prepared statements: " + prepared);
+	}
+}
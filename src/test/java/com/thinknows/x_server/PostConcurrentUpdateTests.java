@@ -0,0 +1,165 @@
+package com.thinknows.x_server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.doThrow;
+import static org.mockito.Mockito.mockingDetails;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.stubbing.Answer;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.orm.ObjectOptimisticLockingFailureException;
+import org.springframework.test.context.bean.override.mockito.MockitoSpyBean;
+import org.springframework.test.web.servlet.MockMvc;
+import org.springframework.test.web.servlet.MvcResult;
+import org.springframework.test.web.servlet.request.MockHttpServletRequestBuilder;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.thinknows.x_server.model.Post;
+import com.thinknows.x_server.model.request.CreatePostRequest;
+import com.thinknows.x_server.repository.PostRepository;
+import com.thinknows.x_server.service.PostService;
+
+@SpringBootTest
+@AutoConfigureMockMvc
+class PostConcurrentUpdateTests {
+
+	private static final int UPDATERS = 8;
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private PostService postService;
+
+	@MockitoSpyBean
+	private PostRepository postRepository;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Value("${app.posts.update.max-retries}")
+	private int maxRetries;
+
+	@Test
+	void parallelIfMatchUpdatersLoseNoUpdates() throws Exception {
+		Post post = postService.createPost(
+				new CreatePostRequest("versioned", "", "tech", List.of("java")), 1L);
+		String url = "/api/v1/posts/" + post.getId();
+
+		ExecutorService executor = Executors.newFixedThreadPool(UPDATERS);
+		CountDownLatch start = new CountDownLatch(1);
+		List<Future<Integer>> results = new ArrayList<>();
+		for (int i = 0; i < UPDATERS; i++) {
+			String marker = "[" + i + "]";
+			results.add(executor.submit(() -> {
+				start.await();
+				// 读取 - 修改 - 带 If-Match 写回，被别人抢先时重新读取
+				for (int attempt = 1; ; attempt++) {
+					MvcResult current = mockMvc.perform(get(url)).andReturn();
+					String eTag = current.getResponse().getHeader(HttpHeaders.ETAG);
+					JsonNode data = objectMapper.readTree(current.getResponse().getContentAsString()).get("data");
+					String body = objectMapper.writeValueAsString(
+							Map.of("content", data.get("content").asText() + marker));
+
+					int status = mockMvc.perform(put(url)
+									.header("userId", 1L)
+									.header(HttpHeaders.IF_MATCH, eTag)
+									.contentType(MediaType.APPLICATION_JSON)
+									.content(body))
+							.andReturn().getResponse().getStatus();
+					if (status == 200) {
+						return attempt;
+					}
+					assertEquals(412, status);
+				}
+			}));
+		}
+		start.countDown();
+		for (Future<Integer> result : results) {
+			result.get(30, TimeUnit.SECONDS);
+		}
+		executor.shutdown();
+
+		Post updated = postRepository.findById(post.getId()).orElseThrow();
+		for (int i = 0; i < UPDATERS; i++) {
+			assertTrue(updated.getContent().contains("[" + i + "]"), updated.getContent());
+		}
+		assertEquals(UPDATERS * 3, updated.getContent().length());
+		// 每次成功的更新恰好使版本号加一
+		assertEquals(post.getVersion() + UPDATERS, updated.getVersion());
+	}
+
+	@Test
+	void conflictWithoutIfMatchIsRetriedOnTheServer() throws Exception {
+		Post post = postService.createPost(new CreatePostRequest("retried", "", "tech", List.of("java")), 1L);
+		// 第一次写回时模拟被别人抢先，之后交给真正的仓库；仓库是接口代理，只能沿用 spy 默认的委托
+		Answer<?> delegate = mockingDetails(postRepository).getMockCreationSettings().getDefaultAnswer();
+		doThrow(new ObjectOptimisticLockingFailureException(Post.class, post.getId()))
+				.doAnswer(delegate)
+				.when(postRepository).saveAndFlush(any(Post.class));
+
+		int status = update(post.getId(), null, "retried content");
+
+		assertEquals(200, status);
+		verify(postRepository, times(2)).saveAndFlush(any(Post.class));
+		assertEquals("retried content", postRepository.findById(post.getId()).orElseThrow().getContent());
+	}
+
+	@Test
+	void persistentConflictWithoutIfMatchReturns409AfterMaxRetries() throws Exception {
+		Post post = postService.createPost(new CreatePostRequest("contended", "", "tech", List.of("java")), 1L);
+		doThrow(new ObjectOptimisticLockingFailureException(Post.class, post.getId()))
+				.when(postRepository).saveAndFlush(any(Post.class));
+
+		int status = update(post.getId(), null, "never written");
+
+		assertEquals(409, status);
+		// 首次尝试加 max-retries 次重试
+		verify(postRepository, times(1 + maxRetries)).saveAndFlush(any(Post.class));
+	}
+
+	@Test
+	void staleIfMatchReturns412WithoutRetrying() throws Exception {
+		Post post = postService.createPost(new CreatePostRequest("stale", "", "tech", List.of("java")), 1L);
+		String staleETag = mockMvc.perform(get("/api/v1/posts/" + post.getId()))
+				.andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+		assertEquals(200, update(post.getId(), null, "first"));
+
+		int status = update(post.getId(), staleETag, "second");
+
+		assertEquals(412, status);
+		assertEquals("first", postRepository.findById(post.getId()).orElseThrow().getContent());
+	}
+
+	private int update(Long id, String ifMatch, String content) throws Exception {
+		MockHttpServletRequestBuilder request = put("/api/v1/posts/" + id)
+				.header("userId", 1L)
+				.contentType(MediaType.APPLICATION_JSON)
+				.content(objectMapper.writeValueAsString(Map.of("content", content)));
+		if (ifMatch != null) {
+			request.header(HttpHeaders.IF_MATCH, ifMatch);
+		}
+		return mockMvc.perform(request).andReturn().getResponse().getStatus();
+	}
+}
@@ -0,0 +1,112 @@
+package com.thinknows.x_server;
+
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.put;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.MediaType;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+import org.springframework.test.web.servlet.MockMvc;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.thinknows.x_server.model.Post;
+import com.thinknows.x_server.model.request.CreatePostRequest;
+import com.thinknows.x_server.service.PostIndexService;
+import com.thinknows.x_server.service.PostService;
+
+/**
+ * 其他节点的写入直接落在共享数据库中，本节点的 Hibernate 不会收到任何通知；
+ * 这里绕过 JPA 用 SQL 修改帖子来模拟，之后的读取必须看到新数据
+ */
+@SpringBootTest
+@AutoConfigureMockMvc
+class PostCrossNodeReadTests {
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private PostService postService;
+
+	@Autowired
+	private PostIndexService postIndexService;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Autowired
+	private ObjectMapper objectMapper;
+
+	@Test
+	void fetchPostSeesWritesFromAnotherNode() throws Exception {
+		Post post = postService.createPost(
+				new CreatePostRequest("before", "content", "tech", List.of("java")), 1L);
+		String url = "/api/v1/posts/" + post.getId();
+
+		mockMvc.perform(get(url))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.data.title").value("before"));
+
+		jdbcTemplate.update("UPDATE posts SET title = ?, version = version + 1 WHERE id = ?", "after", post.getId());
+
+		mockMvc.perform(get(url))
+				.andExpect(status().isOk())
+				.andExpect(jsonPath("$.data.title").value("after"));
+	}
+
+	@Test
+	void conditionalRequestsSeeVersionBumpsFromAnotherNode() throws Exception {
+		Post post = postService.createPost(
+				new CreatePostRequest("conditional", "content", "tech", List.of("java")), 1L);
+		String url = "/api/v1/posts/" + post.getId();
+		String staleETag = mockMvc.perform(get(url)).andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+		mockMvc.perform(get(url).header(HttpHeaders.IF_NONE_MATCH, staleETag))
+				.andExpect(status().isNotModified());
+
+		jdbcTemplate.update("UPDATE posts SET version = version + 1 WHERE id = ?", post.getId());
+
+		// 旧的 ETag 不再匹配：GET 返回新内容，If-Match 写入被拒绝
+		String currentETag = mockMvc.perform(get(url).header(HttpHeaders.IF_NONE_MATCH, staleETag))
+				.andExpect(status().isOk())
+				.andReturn().getResponse().getHeader(HttpHeaders.ETAG);
+		assertNotEquals(staleETag, currentETag);
+		String body = objectMapper.writeValueAsString(Map.of("content", "updated"));
+		mockMvc.perform(put(url).header("userId", 1L).header(HttpHeaders.IF_MATCH, staleETag)
+						.contentType(MediaType.APPLICATION_JSON).content(body))
+				.andExpect(status().isPreconditionFailed());
+		mockMvc.perform(put(url).header("userId", 1L).header(HttpHeaders.IF_MATCH, currentETag)
+						.contentType(MediaType.APPLICATION_JSON).content(body))
+				.andExpect(status().isOk());
+	}
+
+	@Test
+	void indexDropsPostsDeletedOnAnotherNodeEvenWhenTotalCountIsUnchanged() throws Exception {
+		Post deleted = postService.createPost(
+				new CreatePostRequest("deleted elsewhere", "content", "reconcile", List.of("reconcile-tag")), 1L);
+		mockMvc.perform(get("/api/v1/posts/count").param("category", "reconcile"))
+				.andExpect(jsonPath("$.data").value(1));
+
+		// 另一个节点删除一篇、新建一篇，帖子总数不变
+		jdbcTemplate.update("DELETE FROM post_tags WHERE post_id = ?", deleted.getId());
+		jdbcTemplate.update("DELETE FROM posts WHERE id = ?", deleted.getId());
+		postService.createPost(new CreatePostRequest("created elsewhere", "content", "tech", List.of("java")), 1L);
+
+		ReflectionTestUtils.invokeMethod(postIndexService, "removeDeleted");
+
+		mockMvc.perform(get("/api/v1/posts/count").param("category", "reconcile"))
+				.andExpect(jsonPath("$.data").value(0));
+		mockMvc.perform(get("/api/v1/posts/count").param("tag", "reconcile-tag"))
+				.andExpect(jsonPath("$.data").value(0));
+	}
+}
@@ -0,0 +1,63 @@
+package com.thinknows.x_server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.springframework.test.web.servlet.request.MockMvcRequestBuilders.get;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.jsonPath;
+import static org.springframework.test.web.servlet.result.MockMvcResultMatchers.status;
+
+import java.util.List;
+
+import org.hibernate.SessionFactory;
+import org.hibernate.stat.Statistics;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.autoconfigure.web.servlet.AutoConfigureMockMvc;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.test.web.servlet.MockMvc;
+
+import com.thinknows.x_server.model.Post;
+import com.thinknows.x_server.model.request.CreatePostRequest;
+import com.thinknows.x_server.service.PostService;
+
+import jakarta.persistence.EntityManagerFactory;
+
+/**
+ * 开启二级缓存（单节点部署）时，重复读取同一篇帖子不访问数据库
+ */
+@SpringBootTest(properties = "app.cache.l2.enabled=true")
+@AutoConfigureMockMvc
+class PostSecondLevelCacheTests {
+
+	@Autowired
+	private MockMvc mockMvc;
+
+	@Autowired
+	private PostService postService;
+
+	@Autowired
+	private EntityManagerFactory entityManagerFactory;
+
+	@Test
+	void repeatedFetchPostByIdIssuesNoSql() throws Exception {
+		Post post = postService.createPost(
+				new CreatePostRequest("cached", "content", "tech", List.of("java", "cache")), 1L);
+		String url = "/api/v1/posts/" + post.getId();
+
+		// 第一次请求加载标签集合并放入缓存
+		mockMvc.perform(get(url)).andExpect(status().isOk());
+
+		Statistics statistics = entityManagerFactory.unwrap(SessionFactory.class).getStatistics();
+		statistics.clear();
+
+		for (int i = 0; i < 3; i++) {
+			mockMvc.perform(get(url))
+					.andExpect(status().isOk())
+					.andExpect(jsonPath("$.data.title").value("cached"))
+					.andExpect(jsonPath("$.data.tags.length()").value(2));
+		}
+
+		assertEquals(0, statistics.getPrepareStatementCount());
+		assertTrue(statistics.getSecondLevelCacheHitCount() >= 6);
+	}
+}
@@ -0,0 +1,59 @@
+package com.thinknows.x_server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDateTime;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.thinknows.x_server.model.response.DeviceSession;
+import com.thinknows.x_server.session.InMemorySessionStore;
+import com.thinknows.x_server.session.SessionActivityTracker;
+
+/**
+ * 活动写回只更新仍然存在的会话，撤销后不会被重新创建
+ */
+class SessionActivityTrackerTests {
+
+	@Test
+	void flushUpdatesLiveSessionsAndSkipsRevokedOnes() {
+		InMemorySessionStore store = new InMemorySessionStore();
+		SessionActivityTracker tracker = new SessionActivityTracker();
+		ReflectionTestUtils.setField(tracker, "sessionStore", store);
+		ReflectionTestUtils.setField(tracker, "granularitySeconds", 60L);
+
+		LocalDateTime login = LocalDateTime.now().minusHours(1);
+		store.putSession("user", new DeviceSession("live", null, login, login, "10.0.0.1", false));
+		store.putSession("user", new DeviceSession("revoked", null, login, login, "10.0.0.1", false));
+		tracker.record("user", "live", "10.0.0.2");
+		tracker.record("user", "revoked", "10.0.0.2");
+
+		// 活动已记录、尚未写回时会话被撤销
+		store.removeSession("revoked");
+
+		assertEquals(1, tracker.flush());
+		assertEquals("10.0.0.2", store.getSession("live").getIpAddress());
+		assertNull(store.getSession("revoked"));
+		assertEquals(1, store.getSessions("user").size());
+	}
+
+	@Test
+	void conditionalUpdateDoesNotRecreateRemovedSession() {
+		InMemorySessionStore store = new InMemorySessionStore();
+		LocalDateTime login = LocalDateTime.now().minusHours(1);
+		DeviceSession session = new DeviceSession("removed", null, login, login, "10.0.0.1", false);
+		store.putSession("user", session);
+		store.removeSession("removed");
+
+		// 模拟在写回线程读取会话之后、写入之前被撤销
+		DeviceSession updated = new DeviceSession("removed", null, login, LocalDateTime.now(), "10.0.0.2", false);
+		assertEquals(0, store.updateSessionsIfPresent(Map.of("user", List.of(updated))));
+		assertNull(store.getSession("removed"));
+		assertTrue(store.getSessions("user").isEmpty());
+	}
+}
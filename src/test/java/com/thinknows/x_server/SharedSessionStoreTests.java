@@ -0,0 +1,142 @@
+package com.thinknows.x_server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import com.thinknows.x_server.model.DeviceInfo;
+import com.thinknows.x_server.model.User;
+import com.thinknows.x_server.model.request.LoginRequest;
+import com.thinknows.x_server.model.request.RefreshTokenRequest;
+import com.thinknows.x_server.model.request.RegisterRequest;
+import com.thinknows.x_server.model.request.TwoFactorVerifyRequest;
+import com.thinknows.x_server.model.response.LoginResponse;
+import com.thinknows.x_server.model.response.TokenResponse;
+import com.thinknows.x_server.repository.UserRepository;
+import com.thinknows.x_server.service.UserService;
+import com.thinknows.x_server.session.EmbeddedRespServer;
+import com.thinknows.x_server.session.SessionStore;
+import com.thinknows.x_server.session.SessionStore.TokenType;
+import com.thinknows.x_server.util.Totp;
+
+/**
+ * 两个应用上下文模拟两个节点，通过内嵌的 Redis 协议替身共享会话
+ */
+class SharedSessionStoreTests {
+
+	private static EmbeddedRespServer server;
+	private static ConfigurableApplicationContext nodeA;
+	private static ConfigurableApplicationContext nodeB;
+
+	@BeforeAll
+	static void startNodes() throws Exception {
+		server = new EmbeddedRespServer(0);
+		nodeA = startNode();
+		nodeB = startNode();
+	}
+
+	@AfterAll
+	static void stopNodes() throws Exception {
+		nodeA.close();
+		nodeB.close();
+		server.close();
+	}
+
+	private static ConfigurableApplicationContext startNode() {
+		// 以命令行参数传入，覆盖 application.properties 中的配置
+		return new SpringApplicationBuilder(XServerApplication.class)
+				.run("--spring.main.web-application-type=none",
+						"--app.sessions.store=redis",
+						"--app.sessions.redis.port=" + server.getPort(),
+						// 近缓存存活时间足够长，测试中的失效只能来自广播
+						"--app.sessions.redis.near-cache-ttl-ms=600000");
+	}
+
+	@Test
+	void tokenIssuedOnOneNodeIsValidOnTheOtherUntilRevoked() throws Exception {
+		UserService usersA = nodeA.getBean(UserService.class);
+		UserService usersB = nodeB.getBean(UserService.class);
+		usersA.register(new RegisterRequest("shared-session", "secret123", "shared-session@example.com", "1"));
+
+		LoginRequest login = new LoginRequest("shared-session", "secret123");
+		login.setDeviceInfo(new DeviceInfo("device-1", "Phone", "Mobile", "10.0.0.1"));
+		TokenResponse tokens = usersA.login(login).getTokens();
+
+		User user = usersB.getUserByAccessToken(tokens.getAccessToken());
+		assertNotNull(user);
+		assertEquals("shared-session", user.getUsername());
+		assertEquals(1, usersB.getUserActiveSessions("shared-session").size());
+		TokenResponse rotated = usersB.refreshToken(new RefreshTokenRequest(tokens.getRefreshToken()));
+		assertNotNull(rotated);
+
+		// 节点 B 的近缓存已持有该令牌，节点 A 撤销后由广播使其失效
+		SessionStore storeB = nodeB.getBean(SessionStore.class);
+		assertSame(storeB.getToken(TokenType.ACCESS, tokens.getAccessToken()),
+				storeB.getToken(TokenType.ACCESS, tokens.getAccessToken()));
+		nodeA.getBean(SessionStore.class).removeToken(TokenType.ACCESS, tokens.getAccessToken());
+
+		long deadline = System.currentTimeMillis() + 5000;
+		while (storeB.getToken(TokenType.ACCESS, tokens.getAccessToken()) != null
+				&& System.currentTimeMillis() < deadline) {
+			Thread.sleep(20);
+		}
+		assertNull(usersB.getUserByAccessToken(tokens.getAccessToken()));
+
+		// 在节点 A 重复使用已换掉的刷新令牌，整个会话被撤销，节点 B 换发的新令牌同样失效
+		assertNull(usersA.refreshToken(new RefreshTokenRequest(tokens.getRefreshToken())));
+		assertNull(usersA.refreshToken(new RefreshTokenRequest(rotated.getRefreshToken())));
+		assertEquals(0, usersB.getUserActiveSessions("shared-session").size());
+	}
+
+	@Test
+	void twoFactorTokenIssuedOnOneNodeVerifiesOnceAcrossNodes() {
+		UserService usersA = nodeA.getBean(UserService.class);
+		UserService usersB = nodeB.getBean(UserService.class);
+		usersA.register(new RegisterRequest("shared-2fa", "secret123", "shared-2fa@example.com", "1"));
+		UserRepository repository = nodeA.getBean(UserRepository.class);
+		User user = repository.findByUsername("shared-2fa").orElseThrow();
+		user.setTwoFactorEnabled(true);
+		user.setTwoFactorSecret("JBSWY3DPEHPK3PXP");
+		repository.save(user);
+
+		LoginResponse pending = usersA.login(new LoginRequest("shared-2fa", "secret123"));
+		assertTrue(pending.isRequiresTwoFactor());
+		String code = Totp.generate(Totp.decodeBase32("JBSWY3DPEHPK3PXP"),
+				System.currentTimeMillis() / 1000 / Totp.STEP_SECONDS);
+
+		// 两个节点使用同一个签名密钥，节点 A 签发的二次验证令牌可以在节点 B 验证
+		TwoFactorVerifyRequest verify = new TwoFactorVerifyRequest(pending.getTwoFactorToken(), code);
+		assertNotNull(usersB.verifyTwoFactorCode(verify));
+		// 已使用的记录在共享存储中，回到节点 A 重放同样被拒绝
+		assertNull(usersA.verifyTwoFactorCode(verify));
+	}
+
+	@Test
+	void forgedOldRefreshTokenDoesNotRevokeSession() {
+		UserService usersA = nodeA.getBean(UserService.class);
+		UserService usersB = nodeB.getBean(UserService.class);
+		usersA.register(new RegisterRequest("forged-refresh", "secret123", "forged-refresh@example.com", "1"));
+		TokenResponse tokens = usersA.login(new LoginRequest("forged-refresh", "secret123")).getTokens();
+		TokenResponse rotated = usersA.refreshToken(new RefreshTokenRequest(tokens.getRefreshToken()));
+		assertNotNull(rotated);
+
+		// 只知道会话ID的人构造的旧序号令牌被拒绝，会话不受影响
+		String sessionId = tokens.getRefreshToken().substring(0, tokens.getRefreshToken().indexOf('.'));
+		assertNull(usersB.refreshToken(new RefreshTokenRequest(sessionId + ".0.forged")));
+		assertEquals(1, usersB.getUserActiveSessions("forged-refresh").size());
+		TokenResponse next = usersB.refreshToken(new RefreshTokenRequest(rotated.getRefreshToken()));
+		assertNotNull(next);
+
+		// 真正签发过的上一个令牌被重复使用，撤销整个会话
+		assertNull(usersA.refreshToken(new RefreshTokenRequest(rotated.getRefreshToken())));
+		assertEquals(0, usersB.getUserActiveSessions("forged-refresh").size());
+	}
+}
@@ -0,0 +1,37 @@
+package com.thinknows.x_server;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.jupiter.api.Test;
+
+import com.thinknows.x_server.util.Totp;
+
+/**
+ * RFC 6238 附录 B 中 HMAC-SHA1 的测试向量（取后 6 位）
+ */
+class TotpTests {
+
+	/** ASCII "12345678901234567890" 的 Base32 编码 */
+	private static final String SECRET = "GEZDGNBVGY3TQOJQGEZDGNBVGY3TQOJQ";
+
+	private static final long[] TIMES = { 59L, 1111111109L, 1111111111L, 1234567890L, 2000000000L, 20000000000L };
+	private static final String[] CODES = { "287082", "081804", "050471", "005924", "279037", "353130" };
+
+	@Test
+	void generateMatchesRfc6238Vectors() {
+		byte[] key = "12345678901234567890".getBytes(StandardCharsets.US_ASCII);
+		for (int i = 0; i < TIMES.length; i++) {
+			assertEquals(CODES[i], Totp.generate(key, TIMES[i] / Totp.STEP_SECONDS), "T=" + TIMES[i]);
+		}
+	}
+
+	@Test
+	void verifyReturnsMatchedStep() {
+		for (int i = 0; i < TIMES.length; i++) {
+			assertEquals(TIMES[i] / Totp.STEP_SECONDS, Totp.verify(SECRET, CODES[i], TIMES[i], 0), "T=" + TIMES[i]);
+		}
+		assertEquals(-1, Totp.verify(SECRET, "000000", 59L, 0));
+	}
+}
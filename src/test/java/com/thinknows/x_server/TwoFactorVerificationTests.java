@@ -0,0 +1,79 @@
+package com.thinknows.x_server;
+
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDateTime;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+
+import com.thinknows.x_server.model.User;
+import com.thinknows.x_server.model.request.LoginRequest;
+import com.thinknows.x_server.model.request.RegisterRequest;
+import com.thinknows.x_server.model.request.TwoFactorVerifyRequest;
+import com.thinknows.x_server.model.response.LoginResponse;
+import com.thinknows.x_server.repository.UserRepository;
+import com.thinknows.x_server.service.UserService;
+import com.thinknows.x_server.service.UserService.AccountLockedException;
+import com.thinknows.x_server.session.SessionStore;
+import com.thinknows.x_server.util.Totp;
+
+/**
+ * 同一时间步的验证码只能使用一次；会话存储中的锁定记录对二次验证同样生效
+ */
+@SpringBootTest
+class TwoFactorVerificationTests {
+
+	private static final String SECRET = "JBSWY3DPEHPK3PXP";
+
+	@Autowired
+	private UserService userService;
+
+	@Autowired
+	private UserRepository userRepository;
+
+	@Autowired
+	private SessionStore sessionStore;
+
+	@Test
+	void totpCodeCannotBeReusedWithAnotherToken() {
+		enableTwoFactor("totp-replay");
+		LoginResponse first = userService.login(new LoginRequest("totp-replay", "secret123"));
+		LoginResponse second = userService.login(new LoginRequest("totp-replay", "secret123"));
+		assertTrue(first.isRequiresTwoFactor());
+		String code = currentCode();
+
+		assertNotNull(userService.verifyTwoFactorCode(new TwoFactorVerifyRequest(first.getTwoFactorToken(), code)));
+		// 换一个新令牌也不能再次使用同一个验证码
+		assertNull(userService.verifyTwoFactorCode(new TwoFactorVerifyRequest(second.getTwoFactorToken(), code)));
+	}
+
+	@Test
+	void lockoutFromAnotherNodeBlocksVerification() {
+		enableTwoFactor("totp-locked");
+		LoginResponse pending = userService.login(new LoginRequest("totp-locked", "secret123"));
+		assertTrue(pending.isRequiresTwoFactor());
+
+		// 其他节点累计失败后写入的锁定记录
+		sessionStore.putLockout("totp-locked", LocalDateTime.now().plusMinutes(15));
+
+		TwoFactorVerifyRequest verify = new TwoFactorVerifyRequest(pending.getTwoFactorToken(), currentCode());
+		assertThrows(AccountLockedException.class, () -> userService.verifyTwoFactorCode(verify));
+	}
+
+	private void enableTwoFactor(String username) {
+		userService.register(new RegisterRequest(username, "secret123", username + "@example.com", "1"));
+		User user = userRepository.findByUsername(username).orElseThrow();
+		user.setTwoFactorEnabled(true);
+		user.setTwoFactorSecret(SECRET);
+		userRepository.save(user);
+	}
+
+	private static String currentCode() {
+		return Totp.generate(Totp.decodeBase32(SECRET), System.currentTimeMillis() / 1000 / Totp.STEP_SECONDS);
+	}
+}
@@ -0,0 +1,40 @@
+package com.thinknows.x_server;
+
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.time.LocalDateTime;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.jdbc.core.JdbcTemplate;
+import org.springframework.test.util.ReflectionTestUtils;
+
+import com.thinknows.x_server.service.UserExistenceFilter;
+
+/**
+ * 其他节点注册的用户按创建时间增量加载，与ID的大小无关
+ */
+@SpringBootTest
+class UserExistenceFilterTests {
+
+	@Autowired
+	private UserExistenceFilter userExistenceFilter;
+
+	@Autowired
+	private JdbcTemplate jdbcTemplate;
+
+	@Test
+	void refreshLoadsLateCommittedUserWithOldId() {
+		// 另一个节点很早分配了ID，但事务很晚才提交
+		jdbcTemplate.update("INSERT INTO users (id, username, password, email, created_at, updated_at, active, "
+						+ "two_factor_enabled) VALUES (?, ?, ?, ?, ?, ?, ?, ?)",
+				-100000L, "late-committer", "x", "late-committer@example.com",
+				LocalDateTime.now(), LocalDateTime.now(), true, false);
+
+		ReflectionTestUtils.invokeMethod(userExistenceFilter, "refresh");
+
+		assertTrue(userExistenceFilter.mightContainUsername("late-committer"));
+		assertTrue(userExistenceFilter.mightContainEmail("late-committer@example.com"));
+	}
+}